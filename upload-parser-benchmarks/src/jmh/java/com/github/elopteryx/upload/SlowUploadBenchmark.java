@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.elopteryx.upload;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Compares the blocking parse running on the default executor with the async parse
+ * for many concurrent slow uploads. Every upload delivers its body in chunks with a
+ * fixed delay between them, like a client on a slow network. The blocking streams wait
+ * for the next chunk by parking the parse thread, the async streams notify the read
+ * listener from a small pool, like a container selector. The score is the time needed
+ * to parse every upload. On Java 21 the default executor uses virtual threads, on earlier
+ * runtimes a thread is started for each concurrent upload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SlowUploadBenchmark {
+
+    private static final String BOUNDARY = "----WebKitFormBoundary7MA4YWxkTrZu0gW";
+
+    /**
+     * The number of concurrent uploads.
+     */
+    @Param({"100", "1000"})
+    private int uploads;
+
+    /**
+     * The delay between two chunks in microseconds.
+     */
+    @Param({"1000"})
+    private int latency;
+
+    /**
+     * The size of the chunks.
+     */
+    @Param({"4096"})
+    private int chunkSize;
+
+    private byte[] body;
+
+    private ScheduledExecutorService selector;
+
+    private final UploadParser parser = UploadParser.newParser();
+
+    @Setup
+    public void setUp() {
+        var content = new StringBuilder();
+        content.append("--").append(BOUNDARY).append("\r\n")
+                .append("Content-Disposition: form-data; name=\"file\"; filename=\"data.bin\"\r\n\r\n");
+        for (var i = 0; i < 16 * chunkSize; i++) {
+            content.append((char) ('a' + i % 26));
+        }
+        content.append("\r\n--").append(BOUNDARY).append("--\r\n");
+        body = content.toString().getBytes(StandardCharsets.ISO_8859_1);
+        selector = Executors.newScheduledThreadPool(4);
+    }
+
+    @TearDown
+    public void tearDown() {
+        selector.shutdownNow();
+    }
+
+    @Benchmark
+    public void blockingOnDefaultExecutor() {
+        var futures = new ArrayList<CompletableFuture<UploadContext>>(uploads);
+        for (var i = 0; i < uploads; i++) {
+            futures.add(parser.doBlockingParseAsync(request(new BlockingStream())));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    @Benchmark
+    public void asyncReadListener() throws Exception {
+        var latch = new CountDownLatch(uploads);
+        var asyncParser = UploadParser.newParser()
+                .onRequestComplete(context -> latch.countDown())
+                .onError((context, throwable) -> latch.countDown());
+        for (var i = 0; i < uploads; i++) {
+            asyncParser.setupAsyncParse(request(new AsyncStream()));
+        }
+        latch.await();
+    }
+
+    /**
+     * Creates a request which returns the given stream, the other methods return defaults.
+     */
+    private HttpServletRequest request(ServletInputStream stream) {
+        var contentType = "multipart/form-data; boundary=" + BOUNDARY;
+        return (HttpServletRequest) Proxy.newProxyInstance(HttpServletRequest.class.getClassLoader(),
+                new Class<?>[] {HttpServletRequest.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getContentType":
+                    case "getHeader":
+                        return contentType;
+                    case "getContentLengthLong":
+                        return (long) body.length;
+                    case "getInputStream":
+                        return stream;
+                    case "isAsyncSupported":
+                        return true;
+                    default:
+                        return defaultValue(method.getReturnType());
+                }
+            });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    /**
+     * Waits for the next chunk by parking the reading thread.
+     */
+    private final class BlockingStream extends ServletInputStream {
+
+        private int position;
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (position == body.length) {
+                return -1;
+            }
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(latency));
+            var count = Math.min(Math.min(length, chunkSize), body.length - position);
+            System.arraycopy(body, position, bytes, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int read() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isFinished() {
+            return position == body.length;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Makes the next chunk available after the delay and notifies the listener from the selector pool.
+     */
+    private final class AsyncStream extends ServletInputStream {
+
+        private volatile ReadListener listener;
+        private volatile int position;
+        private volatile boolean available;
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            var count = Math.min(Math.min(length, chunkSize), body.length - position);
+            System.arraycopy(body, position, bytes, offset, count);
+            position += count;
+            available = false;
+            return count;
+        }
+
+        @Override
+        public int read() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isFinished() {
+            return position == body.length;
+        }
+
+        @Override
+        public boolean isReady() {
+            if (available) {
+                return true;
+            }
+            schedule();
+            return false;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            listener = readListener;
+            schedule();
+        }
+
+        private void schedule() {
+            selector.schedule(() -> {
+                try {
+                    if (isFinished()) {
+                        listener.onAllDataRead();
+                    } else {
+                        available = true;
+                        listener.onDataAvailable();
+                    }
+                } catch (Exception e) {
+                    listener.onError(e);
+                }
+            }, latency, TimeUnit.MICROSECONDS);
+        }
+    }
+}
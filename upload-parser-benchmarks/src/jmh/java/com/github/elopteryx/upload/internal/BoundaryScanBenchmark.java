@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the parsing of a large identity encoded part, which is dominated
+ * by the boundary search. The score is the number of parsed requests per second,
+ * multiply it with the request size to get the throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BoundaryScanBenchmark {
+
+    private static final String BOUNDARY = "----WebKitFormBoundary7MA4YWxkTrZu0gW";
+
+    /**
+     * The value of the scanner system property, read when the parser classes are loaded.
+     * Every parameter runs in a new fork, so it can be set during the setup.
+     */
+    @Param({"scalar", "swar", "vector"})
+    private String scanner;
+
+    /**
+     * The size of the part body.
+     */
+    @Param({"16777216"})
+    private int partSize;
+
+    /**
+     * The number of bytes read from the request at once.
+     */
+    @Param({"8192", "65536"})
+    private int readSize;
+
+    private byte[] request;
+
+    private final MultipartParser.PartHandler handler = new MultipartParser.PartHandler() {
+        @Override
+        public void beginPart(Headers headers) {}
+
+        @Override
+        public void data(ByteBuffer buffer) {
+            buffer.position(buffer.limit());
+        }
+
+        @Override
+        public void endPart() {}
+    };
+
+    /**
+     * Selects the scanner and creates a request with a single part of random bytes.
+     */
+    @Setup
+    public void setup() {
+        System.setProperty(BoundaryMatcher.SCANNER_PROPERTY, scanner);
+        var head = ("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"video.mp4\"\r\n"
+                + "Content-Type: video/mp4\r\n"
+                + "\r\n").getBytes(ISO_8859_1);
+        var tail = ("\r\n--" + BOUNDARY + "--\r\n").getBytes(ISO_8859_1);
+        var body = new byte[partSize];
+        new Random(42).nextBytes(body);
+        request = new byte[head.length + body.length + tail.length];
+        System.arraycopy(head, 0, request, 0, head.length);
+        System.arraycopy(body, 0, request, head.length, body.length);
+        System.arraycopy(tail, 0, request, head.length + body.length, tail.length);
+    }
+
+    /**
+     * Parses the request, reading it in chunks like the servlet stream would.
+     * @return Whether the parsing completed, to prevent dead code elimination
+     * @throws IOException If an error occurred with the I/O
+     */
+    @Benchmark
+    public boolean parse() throws IOException {
+        var parseState = MultipartParser.beginParse(handler, BOUNDARY.getBytes(ISO_8859_1), 4096, ISO_8859_1);
+        for (var pos = 0; pos < request.length; pos += readSize) {
+            parseState.parse(ByteBuffer.wrap(request, pos, Math.min(readSize, request.length - pos)));
+        }
+        return parseState.isComplete();
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the quoted-printable decoder of the parser with the previous, byte
+ * at a time implementation. The input is mostly text with some escaped bytes
+ * and soft line breaks, like the body of a mail.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class QuotedPrintableBenchmark {
+
+    /**
+     * The implementation, either the current or the previous one.
+     */
+    @Param({"table", "legacy"})
+    private String decoder;
+
+    /**
+     * The percentage of the bytes which must be escaped.
+     */
+    @Param({"5", "50"})
+    private int escaped;
+
+    /**
+     * The size of the decoded body.
+     */
+    @Param({"1048576"})
+    private int size;
+
+    private byte[] encoded;
+
+    private final MultipartParser.PartHandler handler = new MultipartParser.PartHandler() {
+        @Override
+        public void beginPart(Headers headers) {}
+
+        @Override
+        public void data(ByteBuffer buffer) {
+            buffer.position(buffer.limit());
+        }
+
+        @Override
+        public void endPart() {}
+    };
+
+    /**
+     * Creates the encoded body.
+     */
+    @Setup
+    public void setup() {
+        var random = new Random(42);
+        var output = new ByteArrayOutputStream();
+        var line = 0;
+        for (var i = 0; i < size; i++) {
+            if (line > 72) {
+                output.write('=');
+                output.write('\r');
+                output.write('\n');
+                line = 0;
+            }
+            if (random.nextInt(100) < escaped) {
+                var value = 128 + random.nextInt(128);
+                output.write('=');
+                output.write(Character.toUpperCase(Character.forDigit(value >> 4, 16)));
+                output.write(Character.toUpperCase(Character.forDigit(value & 0xF, 16)));
+                line += 3;
+            } else {
+                output.write('a' + random.nextInt(26));
+                line++;
+            }
+        }
+        encoded = output.toByteArray();
+    }
+
+    /**
+     * Decodes the body, passing it to the decoder in chunks like the parser would.
+     * @return The decoder, to prevent dead code elimination
+     * @throws IOException If an error occurred with the I/O
+     */
+    @Benchmark
+    public Object decode() throws IOException {
+        var encoding = "table".equals(decoder)
+                ? new MultipartParser.QuotedPrintableEncoding(ByteBuffer.allocate(2048))
+                : new LegacyQuotedPrintableEncoding(2048);
+        for (var pos = 0; pos < encoded.length; pos += 8192) {
+            encoding.handle(handler, ByteBuffer.wrap(encoded, pos, Math.min(8192, encoded.length - pos)));
+        }
+        return encoding;
+    }
+
+    /**
+     * The previous implementation, which handled the input one byte at a time. The
+     * missing flush after an escape is added, otherwise it would fail on this input.
+     */
+    static class LegacyQuotedPrintableEncoding implements MultipartParser.Encoding {
+
+        boolean equalsSeen;
+        byte firstCharacter;
+
+        private final ByteBuffer buffer;
+
+        LegacyQuotedPrintableEncoding(int size) {
+            buffer = ByteBuffer.allocate(size);
+        }
+
+        @Override
+        public void handle(final MultipartParser.PartHandler handler, final ByteBuffer rawData) throws IOException {
+            var equalsSeen = this.equalsSeen;
+            var firstCharacter = this.firstCharacter;
+            buffer.clear();
+            try {
+                while (rawData.hasRemaining()) {
+                    var readByte = rawData.get();
+                    if (equalsSeen) {
+                        if (firstCharacter == 0) {
+                            if (readByte == '\n' || readByte == '\r') {
+                                equalsSeen = false;
+                            } else {
+                                firstCharacter = readByte;
+                            }
+                        } else {
+                            var result = Character.digit((char) firstCharacter, 16);
+                            result <<= 4;
+                            result += Character.digit((char) readByte, 16);
+                            buffer.put((byte) result);
+                            equalsSeen = false;
+                            firstCharacter = 0;
+                            if (!buffer.hasRemaining()) {
+                                buffer.flip();
+                                handler.data(buffer);
+                                buffer.clear();
+                            }
+                        }
+                    } else if (readByte == '=') {
+                        equalsSeen = true;
+                    } else {
+                        buffer.put(readByte);
+                        if (!buffer.hasRemaining()) {
+                            buffer.flip();
+                            handler.data(buffer);
+                            buffer.clear();
+                        }
+                    }
+                }
+                buffer.flip();
+                handler.data(buffer);
+            } finally {
+                buffer.clear();
+                this.equalsSeen = equalsSeen;
+                this.firstCharacter = firstCharacter;
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A pool of byte buffers which can be shared by the parsers. A parser borrows
+ * its read buffer, the buffer of the size threshold and the buffers of the
+ * encoded parts from the pool and returns them after the request is parsed,
+ * so the parsers of the upcoming requests do not allocate new ones.
+ *
+ * <p>The pool created with {@link UploadParser#newBufferPool(int)} keeps a free
+ * list for every requested capacity, striped by thread, the application can
+ * provide its own implementation as well. A buffer which is not returned, for
+ * example because the parse failed midway, is simply collected as garbage.</p>
+ */
+public interface BufferPool {
+
+    /**
+     * Returns a heap buffer with the given capacity. The buffer is cleared
+     * and has an accessible array.
+     * @param capacity The capacity of the buffer
+     * @return A pooled or a new buffer
+     */
+    ByteBuffer acquire(int capacity);
+
+    /**
+     * Returns a direct buffer with the given capacity, for the I/O which does
+     * not need the backing array. The buffer is cleared.
+     * @param capacity The capacity of the buffer
+     * @return A pooled or a new buffer
+     */
+    ByteBuffer acquireDirect(int capacity);
+
+    /**
+     * Returns the given buffer to the pool. The caller must not use it afterwards.
+     * @param buffer A buffer returned by one of the acquire methods
+     */
+    void release(ByteBuffer buffer);
+
+    /**
+     * Returns the number of buffers which were taken from the pool.
+     * @return The number of hits
+     */
+    long getHits();
+
+    /**
+     * Returns the number of buffers which had to be allocated.
+     * @return The number of misses
+     */
+    long getMisses();
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload;
+
+import java.nio.file.Path;
+
+/**
+ * A content-addressed storage for the uploaded parts, which keeps a single copy of
+ * the parts with the same content. The part is written into a temporary file of the
+ * store while its SHA-256 digest is computed. When the part ends the file is moved
+ * into the store, at a path derived from the digest, or deleted if the store already
+ * contains the same content. The parts which are uploaded again therefore cost no
+ * disk space and no disk writes other than the temporary file.
+ *
+ * <p>The outputs of the store can be returned from the part begin callback. In the
+ * part end callback the output of the part, {@link UploadContext#getCurrentOutput()},
+ * refers to the stored file or to the link, as a {@link Path}. The store keeps the
+ * recently stored digests in memory, so the existence of the popular contents is
+ * not checked on the disk for every part. Because of this the files must not be
+ * removed from the store while it is in use.</p>
+ *
+ * <p>The store can be created with {@link UploadParser#newContentStore(Path, int)} and
+ * is meant to be shared by every request. The stores are supported by the parsers
+ * which call the part begin callback, the iterator and the publisher return the
+ * part bytes to the caller instead.</p>
+ */
+public interface ContentStore {
+
+    /**
+     * Returns the directory of the store.
+     *
+     * @return The root directory
+     */
+    Path getRoot();
+
+    /**
+     * Returns an output which stores the part in the store.
+     *
+     * @return A new output for a single part
+     */
+    PartOutput newOutput();
+
+    /**
+     * Returns an output which stores the part in the store and creates a hard link
+     * to the stored file at the given path, which must be on the same file system.
+     * If the file system does not support hard links then the file is copied.
+     *
+     * @param link The path of the link, it must not exist
+     * @return A new output for a single part
+     */
+    PartOutput newOutput(Path link);
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.elopteryx.upload;
+
+/**
+ * A shared pool of writer threads for the parts which are written to a
+ * {@link java.nio.file.Path}. The parsed bytes are collected into pooled buffers and
+ * written by the threads of the storage device holding the file, so the parsing
+ * of the request overlaps with the disk writes. Every device has a bounded queue,
+ * a parser waits when the queue of its device is full, so a slow disk slows down the
+ * uploads instead of filling the memory.
+ *
+ * <p>The pool can be created with {@link UploadParser#newDiskWriterPool(int, int)} and
+ * used with {@link UploadParser#writeBehind(DiskWriterPool)}. It is meant to be shared by
+ * every request and closed when the application stops.</p>
+ */
+public interface DiskWriterPool extends AutoCloseable {
+
+    /**
+     * Stops the writer threads. The uploads which are still in progress fail.
+     */
+    @Override
+    void close();
+}
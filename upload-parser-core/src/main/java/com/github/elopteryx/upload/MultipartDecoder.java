@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.elopteryx.upload;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A push style parser, which does not depend on the servlet API. The caller feeds
+ * the bytes of the request body as they arrive, for example from a non-blocking
+ * network layer, and the parser calls the configured callbacks the same way as
+ * the servlet based parsers do. The size limits are also applied.
+ *
+ * <p>An instance can be obtained from {@link UploadParser#newDecoder(String, java.nio.charset.Charset)}
+ * and it can only be used for a single request. It is not thread safe, the calls must
+ * be ordered by the caller. The {@link UploadContext#getRequest()} method returns null
+ * for the contexts created by the decoder.</p>
+ */
+public interface MultipartDecoder {
+
+    /**
+     * Parses the given bytes. Every remaining byte of the buffer is consumed, the
+     * buffer can be reused after the method returns.
+     * @param buffer The next bytes of the request body
+     * @throws IOException If the data is malformed or an error occurred with an output,
+     *                     the decoder can not be used afterwards
+     */
+    void feed(ByteBuffer buffer) throws IOException;
+
+    /**
+     * Signals the end of the request body and calls the request complete callback.
+     * The buffers of the decoder are returned to the pool, it can not be fed afterwards.
+     * @return The upload context
+     * @throws IOException If the body ended before the closing boundary or a callback failed
+     */
+    UploadContext finish() throws IOException;
+
+    /**
+     * Returns whether the closing boundary has been parsed.
+     * @return True if the multipart body is complete
+     */
+    boolean isComplete();
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.elopteryx.upload;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+/**
+ * A pull style parser, returned from {@link UploadParser#iterate(javax.servlet.http.HttpServletRequest)}.
+ * The request is read only as far as the caller asks for the next part or reads the body
+ * of the current one, the parts are not buffered or written to an output. Apart from
+ * the read buffer no memory is used for the request.
+ *
+ * <p>The iterator is not thread safe. The callbacks of the parser are not used,
+ * the errors, including the size limits, are thrown to the caller.</p>
+ */
+public interface MultipartIterator {
+
+    /**
+     * Returns whether the request has more parts. The unread bytes of the current part
+     * are skipped.
+     * @return True if there is a next part
+     * @throws IOException If an error occurred with the I/O or the request is malformed
+     */
+    boolean hasNext() throws IOException;
+
+    /**
+     * Returns the next part. The stream of the previous part is closed.
+     * @return The next part
+     * @throws IOException If an error occurred with the I/O or the request is malformed
+     * @throws NoSuchElementException If there are no more parts
+     */
+    StreamingPart next() throws IOException;
+
+    /**
+     * Returns the context of the upload, containing every part returned so far.
+     * @return The upload context
+     */
+    UploadContext getContext();
+}
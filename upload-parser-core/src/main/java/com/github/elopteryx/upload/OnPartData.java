@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.elopteryx.upload;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A functional interface. An implementation of it must be passed in the
+ * {@link UploadParser#onPartData(OnPartData)} method to call it for every chunk of the part bodies.
+ *
+ * <p>This function receives the bytes as they are parsed, without copying them into
+ * the buffer used for the size threshold. If it is set then there is no buffering,
+ * the part begin callback is called with an empty buffer before the first chunk and
+ * the size threshold is ignored.</p>
+ */
+@FunctionalInterface
+public interface OnPartData {
+
+    /**
+     * The consumer function to implement. The buffer is a read-only view of the
+     * parser's own buffer, it is only valid for the duration of the call. Implementations
+     * must not keep a reference to it, the bytes should be consumed or copied before
+     * returning. The same bytes are written to the output object afterwards.
+     * @param context The upload context
+     * @param buffer The next bytes of the current part
+     * @throws IOException If an error occurred while processing the bytes
+     */
+    void onPartData(UploadContext context, ByteBuffer buffer) throws IOException;
+
+}
@@ -26,6 +26,11 @@ import java.nio.file.Path;
  */
 public class PartOutput {
 
+    /**
+     * The output which skips the rest of the part.
+     */
+    private static final PartOutput DISCARD = new PartOutput(null);
+
     /**
      * The value object.
      */
@@ -97,4 +102,18 @@ public class PartOutput {
     public static PartOutput from(Path path) {
         return new PartOutput(path);
     }
+
+    /**
+     * Returns the output which discards the part. Unlike an output writing to
+     * nowhere the parser does not process the rest of the part, it only looks
+     * for the next boundary. The bytes are not decoded, passed to the part data
+     * callback or counted against the part size limit, which makes rejecting a
+     * large part almost free. The part end callback is still called, the known
+     * size of the part does not include the skipped bytes. The value of this
+     * output can not be unwrapped.
+     * @return The shared instance
+     */
+    public static PartOutput discard() {
+        return DISCARD;
+    }
 }
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.elopteryx.upload;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Flow;
+
+/**
+ * A part emitted by the publisher returned from {@link UploadParser#publish(javax.servlet.http.HttpServletRequest)}.
+ * Besides the usual part information it publishes the body of the part, the bytes are
+ * read from the request only when the subscriber of the body has requested them.
+ *
+ * <p>The body allows only a single subscriber. It must be subscribed to, or the subscription
+ * cancelled, before the next part can be emitted, the bytes of a cancelled body are skipped.
+ * The emitted buffers are not reused by the parser.</p>
+ */
+public interface PartPublisher extends PartStream, Flow.Publisher<ByteBuffer> {
+
+}
@@ -85,6 +85,29 @@ public interface PartStream {
      */
     boolean isFinished();
 
+    /**
+     * Returns the digest of the part bytes computed with the given algorithm while
+     * the part was parsed. The digests are available after the part is finished, for
+     * the algorithms set with {@link UploadParser#digests(String...)} and for the ones
+     * named in the <code>Content-MD5</code> or <code>Digest</code> header of the part,
+     * which are checked by the parser. The digests are computed from the decoded
+     * bytes, the same bytes which are passed to the output.
+     *
+     * @param algorithm The name of the algorithm, for example SHA-256 or CRC32C
+     * @return The digest or null if it was not computed
+     */
+    byte[] getDigest(String algorithm);
+
+    /**
+     * Returns the enclosing part if this part was sent inside a nested
+     * multipart body, for example a <code>multipart/mixed</code> part holding
+     * several files for the same form field. The parent is not passed to the
+     * callbacks on its own, only its nested parts are.
+     *
+     * @return The enclosing part or null for the top level parts
+     */
+    PartStream getParent();
+
     /**
      * Returns the value of the specified mime header as a String. If
      * the Part did not include a header of the specified name, this
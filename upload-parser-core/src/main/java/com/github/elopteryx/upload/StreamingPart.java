@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.elopteryx.upload;
+
+import java.io.InputStream;
+
+/**
+ * A part returned by the {@link MultipartIterator}. The body is not stored anywhere,
+ * the stream reads it directly from the buffer of the parser.
+ */
+public interface StreamingPart extends PartStream {
+
+    /**
+     * Returns the stream of the body. The stream can be read only until the iterator moves
+     * to the next part, the unread bytes are skipped then and the stream is closed.
+     * @return The stream of the part body
+     */
+    InputStream openStream();
+}
@@ -73,4 +73,12 @@ public interface UploadContext {
      * @return The list of the processed parts, in the order they are uploaded
      */
     List<PartStream> getPartStreams();
+
+    /**
+     * Returns the token which identifies the checkpoints of this upload. The
+     * client needs it, along with the offset of the latest checkpoint, to
+     * resume the upload with a new request if the connection is lost.
+     * @return The token or null if checkpoints are disabled
+     */
+    String getCheckpointToken();
 }
@@ -16,14 +16,40 @@
 
 package com.github.elopteryx.upload;
 
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.util.Objects.requireNonNull;
+
+import com.github.elopteryx.upload.errors.HeaderSizeException;
+import com.github.elopteryx.upload.errors.MultipartException;
+import com.github.elopteryx.upload.errors.PartCountException;
 import com.github.elopteryx.upload.errors.PartSizeException;
 import com.github.elopteryx.upload.errors.RequestSizeException;
+import com.github.elopteryx.upload.errors.UploadTimeoutException;
 import com.github.elopteryx.upload.internal.AbstractUploadParser;
+import com.github.elopteryx.upload.internal.AsyncPartPublisher;
 import com.github.elopteryx.upload.internal.AsyncUploadParser;
+import com.github.elopteryx.upload.internal.BlockingPartIterator;
 import com.github.elopteryx.upload.internal.BlockingUploadParser;
+import com.github.elopteryx.upload.internal.BufferPoolImpl;
+import com.github.elopteryx.upload.internal.ContentStoreImpl;
+import com.github.elopteryx.upload.internal.DiskWriterPoolImpl;
+import com.github.elopteryx.upload.internal.ManifestScanner;
+import com.github.elopteryx.upload.internal.MultipartDecoderImpl;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 
@@ -46,6 +72,11 @@ public class UploadParser {
      */
     private static final int DEFAULT_USED_MEMORY = 4096;
 
+    /**
+     * The default maximum depth of the nested multipart bodies.
+     */
+    private static final int DEFAULT_MAX_NESTING_DEPTH = 2;
+
     /**
      * Part of HTTP content type header.
      */
@@ -56,6 +87,11 @@ public class UploadParser {
      */
     private OnPartBegin partBeginCallback;
 
+    /**
+     * The part data callback, called for every chunk of the parts.
+     */
+    private OnPartData partDataCallback;
+
     /**
      * The part end callback, called at the end of each part parsing.
      */
@@ -96,6 +132,96 @@ public class UploadParser {
      */
     private long maxRequestSize = -1;
 
+    /**
+     * The maximum sizes of the parts by field name.
+     */
+    private final Map<String, Long> fieldPartSizes = new HashMap<>();
+
+    /**
+     * The maximum sizes of the parts by content type.
+     */
+    private final Map<String, Long> contentTypePartSizes = new HashMap<>();
+
+    /**
+     * The maximum length of a part header line.
+     */
+    private int maxHeaderLineLength = -1;
+
+    /**
+     * The maximum number of headers in a part.
+     */
+    private int maxHeadersPerPart = -1;
+
+    /**
+     * The maximum size of the part headers in the request.
+     */
+    private long maxHeaderSize = -1;
+
+    /**
+     * The maximum number of parts in the request.
+     */
+    private long maxPartCount = -1;
+
+    /**
+     * The maximum depth of the nested multipart bodies.
+     */
+    private int maxNestingDepth = DEFAULT_MAX_NESTING_DEPTH;
+
+    /**
+     * The directory of the checkpoints, null if they are disabled.
+     */
+    private Path checkpointDirectory;
+
+    /**
+     * The number of bytes between the checkpoints.
+     */
+    private long checkpointInterval;
+
+    /**
+     * The token of the checkpoints, generated if not set.
+     */
+    private String checkpointToken;
+
+    /**
+     * The offset where the body of the resumed request starts, -1 if the request is not resumed.
+     */
+    private long resumeOffset = -1;
+
+    /**
+     * The time limit of a parse running on an executor, null if there is none.
+     */
+    private Duration deadline;
+
+    /**
+     * The time limit between two reads of a parse running on an executor, null if there is none.
+     */
+    private Duration idleTimeout;
+
+    /**
+     * The executor of the callbacks in async mode, null if they run on the container threads.
+     */
+    private Executor callbackExecutor;
+
+    /**
+     * The number of queued callbacks after which the async parser stops reading.
+     */
+    private int callbackQueueCapacity;
+
+    /**
+     * The writers of the file outputs, null if the parsing thread writes them.
+     */
+    private DiskWriterPool diskWriters;
+
+    /**
+     * The pool of the buffers, null if the parser allocates them.
+     */
+    private BufferPool bufferPool;
+
+    /**
+     * The digests computed for every part.
+     */
+    private List<String> digestAlgorithms;
+
     private UploadParser() {
         // No need to allow public access
     }
@@ -112,6 +238,21 @@ public class UploadParser {
         return this;
     }
 
+    /**
+     * Sets a callback for the bytes of each part, called for every chunk
+     * as it is parsed. The chunks are read-only views which are only valid
+     * during the call, this allows processing every byte without copying it.
+     * Setting this disables the buffering for the part begin callback.
+     * If you wish to skip the method invoke, pass a null
+     * parameter or do not call this method.
+     * @param partDataCallback An object or lambda expression
+     * @return The parser will return itself
+     */
+    public UploadParser onPartData(OnPartData partDataCallback) {
+        this.partDataCallback = partDataCallback;
+        return this;
+    }
+
     /**
      * Sets a callback for each part, called at the end.
      * If you wish to skip the method invoke, pass a null
@@ -215,6 +356,44 @@ public class UploadParser {
         return this;
     }
 
+    /**
+     * Sets the maximum allowed size for the parts of the given field, instead
+     * of the one set with {@link #maxPartSize(long)}. Exceeding this will result
+     * in a {@link PartSizeException} exception.
+     * @param fieldName The name of the form field
+     * @param maxPartSize The amount to use
+     * @return The parser will return itself
+     * @throws IllegalArgumentException If the size is negative
+     */
+    public UploadParser maxPartSizeOfField(String fieldName, long maxPartSize) {
+        requireNonNull(fieldName);
+        if (maxPartSize < 0) {
+            throw new IllegalArgumentException("Invalid parameter value: " + maxPartSize);
+        }
+        fieldPartSizes.put(fieldName, maxPartSize);
+        return this;
+    }
+
+    /**
+     * Sets the maximum allowed size for the parts of the given content type, instead
+     * of the one set with {@link #maxPartSize(long)}. The type can end with a wildcard,
+     * for example <code>video/*</code>, the parameters of the part header are ignored.
+     * A size set for the field name of the part takes precedence. Exceeding this will
+     * result in a {@link PartSizeException} exception.
+     * @param contentType The media type, the case does not matter
+     * @param maxPartSize The amount to use
+     * @return The parser will return itself
+     * @throws IllegalArgumentException If the size is negative
+     */
+    public UploadParser maxPartSizeOfContentType(String contentType, long maxPartSize) {
+        requireNonNull(contentType);
+        if (maxPartSize < 0) {
+            throw new IllegalArgumentException("Invalid parameter value: " + maxPartSize);
+        }
+        contentTypePartSizes.put(contentType, maxPartSize);
+        return this;
+    }
+
     /**
      * Sets the maximum allowed size for the request. Exceeding this
      * will result in a {@link RequestSizeException} exception.
@@ -230,6 +409,245 @@ public class UploadParser {
         return this;
     }
 
+    /**
+     * Sets the maximum allowed length of a part header line, without the line
+     * break. Exceeding this will result in a {@link HeaderSizeException} exception.
+     * @param maxHeaderLineLength The amount to use
+     * @return The parser will return itself
+     * @throws IllegalArgumentException If the parameter is negative
+     */
+    public UploadParser maxHeaderLineLength(int maxHeaderLineLength) {
+        if (maxHeaderLineLength < 0) {
+            throw new IllegalArgumentException("Invalid parameter value: " + maxHeaderLineLength);
+        }
+        this.maxHeaderLineLength = maxHeaderLineLength;
+        return this;
+    }
+
+    /**
+     * Sets the maximum allowed number of headers in a part. Exceeding this
+     * will result in a {@link HeaderSizeException} exception.
+     * @param maxHeadersPerPart The amount to use
+     * @return The parser will return itself
+     * @throws IllegalArgumentException If the parameter is negative
+     */
+    public UploadParser maxHeadersPerPart(int maxHeadersPerPart) {
+        if (maxHeadersPerPart < 0) {
+            throw new IllegalArgumentException("Invalid parameter value: " + maxHeadersPerPart);
+        }
+        this.maxHeadersPerPart = maxHeadersPerPart;
+        return this;
+    }
+
+    /**
+     * Sets the maximum allowed size of all the part headers in the request, including
+     * the line breaks. Exceeding this will result in a {@link HeaderSizeException} exception.
+     * Together with the part count this bounds the memory used by the parser for the
+     * headers and the part objects, regardless of the request.
+     * @param maxHeaderSize The amount to use
+     * @return The parser will return itself
+     * @throws IllegalArgumentException If the parameter is negative
+     */
+    public UploadParser maxHeaderSize(long maxHeaderSize) {
+        if (maxHeaderSize < 0) {
+            throw new IllegalArgumentException("Invalid parameter value: " + maxHeaderSize);
+        }
+        this.maxHeaderSize = maxHeaderSize;
+        return this;
+    }
+
+    /**
+     * Sets the maximum allowed number of parts in the request, the parts of the nested
+     * multipart bodies included. Exceeding this will result in a {@link PartCountException}
+     * exception.
+     * @param maxPartCount The amount to use
+     * @return The parser will return itself
+     * @throws IllegalArgumentException If the parameter is negative
+     */
+    public UploadParser maxPartCount(long maxPartCount) {
+        if (maxPartCount < 0) {
+            throw new IllegalArgumentException("Invalid parameter value: " + maxPartCount);
+        }
+        this.maxPartCount = maxPartCount;
+        return this;
+    }
+
+    /**
+     * Sets the maximum allowed depth of the nested multipart bodies, a part of the
+     * request being depth one. Exceeding this will result in a {@link MultipartException}
+     * exception. The default is two, a zero value rejects every nested multipart body.
+     * @param maxNestingDepth The depth to use
+     * @return The parser will return itself
+     * @throws IllegalArgumentException If the parameter is negative
+     */
+    public UploadParser maxNestingDepth(int maxNestingDepth) {
+        if (maxNestingDepth < 0) {
+            throw new IllegalArgumentException("Invalid parameter value: " + maxNestingDepth);
+        }
+        this.maxNestingDepth = maxNestingDepth;
+        return this;
+    }
+
+    /**
+     * Enables checkpoints, which allow resuming an upload after the connection
+     * was lost. A checkpoint is saved into the given directory after every
+     * <code>interval</code> bytes, when the parser is inside the body of a part
+     * which is written to a {@link java.nio.file.Path} or discarded. The checkpoint
+     * is deleted when the request is completely parsed.
+     * @param directory The directory where the checkpoints are stored
+     * @param interval The number of bytes between the checkpoints
+     * @return The parser will return itself
+     * @throws IllegalArgumentException If the interval is not positive
+     */
+    public UploadParser checkpoints(Path directory, long interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Invalid parameter value: " + interval);
+        }
+        this.checkpointDirectory = requireNonNull(directory);
+        this.checkpointInterval = interval;
+        return this;
+    }
+
+    /**
+     * Sets the token which identifies the checkpoints of the upload, for example
+     * an upload id chosen by the client. If not set then a random token is generated,
+     * which can be retrieved with {@link UploadContext#getCheckpointToken()}.
+     * The token can only contain letters, digits, dashes and underscores.
+     * @param token The token of the upload
+     * @return The parser will return itself
+     */
+    public UploadParser checkpointToken(String token) {
+        this.checkpointToken = requireNonNull(token);
+        return this;
+    }
+
+    /**
+     * Continues an upload from its latest checkpoint. The body of the new request must
+     * be the same as the original one, starting from the given offset, which can not
+     * be greater than the offset of the checkpoint. The bytes before the checkpoint
+     * are skipped, the current part is appended to its file and the parsing continues
+     * as if the connection had not been lost. The part begin callback is not called
+     * for the resumed part. Requires the checkpoint directory to be set.
+     * @param token The token of the upload
+     * @param offset The offset in the original body where the new body starts
+     * @return The parser will return itself
+     * @throws IllegalArgumentException If the offset is negative
+     * @see #checkpointOffset(Path, String)
+     */
+    public UploadParser resume(String token, long offset) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Invalid parameter value: " + offset);
+        }
+        this.checkpointToken = requireNonNull(token);
+        this.resumeOffset = offset;
+        return this;
+    }
+
+    /**
+     * Sets the time limit of the whole upload, for the parsing started with
+     * {@link #doBlockingParseAsync(HttpServletRequest, Executor)}. Exceeding it results
+     * in an {@link UploadTimeoutException} passed to the error callback.
+     * @param deadline The time limit
+     * @return The parser will return itself
+     * @throws IllegalArgumentException If the parameter is not positive
+     */
+    public UploadParser deadline(Duration deadline) {
+        if (deadline.isNegative() || deadline.isZero()) {
+            throw new IllegalArgumentException("Invalid parameter value: " + deadline);
+        }
+        this.deadline = deadline;
+        return this;
+    }
+
+    /**
+     * Sets the time limit between two reads of the request, for the parsing started with
+     * {@link #doBlockingParseAsync(HttpServletRequest, Executor)}. Exceeding it results
+     * in an {@link UploadTimeoutException} passed to the error callback.
+     * @param idleTimeout The time limit
+     * @return The parser will return itself
+     * @throws IllegalArgumentException If the parameter is not positive
+     */
+    public UploadParser idleTimeout(Duration idleTimeout) {
+        if (idleTimeout.isNegative() || idleTimeout.isZero()) {
+            throw new IllegalArgumentException("Invalid parameter value: " + idleTimeout);
+        }
+        this.idleTimeout = idleTimeout;
+        return this;
+    }
+
+    /**
+     * Sets the executor which runs the callbacks and the writes to the part outputs
+     * during an async parse, so the container threads only read and parse the request.
+     * The callbacks of a request are still called one at a time, in order. The parsed
+     * bytes are copied and queued, the parser stops reading the request while
+     * <code>queueCapacity</code> callbacks are waiting and continues on the executor
+     * once they have finished. Checkpoints can not be used with this option.
+     * @param executor The executor of the callbacks
+     * @param queueCapacity The number of queued callbacks after which the reading stops
+     * @return The parser will return itself
+     * @throws IllegalArgumentException If the capacity is not positive
+     */
+    public UploadParser callbackExecutor(Executor executor, int queueCapacity) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Invalid parameter value: " + queueCapacity);
+        }
+        this.callbackExecutor = requireNonNull(executor);
+        this.callbackQueueCapacity = queueCapacity;
+        return this;
+    }
+
+    /**
+     * Sets the pool which writes the parts returned as {@link PartOutput#from(Path)}.
+     * The parser passes the filled buffers to the writer threads and continues
+     * parsing, the part end callback is called after every byte of the part has
+     * reached the file.
+     * @param diskWriters The pool, created with {@link #newDiskWriterPool(int, int)}
+     * @return The parser will return itself
+     */
+    public UploadParser writeBehind(DiskWriterPool diskWriters) {
+        this.diskWriters = requireNonNull(diskWriters);
+        return this;
+    }
+
+    /**
+     * Sets the pool from which the parser borrows its buffers. The buffers are
+     * returned to the pool after the request is parsed, so a pool shared by the
+     * parsers saves the allocation of the buffers for every request.
+     * @param bufferPool The pool, created with {@link #newBufferPool(int)} or provided by the caller
+     * @return The parser will return itself
+     */
+    public UploadParser bufferPool(BufferPool bufferPool) {
+        this.bufferPool = requireNonNull(bufferPool);
+        return this;
+    }
+
+    /**
+     * Sets the digests which are computed for every part while its bytes are parsed,
+     * so the stored outputs do not have to be read again. The results are available
+     * from {@link PartStream#getDigest(String)} in the part end callback. Both
+     * {@link java.security.MessageDigest} algorithms, like <code>SHA-256</code>, and the
+     * <code>CRC32</code>, <code>CRC32C</code> and <code>Adler32</code> checksums are
+     * supported. The <code>Content-MD5</code> and <code>Digest</code> part headers are
+     * checked even without this option, a mismatch results in a
+     * {@link com.github.elopteryx.upload.errors.DigestMismatchException}.
+     * @param algorithms The names of the algorithms
+     * @return The parser will return itself
+     * @throws IllegalArgumentException If an algorithm is not supported
+     */
+    public UploadParser digests(String... algorithms) {
+        for (final var algorithm : algorithms) {
+            if (!"CRC32".equalsIgnoreCase(algorithm) && !"CRC32C".equalsIgnoreCase(algorithm) && !"Adler32".equalsIgnoreCase(algorithm)) {
+                try {
+                    MessageDigest.getInstance(algorithm);
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IllegalArgumentException("Unsupported digest algorithm: " + algorithm, e);
+                }
+            }
+        }
+        this.digestAlgorithms = List.of(algorithms);
+        return this;
+    }
+
     /**
      * Performs the necessary operations to setup the async parsing. The parser will
      * register itself to the request stream and the method will quickly return.
@@ -244,9 +662,32 @@ public class UploadParser {
         }
         var parser = new AsyncUploadParser(request);
         build(parser);
+        if (callbackExecutor != null) {
+            parser.setCallbackExecutor(callbackExecutor, callbackQueueCapacity);
+        }
         parser.setupAsyncParse();
     }
 
+    /**
+     * Returns a publisher which emits the parts of the request, each of them publishing
+     * its own body. The request is read in async mode, but only while there is outstanding
+     * demand, so the subscriber controls how fast the upload is consumed. The parsing starts
+     * when the publisher is subscribed to, the publisher allows only one subscriber.
+     * The size limits are applied, the callbacks are not used, the subscribers are
+     * notified instead.
+     * @param request The request object
+     * @return A publisher of the parts
+     * @throws IllegalArgumentException If the request is not a multipart request
+     */
+    public Flow.Publisher<PartPublisher> publish(HttpServletRequest request) {
+        if (!isMultipart(request)) {
+            throw new IllegalArgumentException("Not a multipart request!");
+        }
+        var publisher = new AsyncPartPublisher(request);
+        build(publisher);
+        return publisher;
+    }
+
     /**
      * The parser begins parsing the request stream. This is a blocking method,
      * the method will not finish until the upload process finished, either
@@ -266,13 +707,122 @@ public class UploadParser {
         return parser.doBlockingParse();
     }
 
+    /**
+     * Performs a blocking parse on the default executor, which uses a virtual thread for
+     * each request if the runtime supports them.
+     * @param request The request object
+     * @return The future of the upload context
+     * @throws IllegalArgumentException If the request is not a multipart request
+     * @see #doBlockingParseAsync(HttpServletRequest, Executor)
+     */
+    public CompletableFuture<UploadContext> doBlockingParseAsync(HttpServletRequest request) {
+        return doBlockingParseAsync(request, BlockingUploadParser.defaultExecutor());
+    }
+
+    /**
+     * Performs a blocking parse on the given executor and returns immediately. The request
+     * is put into async mode if the servlet supports it. The deadline and the idle timeout
+     * are enforced by interrupting the parse thread and closing the request stream, the
+     * timeout is passed to the error callback. The future is completed after the request
+     * complete or the error callback has returned.
+     * @param request The request object
+     * @param executor The executor running the parse
+     * @return The future of the upload context
+     * @throws IllegalArgumentException If the request is not a multipart request
+     */
+    public CompletableFuture<UploadContext> doBlockingParseAsync(HttpServletRequest request, Executor executor) {
+        if (!isMultipart(request)) {
+            throw new IllegalArgumentException("Not a multipart request!");
+        }
+        var parser = new BlockingUploadParser(request);
+        build(parser);
+        return parser.doBlockingParseAsync(requireNonNull(executor), deadline, idleTimeout);
+    }
+
+    /**
+     * Returns a pull style parser for the request. Nothing is read until the first part
+     * is requested, the body of each part is read directly from the read buffer through
+     * the stream of the part. The size limits are applied, the callbacks are not used.
+     * @param request The request object
+     * @return An iterator over the parts of the request
+     * @throws IOException If an error occurred with the request stream
+     * @throws IllegalArgumentException If the request is not a multipart request
+     */
+    public MultipartIterator iterate(HttpServletRequest request) throws IOException {
+        if (!isMultipart(request)) {
+            throw new IllegalArgumentException("Not a multipart request!");
+        }
+        var iterator = new BlockingPartIterator(request);
+        build(iterator);
+        iterator.setupIteration();
+        return iterator;
+    }
+
+    /**
+     * Lists the parts of the request without processing them, for example to check
+     * what an upload contains before accepting it. The parser only looks for the
+     * boundaries, the body bytes are not decoded and no callback is called. The
+     * returned parts have their headers and their size, which is the number of body
+     * bytes in the request, before any transfer encoding is decoded. The request size
+     * limit and the buffer size are used, the other options are ignored.
+     * @param request The request object
+     * @return The parts of the request, in order
+     * @throws IOException If an error occurred with the I/O or the request is malformed
+     * @throws IllegalArgumentException If the request is not a multipart request
+     */
+    public List<PartStream> scan(HttpServletRequest request) throws IOException {
+        if (!isMultipart(request)) {
+            throw new IllegalArgumentException("Not a multipart request!");
+        }
+        var scanner = new ManifestScanner(request);
+        build(scanner);
+        return scanner.scan();
+    }
+
+    /**
+     * Lists the parts of a multipart body without processing them, for example a
+     * request body which was saved to a file. See {@link #scan(HttpServletRequest)}.
+     * The stream is read to the end, but it is not closed.
+     * @param body The stream of the body
+     * @param boundary The boundary, usually taken from the Content-Type header of the request
+     * @param charset The charset of the part headers
+     * @return The parts of the body, in order
+     * @throws IOException If an error occurred with the I/O or the body is malformed
+     */
+    public List<PartStream> scan(InputStream body, String boundary, Charset charset) throws IOException {
+        var scanner = new ManifestScanner(null);
+        build(scanner);
+        return scanner.scan(requireNonNull(body), boundary.getBytes(ISO_8859_1), requireNonNull(charset));
+    }
+
+    /**
+     * Creates a push style parser which does not need a servlet request. The boundary
+     * and the charset are usually taken from the Content-Type header of the request
+     * by the caller. The callbacks and limits configured on this instance are used,
+     * except the error callback, the errors are thrown by the decoder instead.
+     * @param boundary The boundary of the multipart body, without the leading dashes
+     * @param charset The charset of the part headers
+     * @return A new decoder for a single request
+     * @throws IOException If the request is resumed and the checkpoint can not be used
+     */
+    public MultipartDecoder newDecoder(String boundary, Charset charset) throws IOException {
+        var decoder = new MultipartDecoderImpl(boundary.getBytes(ISO_8859_1), requireNonNull(charset));
+        build(decoder);
+        decoder.init();
+        return decoder;
+    }
+
     /**
      * Passes the configuration parameters to the actual
-     * parser implementation.
-     * @param parser The parser implementation
+     * parser implementation. The parameter is declared as an Object
+     * to keep the verifier from loading the servlet based parsers when
+     * only the decoder is used, the servlet API is an optional dependency.
+     * @param target The parser implementation
      */
-    private void build(AbstractUploadParser parser) {
+    private void build(Object target) {
+        final var parser = (AbstractUploadParser) target;
         parser.setPartBeginCallback(partBeginCallback);
+        parser.setPartDataCallback(partDataCallback);
         parser.setPartEndCallback(partEndCallback);
         parser.setRequestCallback(requestCallback);
         parser.setErrorCallback(errorCallback);
@@ -280,7 +830,29 @@ public class UploadParser {
         parser.setMaxBytesUsed(maxBytesUsed);
         parser.setSizeThreshold(sizeThreshold);
         parser.setMaxPartSize(maxPartSize);
+        parser.setPartLimits(fieldPartSizes, contentTypePartSizes);
         parser.setMaxRequestSize(maxRequestSize);
+        parser.setMaxHeaderLineLength(maxHeaderLineLength);
+        parser.setMaxHeadersPerPart(maxHeadersPerPart);
+        parser.setMaxHeaderSize(maxHeaderSize);
+        parser.setMaxPartCount(maxPartCount);
+        parser.setMaxNestingDepth(maxNestingDepth);
+        if (diskWriters != null) {
+            parser.setDiskWriterPool(diskWriters);
+        }
+        if (bufferPool != null) {
+            parser.setBufferPool(bufferPool);
+        }
+        if (digestAlgorithms != null) {
+            parser.setDigestAlgorithms(digestAlgorithms);
+        }
+        if (checkpointDirectory != null) {
+            parser.setCheckpoints(checkpointDirectory, checkpointInterval);
+        }
+        parser.setCheckpointToken(checkpointToken);
+        if (resumeOffset > -1) {
+            parser.setResume(checkpointToken, resumeOffset);
+        }
     }
 
     /**
@@ -293,6 +865,78 @@ public class UploadParser {
         return request.getContentType() != null && request.getContentType().toLowerCase(Locale.ENGLISH).startsWith(MULTIPART);
     }
 
+    /**
+     * Returns the offset of the latest checkpoint of an upload. The client
+     * should send the request body again, starting from this offset.
+     * @param directory The directory of the checkpoints
+     * @param token The token of the upload
+     * @return The offset in the original request body or -1 if there is no checkpoint
+     * @throws IOException If an error occurred with the I/O
+     */
+    public static long checkpointOffset(Path directory, String token) throws IOException {
+        return AbstractUploadParser.checkpointOffset(directory, token);
+    }
+
+    /**
+     * Returns a new pool of disk writers, which can be shared by the parsers.
+     * @param writersPerDevice The number of writer threads per storage device
+     * @param queueCapacity The number of filled buffers which can wait for a device
+     * @return A new pool
+     * @throws IllegalArgumentException If a parameter is not positive
+     */
+    public static DiskWriterPool newDiskWriterPool(int writersPerDevice, int queueCapacity) {
+        return newDiskWriterPool(writersPerDevice, queueCapacity, null);
+    }
+
+    /**
+     * Returns a new pool of disk writers, which can be shared by the parsers. The
+     * buffers of the writes are direct buffers taken from the given pool.
+     * @param writersPerDevice The number of writer threads per storage device
+     * @param queueCapacity The number of filled buffers which can wait for a device
+     * @param bufferPool The pool of the buffers, can be null if the writers should have their own
+     * @return A new pool
+     * @throws IllegalArgumentException If a parameter is not positive
+     */
+    public static DiskWriterPool newDiskWriterPool(int writersPerDevice, int queueCapacity, BufferPool bufferPool) {
+        if (writersPerDevice <= 0) {
+            throw new IllegalArgumentException("Invalid parameter value: " + writersPerDevice);
+        }
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Invalid parameter value: " + queueCapacity);
+        }
+        return new DiskWriterPoolImpl(writersPerDevice, queueCapacity, bufferPool);
+    }
+
+    /**
+     * Returns a new buffer pool, which can be shared by the parsers and the disk writers.
+     * It keeps a free list for every requested capacity, striped by the threads, and
+     * counts the hits and misses.
+     * @param buffersPerStripe The number of free buffers kept per capacity in a stripe
+     * @return A new pool
+     * @throws IllegalArgumentException If the parameter is not positive
+     */
+    public static BufferPool newBufferPool(int buffersPerStripe) {
+        if (buffersPerStripe <= 0) {
+            throw new IllegalArgumentException("Invalid parameter value: " + buffersPerStripe);
+        }
+        return new BufferPoolImpl(buffersPerStripe);
+    }
+
+    /**
+     * Returns a new content-addressed store, which can be shared by the parsers.
+     * @param root The directory of the store, it is created if it does not exist
+     * @param indexSize The number of recently stored digests kept in memory
+     * @return A new store
+     * @throws IOException If the directory can not be created
+     * @throws IllegalArgumentException If the index size is negative
+     */
+    public static ContentStore newContentStore(Path root, int indexSize) throws IOException {
+        if (indexSize < 0) {
+            throw new IllegalArgumentException("Invalid parameter value: " + indexSize);
+        }
+        return new ContentStoreImpl(requireNonNull(root), indexSize);
+    }
+
     /**
      * Returns a new parser, allowing the caller to set configuration.
      * @return A parser object
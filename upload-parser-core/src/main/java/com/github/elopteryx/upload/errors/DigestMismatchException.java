@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.errors;
+
+/**
+ * Exception thrown when the digest of a part, computed while it was parsed,
+ * is different from the value sent by the client in the <code>Content-MD5</code>
+ * or the <code>Digest</code> header of the part.
+ */
+public class DigestMismatchException extends MultipartException {
+
+    /**
+     * The algorithm of the digest which did not match.
+     */
+    private final String algorithm;
+
+    /**
+     * Public constructor.
+     * @param message The message of the exception
+     * @param algorithm The algorithm of the digest
+     */
+    public DigestMismatchException(String message, String algorithm) {
+        super(message);
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Returns the algorithm of the digest which did not match.
+     *
+     * @return The name of the algorithm, for example SHA-256
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+}
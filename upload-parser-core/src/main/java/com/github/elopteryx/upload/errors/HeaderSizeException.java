@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.errors;
+
+/**
+ * Exception thrown when the part headers exceed one of the header limits: the
+ * length of a header line, the number of headers in a part or the total size of
+ * the part headers in the request. For the number of headers the sizes are
+ * the header counts instead of bytes.
+ */
+public class HeaderSizeException extends UploadSizeException {
+
+    /**
+     * Public constructor.
+     * @param message The message of the exception
+     * @param actual The known size at the time of the exception
+     * @param permitted The maximum permitted size
+     */
+    public HeaderSizeException(String message, long actual, long permitted) {
+        super(message, actual, permitted);
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.elopteryx.upload.errors;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Exception thrown when the upload exceeded its deadline or no bytes
+ * were read from the request for longer than the idle timeout.
+ */
+public class UploadTimeoutException extends IOException {
+
+    /**
+     * The limit which was exceeded.
+     */
+    private final Duration timeout;
+
+    /**
+     * Whether the idle timeout was exceeded, as opposed to the deadline.
+     */
+    private final boolean idle;
+
+    /**
+     * Public constructor.
+     * @param message The message of the exception
+     * @param timeout The limit which was exceeded
+     * @param idle Whether the idle timeout was exceeded
+     */
+    public UploadTimeoutException(String message, Duration timeout, boolean idle) {
+        super(message);
+        this.timeout = timeout;
+        this.idle = idle;
+    }
+
+    /**
+     * Returns the limit which was exceeded.
+     *
+     * @return The deadline or the idle timeout.
+     */
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Returns whether the idle timeout was exceeded.
+     *
+     * @return True for the idle timeout, false for the deadline.
+     */
+    public boolean isIdleTimeout() {
+        return idle;
+    }
+}
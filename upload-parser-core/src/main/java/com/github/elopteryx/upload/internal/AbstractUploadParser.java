@@ -22,11 +22,15 @@ import static java.nio.file.StandardOpenOption.CREATE;
 import static java.nio.file.StandardOpenOption.WRITE;
 import static java.util.Objects.requireNonNull;
 
+import com.github.elopteryx.upload.BufferPool;
+import com.github.elopteryx.upload.DiskWriterPool;
 import com.github.elopteryx.upload.OnError;
 import com.github.elopteryx.upload.OnPartBegin;
+import com.github.elopteryx.upload.OnPartData;
 import com.github.elopteryx.upload.OnPartEnd;
 import com.github.elopteryx.upload.OnRequestComplete;
 import com.github.elopteryx.upload.PartOutput;
+import com.github.elopteryx.upload.errors.MultipartException;
 import com.github.elopteryx.upload.errors.PartSizeException;
 import com.github.elopteryx.upload.errors.RequestSizeException;
 import com.github.elopteryx.upload.util.NullChannel;
@@ -35,11 +39,20 @@ import com.github.elopteryx.upload.util.OutputStreamBackedChannel;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 import javax.servlet.http.HttpServletRequest;
 
 /**
@@ -52,10 +65,18 @@ public abstract class AbstractUploadParser implements MultipartParser.PartHandle
      * The default size allocated for the buffers.
      */
     private static final int DEFAULT_USED_MEMORY = 4096;
+    /**
+     * The default maximum depth of the nested multipart bodies.
+     */
+    private static final int DEFAULT_MAX_NESTING_DEPTH = 2;
     /**
      * The part begin callback, called at the beginning of each part parsing.
      */
     private OnPartBegin partBeginCallback;
+    /**
+     * The part data callback, called for every chunk of the parts.
+     */
+    private OnPartData partDataCallback;
     /**
      * The part end callback, called at the end of each part parsing.
      */
@@ -84,10 +105,38 @@ public abstract class AbstractUploadParser implements MultipartParser.PartHandle
      * The maximum size permitted for the parts. By default it is unlimited.
      */
     private long maxPartSize = -1;
+    /**
+     * The limits of the parts by field name and content type.
+     */
+    private PartLimits partLimits = new PartLimits(Map.of(), Map.of());
+    /**
+     * The maximum size of the current part, resolved when the part begins.
+     */
+    private long partSizeLimit = PartLimits.UNLIMITED;
     /**
      * The maximum size permitted for the complete request. By default it is unlimited.
      */
     protected long maxRequestSize = -1;
+    /**
+     * The maximum length of a part header line. By default it is unlimited.
+     */
+    private int maxHeaderLineLength = -1;
+    /**
+     * The maximum number of headers in a part. By default it is unlimited.
+     */
+    private int maxHeadersPerPart = -1;
+    /**
+     * The maximum size of the part headers in the request. By default it is unlimited.
+     */
+    private long maxHeaderSize = -1;
+    /**
+     * The maximum number of parts in the request. By default it is unlimited.
+     */
+    private long maxPartCount = -1;
+    /**
+     * The maximum depth of the nested multipart bodies.
+     */
+    private int maxNestingDepth = DEFAULT_MAX_NESTING_DEPTH;
     /**
      * The valid mime type.
      */
@@ -117,17 +166,92 @@ public abstract class AbstractUploadParser implements MultipartParser.PartHandle
      * servlet input stream or from a different source.
      */
     protected ByteBuffer dataBuffer;
+    /**
+     * The pool of the buffers, the buffers are borrowed when the parsing starts.
+     */
+    protected BufferPool bufferPool = BufferPoolImpl.UNPOOLED;
+    /**
+     * The recently parsed Content-Disposition headers.
+     */
+    private final ContentDisposition.Cache dispositions = new ContentDisposition.Cache();
+    /**
+     * The enclosing part of the nested multipart body being parsed, null on the top level.
+     */
+    private PartStreamImpl parent;
+    /**
+     * The directory of the checkpoints, null if they are disabled.
+     */
+    private Path checkpointDirectory;
+    /**
+     * The number of body bytes between the checkpoints.
+     */
+    private long checkpointInterval;
+    /**
+     * The token of the checkpoints.
+     */
+    private String checkpointToken;
+    /**
+     * The offset in the original request where the body of a resumed request starts, -1 if
+     * the request is not resumed.
+     */
+    private long resumeOffset = -1;
+    /**
+     * The offset of the next body byte in the original request.
+     */
+    private long bodyOffset;
+    /**
+     * The offset after which the next checkpoint is taken.
+     */
+    private long nextCheckpoint;
+    /**
+     * The number of bytes of a resumed request which were already parsed before the checkpoint.
+     */
+    private long skippedBytes;
+    /**
+     * The boundary of the request.
+     */
+    private byte[] boundaryBytes;
+    /**
+     * The file of the current part, null if the output is not a file in the default file system.
+     */
+    private Path outputPath;
+    /**
+     * Whether the output of the current part can be continued after a checkpoint.
+     */
+    private boolean resumableOutput;
+    /**
+     * The decompressor of the request body, null if it is not compressed.
+     */
+    InflatingDecoder requestDecoder;
+    /**
+     * The writers of the file outputs, null if the files are written by the parsing thread.
+     */
+    private DiskWriterPoolImpl diskWriters;
+    /**
+     * The content store entry of the current part, null if it is not stored in a content store.
+     */
+    private ContentStoreImpl.Entry storeEntry;
+    /**
+     * Whether the current part is discarded.
+     */
+    private boolean discarding;
+    /**
+     * The digests of the current part.
+     */
+    private PartDigests digests = new PartDigests(List.of());
 
     /**
      * Sets up the necessary objects to start the parsing. Depending upon
      * the environment the concrete implementations can be very different.
      * @param request The servlet request
      * @throws RequestSizeException If the supplied size is invalid
+     * @throws IOException If the request is resumed and the checkpoint can not be used
      */
-    void init(HttpServletRequest request) {
+    void init(HttpServletRequest request) throws IOException {
 
-        // Fail fast mode
-        if (maxRequestSize > -1) {
+        final var contentEncoding = request.getHeader(Headers.CONTENT_ENCODING);
+        // Fail fast mode, the length of a compressed request says nothing about the decompressed size
+        if (maxRequestSize > -1 && !isCompressed(contentEncoding)) {
             var requestSize = request.getContentLengthLong();
             if (requestSize > maxRequestSize) {
                 throw new RequestSizeException("The size of the request (" + requestSize
@@ -135,8 +259,7 @@ public abstract class AbstractUploadParser implements MultipartParser.PartHandle
             }
         }
 
-        checkBuffer = ByteBuffer.allocate(sizeThreshold);
-        context = new UploadContextImpl(request, userObject);
+        prepare(request);
 
         var mimeType = request.getHeader(Headers.CONTENT_TYPE);
         String boundary;
@@ -149,8 +272,215 @@ public abstract class AbstractUploadParser implements MultipartParser.PartHandle
             }
             var encodingHeader = request.getCharacterEncoding();
             var charset = encodingHeader != null ? Charset.forName(encodingHeader) : ISO_8859_1;
-            parseState = MultipartParser.beginParse(this, boundary.getBytes(), maxBytesUsed, charset);
+            setContentEncoding(contentEncoding);
+            start(boundary.getBytes(), charset);
+        }
+    }
+
+    /**
+     * Creates the context and borrows the buffers used for reading and for the size threshold.
+     * @param request The servlet request, can be null if the parser is not used in a servlet
+     */
+    protected void prepare(HttpServletRequest request) {
+        checkBuffer = bufferPool.acquire(sizeThreshold);
+        dataBuffer = bufferPool.acquire(maxBytesUsed);
+        context = new UploadContextImpl(request, userObject);
+    }
+
+    /**
+     * Returns the borrowed buffers to the pool, called after the parsing has ended,
+     * whether it was successful or not. The parser can not read after this. If the
+     * parsing failed inside a part then its output is abandoned as well.
+     */
+    protected void releaseBuffers() {
+        abandonOutput();
+        if (dataBuffer != null) {
+            bufferPool.release(dataBuffer);
+            dataBuffer = null;
+        }
+        if (checkBuffer != null) {
+            bufferPool.release(checkBuffer);
+            checkBuffer = null;
+        }
+    }
+
+    /**
+     * Sets the content coding of the request body. The gzip and deflate codings are
+     * decompressed before parsing, the size limits apply to the decompressed bytes.
+     * Checkpoints are not taken for compressed requests, because the offsets in the
+     * decompressed body can not be mapped to the request body.
+     * @param contentEncoding The value of the Content-Encoding header, can be null
+     * @throws MultipartException If the coding is not supported or the request is resumed
+     */
+    protected void setContentEncoding(String contentEncoding) throws MultipartException {
+        requestDecoder = InflatingDecoder.forCoding(contentEncoding);
+        if (requestDecoder != null && resumeOffset > -1) {
+            requestDecoder.release();
+            throw new MultipartException("A compressed request can not be resumed!");
+        }
+    }
+
+    /**
+     * Returns whether the given content coding is decompressed by the parser.
+     * @param contentEncoding The value of the Content-Encoding header, can be null
+     * @return True for the gzip and deflate codings
+     */
+    protected static boolean isCompressed(String contentEncoding) {
+        return InflatingDecoder.isCompressed(contentEncoding);
+    }
+
+    /**
+     * Creates the multipart parser for the given boundary. If the request is resumed
+     * then the parser continues from the checkpoint.
+     * @param boundary The boundary of the request, without the leading dashes
+     * @param charset The charset of the part headers
+     * @throws IOException If the request is resumed and the checkpoint can not be used
+     */
+    protected void start(byte[] boundary, Charset charset) throws IOException {
+        boundaryBytes = boundary;
+        if (checkpointDirectory != null) {
+            if (checkpointToken == null) {
+                checkpointToken = UUID.randomUUID().toString();
+            }
+            context.setCheckpointToken(checkpointToken);
+            nextCheckpoint = checkpointInterval;
+        }
+        if (resumeOffset > -1) {
+            parseState = resume(charset);
+        } else {
+            parseState = MultipartParser.beginParse(this, boundaryBytes, maxBytesUsed, charset);
         }
+        parseState.setLimits(new MultipartParser.Limits(maxHeaderLineLength, maxHeadersPerPart, maxHeaderSize, maxPartCount, maxNestingDepth));
+        parseState.setBufferPool(bufferPool);
+    }
+
+    /**
+     * Restores the state saved in the checkpoint. The current part is recreated
+     * from the saved headers, its file is truncated to the saved size, in case
+     * more bytes were written after the checkpoint, and the upcoming bytes are
+     * appended to it. The part begin callback is not called again.
+     * @param charset The charset of the request
+     * @return The parser positioned at the checkpoint
+     * @throws IOException If the checkpoint is missing or does not match the request
+     */
+    private MultipartParser.ParseState resume(Charset charset) throws IOException {
+        if (checkpointDirectory == null) {
+            throw new IllegalStateException("The checkpoint directory must be set to resume a request!");
+        }
+        final var checkpoint = Checkpoint.read(checkpointDirectory, checkpointToken);
+        if (checkpoint == null) {
+            throw new MultipartException("There is no checkpoint for the resumed request!");
+        }
+        if (!Arrays.equals(checkpoint.boundary, boundaryBytes)) {
+            throw new MultipartException("The boundary of the resumed request is different!");
+        }
+        if (resumeOffset > checkpoint.offset) {
+            throw new MultipartException("The resumed request starts after the checkpoint!");
+        }
+        bodyOffset = resumeOffset;
+        skippedBytes = checkpoint.offset - resumeOffset;
+        nextCheckpoint = checkpoint.offset + checkpointInterval;
+
+        final var headers = checkpoint.headers();
+        final var contentDisposition = parseDisposition(headers);
+        final var part = new PartStreamImpl(contentDisposition == null ? ContentDisposition.NONE : contentDisposition, headers);
+        context.reset(part);
+        partSizeLimit = partLimits.resolve(part, maxPartSize);
+        // The bytes before the checkpoint are not seen again, the digests would be wrong
+        digests.skip();
+        context.setPartBytesRead(checkpoint.written);
+        context.finishBuffering();
+        final PartOutput output;
+        if (checkpoint.output != null) {
+            outputPath = Paths.get(checkpoint.output);
+            try (var channel = FileChannel.open(outputPath, WRITE)) {
+                if (channel.size() < checkpoint.written) {
+                    throw new MultipartException("The output of the resumed part is shorter than the checkpoint!");
+                }
+                channel.truncate(checkpoint.written);
+            }
+            writableChannel = Files.newByteChannel(outputPath, EnumSet.of(APPEND, CREATE, WRITE));
+            output = PartOutput.from(outputPath);
+        } else {
+            writableChannel = new NullChannel();
+            output = PartOutput.from(writableChannel);
+        }
+        resumableOutput = true;
+        context.setOutput(output);
+        return MultipartParser.resumeParse(this, boundaryBytes, maxBytesUsed, charset, checkpoint.matched);
+    }
+
+    /**
+     * Parses the bytes read from the request. The bytes of a resumed request which
+     * precede the checkpoint are skipped. A checkpoint is taken afterwards, if they are
+     * enabled and enough bytes were parsed since the last one.
+     * @param buffer The buffer containing the new bytes, it must be backed by an array
+     * @throws IOException If an error occurred with the I/O
+     */
+    void parseBuffer(ByteBuffer buffer) throws IOException {
+        final var count = buffer.remaining();
+        checkRequestSize(count);
+        final var skipped = (int) Math.min(skippedBytes, count);
+        skippedBytes -= skipped;
+        bodyOffset += count;
+        buffer.position(buffer.position() + skipped);
+        parseState.parse(buffer);
+        if (checkpointDirectory != null && requestDecoder == null) {
+            if (parseState.isComplete()) {
+                Checkpoint.delete(checkpointDirectory, checkpointToken);
+            } else if (bodyOffset >= nextCheckpoint) {
+                checkpoint();
+            }
+        }
+    }
+
+    /**
+     * Saves the current state if it is possible. Otherwise the checkpoint is tried
+     * again after the next buffer.
+     * @throws IOException If an error occurred with the I/O
+     */
+    private void checkpoint() throws IOException {
+        final var matched = parseState.checkpointState();
+        final var part = context.getCurrentPart();
+        if (matched < 0 || part == null || part.getParent() != null || context.isBuffering() || !resumableOutput) {
+            return;
+        }
+        final var headers = part.getHeadersObject();
+        final var headerNames = new ArrayList<String>(headers.size());
+        final var headerValues = new ArrayList<String>(headers.size());
+        for (var i = 0; i < headers.size(); i++) {
+            headerNames.add(headers.nameAt(i));
+            headerValues.add(headers.valueAt(i));
+        }
+        if (writableChannel instanceof WriteBehindChannel) {
+            // The checkpoint must not refer to bytes which are still queued
+            ((WriteBehindChannel) writableChannel).flush();
+        }
+        final var output = outputPath == null ? null : outputPath.toAbsolutePath().toString();
+        new Checkpoint(bodyOffset, boundaryBytes, matched, context.getPartBytesRead(), output, headerNames, headerValues)
+                .write(checkpointDirectory, checkpointToken);
+        nextCheckpoint = bodyOffset + checkpointInterval;
+    }
+
+    /**
+     * Returns whether the checkpoints are enabled.
+     * @return True if the checkpoint directory is set
+     */
+    boolean hasCheckpoints() {
+        return checkpointDirectory != null;
+    }
+
+    /**
+     * Returns the offset of the latest checkpoint of the given upload. The client should
+     * send the body again from this offset, or from an earlier one.
+     * @param directory The directory of the checkpoints
+     * @param token The token of the upload
+     * @return The offset in the original request body or -1 if there is no checkpoint
+     * @throws IOException If an error occurred with the I/O
+     */
+    public static long checkpointOffset(Path directory, String token) throws IOException {
+        final var checkpoint = Checkpoint.read(directory, token);
+        return checkpoint == null ? -1 : checkpoint.offset;
     }
 
     /**
@@ -160,12 +490,12 @@ public abstract class AbstractUploadParser implements MultipartParser.PartHandle
      */
     void checkPartSize(int additional) {
         long partSize = context.incrementAndGetPartBytesRead(additional);
-        if (maxPartSize > -1 && partSize > maxPartSize) {
+        if (partSize > partSizeLimit) {
             throw new PartSizeException("The size of the part ("
                     + partSize
                     + ") is greater than the allowed size ("
-                    + maxPartSize
-                    + ")!", partSize, maxPartSize);
+                    + partSizeLimit
+                    + ")!", partSize, partSizeLimit);
         }
     }
 
@@ -186,18 +516,61 @@ public abstract class AbstractUploadParser implements MultipartParser.PartHandle
     }
 
     @Override
-    public void beginPart(final Headers headers) {
+    public void beginPart(final Headers headers) throws MultipartException {
+        final var contentDisposition = parseDisposition(headers);
+        if (contentDisposition != null && "form-data".equals(contentDisposition.getType())
+                || parent != null && isNestedDisposition(contentDisposition)) {
+            final var part = new PartStreamImpl(contentDisposition == null ? ContentDisposition.NONE : contentDisposition, headers, parent);
+            context.reset(part);
+            partSizeLimit = partLimits.resolve(part, maxPartSize);
+            discarding = false;
+            digests.begin(headers);
+        }
+    }
+
+    @Override
+    public void beginMultipart(final Headers headers) {
+        final var contentDisposition = parseDisposition(headers);
+        parent = new PartStreamImpl(contentDisposition == null ? ContentDisposition.NONE : contentDisposition, headers, parent);
+    }
+
+    @Override
+    public void endMultipart() {
+        parent.markAsFinished();
+        parent = parent.getParent();
+    }
+
+    private ContentDisposition parseDisposition(final Headers headers) {
         final var disposition = headers.getHeader(Headers.CONTENT_DISPOSITION);
-        if (disposition != null && disposition.startsWith("form-data")) {
-            var fieldName = Headers.extractQuotedValueFromHeader(disposition, "name");
-            var fileName = Headers.extractQuotedValueFromHeader(disposition, "filename");
-            context.reset(new PartStreamImpl(fileName, fieldName, headers));
+        return disposition == null ? null : dispositions.get(disposition);
+    }
+
+    /**
+     * Checks the disposition of a part inside a nested multipart body. RFC 2388
+     * uses the <code>file</code> type for those, the header can also be missing.
+     * @param contentDisposition The parsed header, can be null
+     * @return Whether the part should be reported
+     */
+    private static boolean isNestedDisposition(final ContentDisposition contentDisposition) {
+        if (contentDisposition == null) {
+            return true;
         }
+        final var type = contentDisposition.getType();
+        return "file".equals(type) || "attachment".equals(type) || "form-data".equals(type);
     }
 
     @Override
     public void data(final ByteBuffer buffer) throws IOException {
+        if (discarding) {
+            buffer.position(buffer.limit());
+            return;
+        }
         checkPartSize(buffer.remaining());
+        digests.update(buffer);
+        if (partDataCallback != null) {
+            streamData(buffer);
+            return;
+        }
         copyBuffer(buffer);
         if (context.isBuffering() && (context.getPartBytesRead() >= sizeThreshold)) {
             validate(false);
@@ -209,6 +582,26 @@ public abstract class AbstractUploadParser implements MultipartParser.PartHandle
         }
     }
 
+    /**
+     * Passes the bytes to the part data callback and then to the output. The
+     * check buffer is not used, the output is requested before the first bytes.
+     * @param buffer The bytes of the current part
+     * @throws IOException If an error occurred with the callback or the channel
+     */
+    private void streamData(final ByteBuffer buffer) throws IOException {
+        if (context.isBuffering()) {
+            validate(false);
+            if (discarding) {
+                buffer.position(buffer.limit());
+                return;
+            }
+        }
+        partDataCallback.onPartData(context, buffer.asReadOnlyBuffer());
+        while (buffer.hasRemaining()) {
+            writableChannel.write(buffer);
+        }
+    }
+
     private void copyBuffer(final ByteBuffer buffer) {
         var transferCount = Math.min(checkBuffer.remaining(), buffer.remaining());
         if (transferCount > 0) {
@@ -223,15 +616,34 @@ public abstract class AbstractUploadParser implements MultipartParser.PartHandle
             context.getCurrentPart().markAsFinished();
         }
         PartOutput output = null;
+        outputPath = null;
         checkBuffer.flip();
         if (partBeginCallback != null) {
             output = requireNonNull(partBeginCallback.onPartBegin(context, checkBuffer));
-            if (output.safeToCast(WritableByteChannel.class)) {
+            if (output == PartOutput.discard()) {
+                discarding = true;
+                writableChannel = new NullChannel();
+                if (!partFinished) {
+                    skipPart();
+                }
+            } else if (output.safeToCast(WritableByteChannel.class)) {
                 writableChannel = output.unwrap(WritableByteChannel.class);
             } else if (output.safeToCast(OutputStream.class)) {
                 writableChannel = new OutputStreamBackedChannel(output.unwrap(OutputStream.class));
+            } else if (output.safeToCast(ContentStoreImpl.Entry.class)) {
+                storeEntry = output.unwrap(ContentStoreImpl.Entry.class);
+                writableChannel = storeEntry.open(diskWriters);
             } else if (output.safeToCast(Path.class)) {
-                writableChannel = Files.newByteChannel(output.unwrap(Path.class), EnumSet.of(APPEND, CREATE, WRITE));
+                final var path = output.unwrap(Path.class);
+                final var defaultFileSystem = path.getFileSystem() == FileSystems.getDefault();
+                if (diskWriters != null && defaultFileSystem) {
+                    writableChannel = diskWriters.open(path);
+                } else {
+                    writableChannel = Files.newByteChannel(path, EnumSet.of(APPEND, CREATE, WRITE));
+                }
+                if (defaultFileSystem) {
+                    outputPath = path;
+                }
             } else {
                 throw new IllegalArgumentException("Invalid output object!");
             }
@@ -240,7 +652,12 @@ public abstract class AbstractUploadParser implements MultipartParser.PartHandle
             writableChannel = new NullChannel();
             output = PartOutput.from(writableChannel);
         }
+        resumableOutput = outputPath != null || partBeginCallback == null;
         context.setOutput(output);
+        if (discarding) {
+            checkBuffer.clear();
+            return;
+        }
         checkBuffer.flip();
         while (checkBuffer.hasRemaining()) {
             writableChannel.write(checkBuffer);
@@ -256,15 +673,86 @@ public abstract class AbstractUploadParser implements MultipartParser.PartHandle
         checkBuffer.clear();
         context.updatePartBytesRead();
         writableChannel.close();
+        if (discarding) {
+            // The digests of a discarded part are incomplete
+            discarding = false;
+            digests.skip();
+        } else if (storeEntry != null) {
+            commitStoreEntry();
+        } else {
+            finishDigests();
+        }
         if (partEndCallback != null) {
             partEndCallback.onPartEnd(context);
         }
     }
 
+    /**
+     * Abandons the output of the current part if it did not end. The write-behind
+     * channels are closed without waiting for their queued writes and their buffers
+     * are returned, the temporary file of a content store entry is deleted.
+     */
+    private void abandonOutput() {
+        if (storeEntry != null) {
+            storeEntry.abandon();
+            storeEntry = null;
+        } else if (writableChannel instanceof WriteBehindChannel && writableChannel.isOpen()) {
+            ((WriteBehindChannel) writableChannel).abandon();
+        }
+    }
+
+    /**
+     * Makes the parser skip the rest of the current part after it was discarded.
+     */
+    void skipPart() {
+        parseState.skipPart();
+    }
+
+    /**
+     * Moves the file of the current part into the content store, after its digests
+     * were checked. The output of the part is replaced with the stored path.
+     * @throws IOException If a digest does not match or an error occurred with the I/O
+     */
+    private void commitStoreEntry() throws IOException {
+        final var entry = storeEntry;
+        storeEntry = null;
+        try {
+            finishDigests();
+        } catch (MultipartException e) {
+            entry.discard();
+            throw e;
+        }
+        context.setOutput(PartOutput.from(entry.commit()));
+    }
+
+    /**
+     * Adds the bytes of the current part to its digests, without consuming them.
+     * @param buffer The bytes of the current part
+     */
+    void updateDigests(final ByteBuffer buffer) {
+        digests.update(buffer);
+    }
+
+    /**
+     * Stores the digests of the current part and checks them against the
+     * digest headers of the part, if it had any.
+     * @throws MultipartException If a digest header does not match
+     */
+    void finishDigests() throws MultipartException {
+        final var values = digests.finish();
+        if (values != null) {
+            context.getCurrentPart().setDigests(values);
+        }
+    }
+
     public void setPartBeginCallback(OnPartBegin partBeginCallback) {
         this.partBeginCallback = partBeginCallback;
     }
 
+    public void setPartDataCallback(OnPartData partDataCallback) {
+        this.partDataCallback = partDataCallback;
+    }
+
     public void setPartEndCallback(OnPartEnd partEndCallback) {
         this.partEndCallback = partEndCallback;
     }
@@ -277,6 +765,47 @@ public abstract class AbstractUploadParser implements MultipartParser.PartHandle
         this.errorCallback = errorCallback;
     }
 
+    /**
+     * Enables the checkpoints.
+     * @param checkpointDirectory The directory where the checkpoints are stored
+     * @param checkpointInterval The number of bytes between the checkpoints
+     */
+    public void setCheckpoints(Path checkpointDirectory, long checkpointInterval) {
+        this.checkpointDirectory = checkpointDirectory;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public void setCheckpointToken(String checkpointToken) {
+        this.checkpointToken = checkpointToken == null ? null : Checkpoint.checkToken(checkpointToken);
+    }
+
+    /**
+     * Continues an earlier upload from its latest checkpoint.
+     * @param checkpointToken The token of the upload
+     * @param resumeOffset The offset in the original body where the new request body starts
+     */
+    public void setResume(String checkpointToken, long resumeOffset) {
+        setCheckpointToken(checkpointToken);
+        this.resumeOffset = resumeOffset;
+    }
+
+    /**
+     * Makes the parser write the file outputs through the given pool.
+     * @param diskWriters The pool, must be created by the parser
+     */
+    public void setDiskWriterPool(DiskWriterPool diskWriters) {
+        this.diskWriters = (DiskWriterPoolImpl) diskWriters;
+    }
+
+    /**
+     * Sets the digests which are computed for every part.
+     * @param algorithms The names of the algorithms
+     * @throws IllegalArgumentException If an algorithm is not supported
+     */
+    public void setDigestAlgorithms(Collection<String> algorithms) {
+        this.digests = new PartDigests(algorithms);
+    }
+
     public void setUserObject(Object userObject) {
         this.userObject = userObject;
     }
@@ -289,7 +818,10 @@ public abstract class AbstractUploadParser implements MultipartParser.PartHandle
     public void setMaxBytesUsed(int maxBytesUsed) {
         // There are two byte buffers so each one gets half of the amount
         this.maxBytesUsed = maxBytesUsed / 2;
-        this.dataBuffer = ByteBuffer.allocate(maxBytesUsed / 2);
+    }
+
+    public void setBufferPool(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
     }
 
     public void setSizeThreshold(int sizeThreshold) {
@@ -298,9 +830,34 @@ public abstract class AbstractUploadParser implements MultipartParser.PartHandle
 
     public void setMaxPartSize(long maxPartSize) {
         this.maxPartSize = maxPartSize;
+        this.partSizeLimit = maxPartSize < 0 ? PartLimits.UNLIMITED : maxPartSize;
+    }
+
+    public void setPartLimits(Map<String, Long> fields, Map<String, Long> contentTypes) {
+        this.partLimits = new PartLimits(fields, contentTypes);
     }
 
     public void setMaxRequestSize(long maxRequestSize) {
         this.maxRequestSize = maxRequestSize;
     }
+
+    public void setMaxHeaderLineLength(int maxHeaderLineLength) {
+        this.maxHeaderLineLength = maxHeaderLineLength;
+    }
+
+    public void setMaxHeadersPerPart(int maxHeadersPerPart) {
+        this.maxHeadersPerPart = maxHeadersPerPart;
+    }
+
+    public void setMaxHeaderSize(long maxHeaderSize) {
+        this.maxHeaderSize = maxHeaderSize;
+    }
+
+    public void setMaxPartCount(long maxPartCount) {
+        this.maxPartCount = maxPartCount;
+    }
+
+    public void setMaxNestingDepth(int maxNestingDepth) {
+        this.maxNestingDepth = maxNestingDepth;
+    }
 }
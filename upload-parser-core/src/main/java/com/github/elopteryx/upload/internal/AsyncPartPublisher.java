@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.elopteryx.upload.internal;
+
+import static java.util.Objects.requireNonNull;
+
+import com.github.elopteryx.upload.PartPublisher;
+import com.github.elopteryx.upload.errors.MultipartException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * The publisher implementation of the async parser. The servlet stream is read only if
+ * the subscribers have outstanding demand. The events produced by parsing a buffer
+ * are queued and emitted as they are requested, the next buffer is read only after
+ * the queue is empty, meaning that at most one buffer is held in memory.
+ *
+ * <p>The container threads and the subscriber threads all call {@link #drain()}, only one
+ * of them runs the loop at a time, the others just mark that it should run again. If the
+ * loop stops because there is no demand, then the container does not call
+ * {@link #onDataAvailable()} again, the subscriber thread which requests more continues the
+ * reading instead.</p>
+ */
+public class AsyncPartPublisher extends AsyncUploadParser implements Flow.Publisher<PartPublisher>, Flow.Subscription {
+
+    /**
+     * The event kinds.
+     */
+    private static final int BEGIN = 0;
+    private static final int DATA = 1;
+    private static final int END = 2;
+
+    /**
+     * The events not yet emitted, accessed only from the drain loop.
+     */
+    private final Queue<Event> events = new ArrayDeque<>();
+    /**
+     * The number of pending drain requests.
+     */
+    private final AtomicInteger wip = new AtomicInteger();
+    /**
+     * The number of parts requested by the subscriber.
+     */
+    private final AtomicLong demand = new AtomicLong();
+    /**
+     * Whether the publisher has been subscribed to.
+     */
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+    /**
+     * The subscriber of the parts.
+     */
+    private Flow.Subscriber<? super PartPublisher> subscriber;
+    /**
+     * Whether the parser has been set up and the stream can be read.
+     */
+    private volatile boolean started;
+    /**
+     * Whether the subscriber cancelled the upload.
+     */
+    private volatile boolean cancelled;
+    /**
+     * The error reported by the container or caused by the subscriber.
+     */
+    private volatile Throwable error;
+    /**
+     * The part currently being parsed, null if the part is not reported.
+     */
+    private PublishedPart current;
+    /**
+     * Whether a terminal signal has been sent.
+     */
+    private boolean done;
+
+    public AsyncPartPublisher(HttpServletRequest request) {
+        super(request);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super PartPublisher> subscriber) {
+        requireNonNull(subscriber);
+        if (!subscribed.compareAndSet(false, true)) {
+            reject(subscriber, "The publisher allows only one subscriber!");
+            return;
+        }
+        this.subscriber = subscriber;
+        subscriber.onSubscribe(this);
+        try {
+            setupAsyncParse();
+        } catch (IOException | RuntimeException e) {
+            error = e;
+        }
+        started = true;
+        drain();
+    }
+
+    @Override
+    public void request(long count) {
+        if (count <= 0) {
+            error = new IllegalArgumentException("The requested amount must be positive, got " + count + "!");
+        } else {
+            addDemand(demand, count);
+        }
+        drain();
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+        drain();
+    }
+
+    @Override
+    public void onDataAvailable() {
+        drain();
+    }
+
+    @Override
+    public void onAllDataRead() {
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        error = throwable;
+        drain();
+    }
+
+    /**
+     * Runs the drain loop, or marks that it should run again if another thread is running it.
+     */
+    void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        var missed = 1;
+        do {
+            if (started && !done) {
+                try {
+                    drainLoop();
+                } catch (IOException | RuntimeException e) {
+                    done = true;
+                    releaseBuffers();
+                    fail(e);
+                    subscriber.onError(e);
+                }
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * Emits the queued events while there is demand for them and reads the next buffer
+     * when the queue is empty.
+     * @throws IOException If an error occurred with the I/O
+     */
+    private void drainLoop() throws IOException {
+        while (true) {
+            if (cancelled) {
+                done = true;
+                releaseBuffers();
+                fail(new CancellationException("The upload was cancelled!"));
+                return;
+            }
+            final var failure = error;
+            if (failure != null) {
+                done = true;
+                releaseBuffers();
+                fail(failure);
+                subscriber.onError(failure);
+                return;
+            }
+            final var event = events.peek();
+            if (event != null) {
+                if (!emit(event)) {
+                    return;
+                }
+                events.poll();
+            } else if (parseState.isComplete()) {
+                done = true;
+                releaseBuffers();
+                subscriber.onComplete();
+                return;
+            } else if (!hasDemand() || !servletInputStream.isFinished() && !isReadable()) {
+                return;
+            } else {
+                parseCurrentItem();
+            }
+        }
+    }
+
+    /**
+     * Emits the given event if it was requested.
+     * @param event The next event
+     * @return Whether the event was consumed
+     */
+    private boolean emit(Event event) {
+        switch (event.kind) {
+            case BEGIN:
+                if (demand.get() == 0) {
+                    return false;
+                }
+                consumeDemand(demand);
+                subscriber.onNext(event.part);
+                return true;
+            case DATA:
+                return event.part.emit(event.data);
+            default:
+                return event.part.complete();
+        }
+    }
+
+    /**
+     * Returns whether the next buffer can be read. The bytes of the current part are read
+     * if its subscriber requested them, the beginning of the next part if the subscriber
+     * of this publisher did.
+     * @return Whether there is demand for the upcoming bytes
+     */
+    private boolean hasDemand() {
+        return current != null ? current.hasDemand() : demand.get() > 0;
+    }
+
+    /**
+     * Signals the error to the parts which are not completed yet and drops the queued events.
+     * @param throwable The error
+     */
+    private void fail(Throwable throwable) {
+        done = true;
+        if (current != null) {
+            current.fail(throwable);
+        }
+        for (var event : events) {
+            event.part.fail(throwable);
+        }
+        events.clear();
+    }
+
+    @Override
+    public void beginPart(Headers headers) throws MultipartException {
+        final var previous = context.getCurrentPart();
+        super.beginPart(headers);
+        final var part = context.getCurrentPart();
+        current = part == previous ? null : new PublishedPart(part, this);
+        if (current != null) {
+            events.add(new Event(BEGIN, current, null));
+        }
+    }
+
+    @Override
+    public void data(ByteBuffer buffer) {
+        checkPartSize(buffer.remaining());
+        updateDigests(buffer);
+        if (current != null && !current.isCancelled()) {
+            events.add(new Event(DATA, current, ByteBuffer.allocate(buffer.remaining()).put(buffer).flip()));
+        }
+        buffer.position(buffer.limit());
+    }
+
+    @Override
+    public void endPart() throws MultipartException {
+        if (current != null) {
+            finishDigests();
+            context.getCurrentPart().markAsFinished();
+            context.updatePartBytesRead();
+            events.add(new Event(END, current, null));
+            current = null;
+        }
+    }
+
+    /**
+     * Signals an error to a subscriber which can not be accepted.
+     * @param subscriber The subscriber
+     * @param message The message of the error
+     */
+    static void reject(Flow.Subscriber<?> subscriber, String message) {
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long count) {
+                // Nothing to emit
+            }
+
+            @Override
+            public void cancel() {
+                // Nothing to cancel
+            }
+        });
+        subscriber.onError(new IllegalStateException(message));
+    }
+
+    /**
+     * Adds the requested amount to the demand, an overflow means unbounded demand.
+     * @param demand The demand
+     * @param count The requested amount, always positive
+     */
+    static void addDemand(AtomicLong demand, long count) {
+        demand.getAndUpdate(current -> current + count < 0 ? Long.MAX_VALUE : current + count);
+    }
+
+    /**
+     * Decrements the demand after an item was emitted, unless it is unbounded.
+     * @param demand The demand
+     */
+    static void consumeDemand(AtomicLong demand) {
+        demand.getAndUpdate(current -> current == Long.MAX_VALUE ? current : current - 1);
+    }
+
+    /**
+     * A queued signal of a part.
+     */
+    private static final class Event {
+
+        private final int kind;
+        private final PublishedPart part;
+        private final ByteBuffer data;
+
+        Event(int kind, PublishedPart part, ByteBuffer data) {
+            this.kind = kind;
+            this.part = part;
+            this.data = data;
+        }
+    }
+}
@@ -21,6 +21,10 @@ import static java.util.Objects.requireNonNull;
 import com.github.elopteryx.upload.errors.MultipartException;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.servlet.ReadListener;
 import javax.servlet.ServletException;
 import javax.servlet.ServletInputStream;
@@ -30,20 +34,75 @@ import javax.servlet.http.HttpServletRequest;
  * The asynchronous implementation of the parser. This parser can be used to perform a parse
  * only if the calling servlet supports async mode.
  * Implements the listener interface. Called by the servlet container whenever data is available.
+ *
+ * <p>If a callback executor is set then the container threads only read and parse. The handler
+ * calls, including the user callbacks and the writes to the outputs, are queued to the
+ * executor with a copy of the bytes. The reading stops while the queue is full. The
+ * container does not call {@link #onDataAvailable()} again in that case, so the executor
+ * continues the reading after the queue has emptied. The read loop is guarded, only one
+ * thread runs it at a time.</p>
  */
 public class AsyncUploadParser extends AbstractUploadParser implements ReadListener {
 
-    private ServletInputStream servletInputStream;
+    /**
+     * The stream of the request, available after the setup.
+     */
+    ServletInputStream servletInputStream;
 
     /**
      * The request object.
      */
     private final HttpServletRequest request;
 
+    /**
+     * The executor of the callbacks, null if they run on the container threads.
+     */
+    private Executor callbackExecutor;
+
+    /**
+     * The number of queued callbacks after which the reading stops.
+     */
+    private int callbackQueueCapacity;
+
+    /**
+     * The queued callbacks, null if they run on the container threads.
+     */
+    private CallbackQueue callbacks;
+
+    /**
+     * The number of pending read loop requests.
+     */
+    private final AtomicInteger readWip = new AtomicInteger();
+
+    /**
+     * Whether the read loop stopped because the callback queue was full.
+     */
+    private final AtomicBoolean readPaused = new AtomicBoolean();
+
+    /**
+     * Whether the request complete callback has been queued.
+     */
+    private boolean completed;
+
+    /**
+     * The bytes of a compressed request which were read but not decompressed yet.
+     */
+    private ByteBuffer compressedBuffer;
+
     public AsyncUploadParser(HttpServletRequest request) {
         this.request = requireNonNull(request);
     }
 
+    /**
+     * Runs the callbacks on the given executor instead of the container threads.
+     * @param callbackExecutor The executor of the callbacks
+     * @param callbackQueueCapacity The number of queued callbacks after which the reading stops
+     */
+    public void setCallbackExecutor(Executor callbackExecutor, int callbackQueueCapacity) {
+        this.callbackExecutor = callbackExecutor;
+        this.callbackQueueCapacity = callbackQueueCapacity;
+    }
+
     /**
      * Sets up the necessary objects to start the parsing. Depending upon
      * the environment the concrete implementations can be very different.
@@ -52,6 +111,19 @@ public class AsyncUploadParser extends AbstractUploadParser implements ReadListe
     private void init() throws IOException {
         init(request);
         servletInputStream = request.getInputStream();
+        if (requestDecoder != null) {
+            compressedBuffer = bufferPool.acquire(dataBuffer.capacity());
+            compressedBuffer.limit(0);
+        }
+    }
+
+    @Override
+    protected void releaseBuffers() {
+        super.releaseBuffers();
+        if (compressedBuffer != null) {
+            bufferPool.release(compressedBuffer);
+            compressedBuffer = null;
+        }
     }
 
     /**
@@ -60,6 +132,12 @@ public class AsyncUploadParser extends AbstractUploadParser implements ReadListe
      * @throws IOException If an error occurred with I/O
      */
     public void setupAsyncParse() throws IOException {
+        if (callbackExecutor != null) {
+            if (hasCheckpoints()) {
+                throw new IllegalStateException("Checkpoints can not be used with a callback executor!");
+            }
+            callbacks = new CallbackQueue(callbackExecutor, callbackQueueCapacity, this::callbackFailed, this::callbacksDrained);
+        }
         init();
         if (!request.isAsyncSupported()) {
             throw new IllegalStateException("The servlet does not support async mode! Enable it or use a blocking parser.");
@@ -78,11 +156,147 @@ public class AsyncUploadParser extends AbstractUploadParser implements ReadListe
      */
     @Override
     public void onDataAvailable() throws IOException {
-        while (servletInputStream.isReady() && !servletInputStream.isFinished()) {
+        if (callbacks != null) {
+            readLoop();
+            return;
+        }
+        while (isReadable() && !servletInputStream.isFinished()) {
             parseCurrentItem();
         }
     }
 
+    /**
+     * Reads and parses while the stream has data and the callback queue has room. The parse
+     * errors are queued as well, so the error callback is called after the earlier callbacks.
+     * The buffers are released here if a callback has failed, as the reading may be in
+     * progress on another thread when the failure happens.
+     */
+    private void readLoop() {
+        if (readWip.getAndIncrement() != 0) {
+            return;
+        }
+        var missed = 1;
+        do {
+            try {
+                readAvailable();
+            } catch (IOException | RuntimeException e) {
+                completed = true;
+                callbacks.offer(() -> {
+                    releaseBuffers();
+                    throw e;
+                });
+            }
+            if (callbacks.isFailed()) {
+                releaseBuffers();
+            }
+            missed = readWip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void readAvailable() throws IOException {
+        while (!completed && !callbacks.isFailed()) {
+            if (callbacks.isFull()) {
+                readPaused.set(true);
+                // The queue may have emptied before the flag was set
+                if (callbacks.isFull() || !readPaused.compareAndSet(true, false)) {
+                    return;
+                }
+            } else if (servletInputStream.isFinished() || parseState.isComplete()) {
+                while (parseCurrentItem()) {
+                    // Parse the rest of the stream, fails if the body is incomplete
+                }
+                completed = true;
+                // The queued callbacks may still use the buffer of the size threshold
+                callbacks.offer(() -> {
+                    releaseBuffers();
+                    if (requestCallback != null) {
+                        requestCallback.onRequestComplete(context);
+                    }
+                });
+            } else if (isReadable()) {
+                parseCurrentItem();
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Resumes the reading on the executor after the queue has emptied.
+     */
+    private void callbacksDrained() {
+        if (readPaused.compareAndSet(true, false)) {
+            readLoop();
+        }
+    }
+
+    /**
+     * Passes the failure of a queued callback to the error callback, on the executor.
+     * The buffers are released first, by the read loop which stops the reading.
+     * @param exception The exception of the callback
+     */
+    private void callbackFailed(Exception exception) {
+        readLoop();
+        onErrorCallback(exception);
+    }
+
+    /**
+     * The parser state can only be changed by the thread reading the request, the
+     * discarded parts are not skipped if the callbacks are called on the executor.
+     */
+    @Override
+    void skipPart() {
+        if (callbacks == null) {
+            super.skipPart();
+        }
+    }
+
+    @Override
+    public void beginPart(Headers headers) throws MultipartException {
+        if (callbacks == null) {
+            super.beginPart(headers);
+        } else {
+            callbacks.offer(() -> super.beginPart(headers));
+        }
+    }
+
+    @Override
+    public void beginMultipart(Headers headers) {
+        if (callbacks == null) {
+            super.beginMultipart(headers);
+        } else {
+            callbacks.offer(() -> super.beginMultipart(headers));
+        }
+    }
+
+    @Override
+    public void data(ByteBuffer buffer) throws IOException {
+        if (callbacks == null) {
+            super.data(buffer);
+        } else {
+            final var copy = ByteBuffer.allocate(buffer.remaining()).put(buffer).flip();
+            callbacks.offer(() -> super.data(copy));
+        }
+    }
+
+    @Override
+    public void endPart() throws IOException {
+        if (callbacks == null) {
+            super.endPart();
+        } else {
+            callbacks.offer(super::endPart);
+        }
+    }
+
+    @Override
+    public void endMultipart() {
+        if (callbacks == null) {
+            super.endMultipart();
+        } else {
+            callbacks.offer(super::endMultipart);
+        }
+    }
+
     /**
      * Parses the servlet stream once. Will switch to a new item
      * if the current one is fully read.
@@ -90,7 +304,10 @@ public class AsyncUploadParser extends AbstractUploadParser implements ReadListe
      * @return Whether it should be called again
      * @throws IOException if an I/O related error has occurred during processing
      */
-    private boolean parseCurrentItem() throws IOException {
+    boolean parseCurrentItem() throws IOException {
+        if (requestDecoder != null) {
+            return parseCompressedItem();
+        }
         var count = -1;
         if (!servletInputStream.isFinished()) {
             count = servletInputStream.read(dataBuffer.array());
@@ -100,20 +317,68 @@ public class AsyncUploadParser extends AbstractUploadParser implements ReadListe
                 throw new MultipartException("Stream ended unexpectedly!");
             }
         } else {
-            checkRequestSize(count);
             dataBuffer.position(0);
             dataBuffer.limit(count);
-            parseState.parse(dataBuffer);
+            parseBuffer(dataBuffer);
+        }
+        return !parseState.isComplete();
+    }
+
+    /**
+     * Decompresses and parses the next buffer of a compressed request. The servlet
+     * stream is read only if the previously read bytes are decompressed, so a single
+     * read can not produce an unlimited amount of work.
+     * @return Whether it should be called again
+     * @throws IOException if an I/O related error has occurred during processing
+     */
+    private boolean parseCompressedItem() throws IOException {
+        if (!hasBufferedInput()) {
+            var count = -1;
+            if (!servletInputStream.isFinished()) {
+                count = servletInputStream.read(compressedBuffer.array());
+            }
+            if (count == -1) {
+                requestDecoder.finish();
+                if (!parseState.isComplete()) {
+                    throw new MultipartException("Stream ended unexpectedly!");
+                }
+                return false;
+            }
+            compressedBuffer.position(0);
+            compressedBuffer.limit(count);
+        }
+        dataBuffer.clear();
+        requestDecoder.inflate(compressedBuffer, dataBuffer);
+        dataBuffer.flip();
+        if (dataBuffer.hasRemaining()) {
+            parseBuffer(dataBuffer);
         }
         return !parseState.isComplete();
     }
 
+    /**
+     * Returns whether the next call of {@link #parseCurrentItem()} has bytes to parse
+     * without blocking.
+     * @return True if the stream is ready or compressed bytes are waiting
+     */
+    boolean isReadable() {
+        return hasBufferedInput() || servletInputStream.isReady();
+    }
+
+    private boolean hasBufferedInput() {
+        return requestDecoder != null && (compressedBuffer.hasRemaining() || !requestDecoder.needsInput());
+    }
+
     /**
      * Invoked when all data for the current request has been read.
      * @throws IOException if an I/O related error has occurred during processing
      */
     @Override
     public void onAllDataRead() throws IOException {
+        if (callbacks != null) {
+            readLoop();
+            return;
+        }
         // After the servlet input stream is finished there are still unread bytes or
         // in case of fast uploads or small sizes the initial parse can read the whole
         // input stream, causing the {@link #onDataAvailable} not to be called even once.
@@ -122,6 +387,7 @@ public class AsyncUploadParser extends AbstractUploadParser implements ReadListe
                 break;
             }
         }
+        releaseBuffers();
         try {
             if (requestCallback != null) {
                 requestCallback.onRequestComplete(context);
@@ -137,6 +403,22 @@ public class AsyncUploadParser extends AbstractUploadParser implements ReadListe
      */
     @Override
     public void onError(Throwable throwable) {
+        if (callbacks != null) {
+            callbacks.offer(() -> {
+                releaseBuffers();
+                onErrorCallback(throwable);
+            });
+            return;
+        }
+        releaseBuffers();
+        onErrorCallback(throwable);
+    }
+
+    /**
+     * Calls the error callback.
+     * @param throwable The unhandled error that happened
+     */
+    private void onErrorCallback(Throwable throwable) {
         try {
             if (errorCallback != null) {
                 errorCallback.onError(context, throwable);
@@ -22,6 +22,7 @@ import static java.nio.charset.StandardCharsets.US_ASCII;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /**
  * Copied from Undertow. Stripped out the unnecessary parts, like the
@@ -35,13 +36,17 @@ import java.nio.ByteBuffer;
 class Base64Decoder {
 
     private static final byte[] ENCODING_TABLE;
-    private static final byte[] DECODING_TABLE = new byte[80];
+
+    /**
+     * The value of every possible input byte, -1 for the bytes outside of the alphabet.
+     */
+    private static final int[] DECODING_TABLE = new int[256];
 
     static {
         ENCODING_TABLE = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(US_ASCII);
+        Arrays.fill(DECODING_TABLE, -1);
         for (var i = 0; i < ENCODING_TABLE.length; i++) {
-            var offSet = (ENCODING_TABLE[i] & 0xFF) - 43;
-            DECODING_TABLE[offSet] = (byte)(i + 1);  // zero = illegal
+            DECODING_TABLE[ENCODING_TABLE[i] & 0xFF] = i;
         }
     }
 
@@ -75,13 +80,7 @@ class Base64Decoder {
         if (charInt == ' ' || charInt == '\t' || charInt == '\r' || charInt == '\n') {
             return SKIP;
         }
-        if (charInt < 43 || charInt > 122) {
-            if (ignoreErrors) {
-                return ERROR;
-            }
-            throw new IOException("Invalid base64 character encountered: " + charInt);
-        }
-        var byteInt = (DECODING_TABLE[charInt - 43] & 0xFF) - 1;
+        var byteInt = DECODING_TABLE[charInt];
         if (byteInt < 0) {
             if (ignoreErrors) {
                 return ERROR;
@@ -114,7 +113,18 @@ class Base64Decoder {
         var remaining = source.remaining();
         var targetRemaining = target.remaining();
         var byteInt = 0;
+        final var blocks = source.hasArray() && target.hasArray();
         while (remaining-- > 0 && targetRemaining > 0) {
+            if (state == 0 && blocks) {
+                final var count = decodeBlocks(source, target, Math.min((remaining + 1) / 4, targetRemaining / 3));
+                if (count > 0) {
+                    remaining -= count * 4;
+                    targetRemaining -= count * 3;
+                    if (remaining < 0 || targetRemaining <= 0) {
+                        break;
+                    }
+                }
+            }
             byteInt = nextByte(source, state, last, false);
             if (byteInt == MARK) {
                 last = MARK;
@@ -184,6 +194,43 @@ class Base64Decoder {
         this.state = state;
     }
 
+    /**
+     * Decodes complete four character blocks directly between the backing arrays. The
+     * decoding stops at the first block which contains a character outside of the
+     * alphabet, like a line break or the padding, those are left for the state machine.
+     * @param source The encoded data, positioned at the start of a block
+     * @param target The decoded data
+     * @param max The maximum number of blocks to decode
+     * @return The number of decoded blocks
+     */
+    private static int decodeBlocks(ByteBuffer source, ByteBuffer target, int max) {
+        final var table = DECODING_TABLE;
+        final var src = source.array();
+        final var dst = target.array();
+        var in = source.arrayOffset() + source.position();
+        var out = target.arrayOffset() + target.position();
+        final var end = in + max * 4;
+        while (in < end) {
+            final var b1 = table[src[in] & 0xFF];
+            final var b2 = table[src[in + 1] & 0xFF];
+            final var b3 = table[src[in + 2] & 0xFF];
+            final var b4 = table[src[in + 3] & 0xFF];
+            if ((b1 | b2 | b3 | b4) < 0) {
+                break;
+            }
+            final var bits = b1 << 18 | b2 << 12 | b3 << 6 | b4;
+            dst[out] = (byte) (bits >>> 16);
+            dst[out + 1] = (byte) (bits >>> 8);
+            dst[out + 2] = (byte) bits;
+            in += 4;
+            out += 3;
+        }
+        final var count = (in - source.arrayOffset() - source.position()) / 4;
+        source.position(in - source.arrayOffset());
+        target.position(out - target.arrayOffset());
+        return count;
+    }
+
     private static void drain(ByteBuffer source, int byteInt, int state, int last) {
         while (byteInt != DONE && source.remaining() > 0) {
             try {
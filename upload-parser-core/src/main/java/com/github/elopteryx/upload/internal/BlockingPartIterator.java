@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.elopteryx.upload.internal;
+
+import com.github.elopteryx.upload.MultipartIterator;
+import com.github.elopteryx.upload.StreamingPart;
+import com.github.elopteryx.upload.UploadContext;
+import com.github.elopteryx.upload.errors.MultipartException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Queue;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * The pull implementation of the blocking parser. The parser is paused after each
+ * step which produced an event, the events are queued until the caller asks for them.
+ * The body chunks are views of the read buffer, the next buffer is read only after the
+ * previous one has been parsed and its events consumed. The chunks decoded from a
+ * transfer encoding are copied, because the decoders reuse their buffers.
+ */
+public class BlockingPartIterator extends BlockingUploadParser implements MultipartIterator {
+
+    /**
+     * The event kinds.
+     */
+    private static final int BEGIN = 0;
+    private static final int DATA = 1;
+    private static final int END = 2;
+
+    /**
+     * The events not yet consumed.
+     */
+    private final Queue<Event> events = new ArrayDeque<>();
+    /**
+     * Whether the part being parsed is reported.
+     */
+    private boolean reporting;
+    /**
+     * The part returned last.
+     */
+    private Part current;
+    /**
+     * The exception which stopped the parsing, null if there is none.
+     */
+    private Exception failure;
+
+    public BlockingPartIterator(HttpServletRequest request) {
+        super(request);
+    }
+
+    /**
+     * Sets up the parser, nothing is read from the request until the first part is requested.
+     * @throws IOException If an error occurred with the I/O
+     */
+    public void setupIteration() throws IOException {
+        init();
+        dataBuffer.limit(0);
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        if (current != null) {
+            current.stream.closed = true;
+        }
+        while (true) {
+            final var event = events.peek();
+            if (event == null) {
+                if (!advance()) {
+                    return false;
+                }
+            } else if (event.kind == BEGIN) {
+                return true;
+            } else {
+                events.poll();
+            }
+        }
+    }
+
+    @Override
+    public StreamingPart next() throws IOException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        current = new Part(events.poll().part);
+        return current;
+    }
+
+    @Override
+    public UploadContext getContext() {
+        return context;
+    }
+
+    /**
+     * Parses the rest of the current buffer or reads the next one. If the parsing fails
+     * then the buffers are returned and the later calls throw the same exception.
+     * @return False if the multipart body has ended
+     * @throws IOException If an error occurred with the I/O or the stream ended too early
+     */
+    private boolean advance() throws IOException {
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure != null) {
+            throw (RuntimeException) failure;
+        }
+        try {
+            return parseNext();
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+            releaseBuffers();
+            throw e;
+        }
+    }
+
+    private boolean parseNext() throws IOException {
+        if (parseState.isComplete()) {
+            releaseBuffers();
+            return false;
+        }
+        if (dataBuffer.hasRemaining()) {
+            parseState.parse(dataBuffer);
+        } else if (fill()) {
+            if (dataBuffer.hasRemaining()) {
+                parseBuffer(dataBuffer);
+            }
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void beginPart(Headers headers) throws MultipartException {
+        final var previous = context.getCurrentPart();
+        super.beginPart(headers);
+        final var part = context.getCurrentPart();
+        reporting = part != previous;
+        if (reporting) {
+            events.add(new Event(BEGIN, part, null));
+            parseState.pause();
+        }
+    }
+
+    @Override
+    public void data(ByteBuffer buffer) {
+        checkPartSize(buffer.remaining());
+        updateDigests(buffer);
+        if (reporting && buffer.hasRemaining()) {
+            final var data = buffer.array() == dataBuffer.array()
+                    ? buffer.slice()
+                    : ByteBuffer.allocate(buffer.remaining()).put(buffer.duplicate()).flip();
+            events.add(new Event(DATA, null, data));
+            parseState.pause();
+        }
+        buffer.position(buffer.limit());
+    }
+
+    @Override
+    public void endPart() throws MultipartException {
+        if (reporting) {
+            finishDigests();
+            context.getCurrentPart().markAsFinished();
+            context.updatePartBytesRead();
+            events.add(new Event(END, null, null));
+            parseState.pause();
+            reporting = false;
+        }
+    }
+
+    /**
+     * The part returned by the iterator.
+     */
+    private final class Part extends ForwardingPartStream implements StreamingPart {
+
+        private final PartInputStream stream = new PartInputStream();
+
+        Part(PartStreamImpl part) {
+            super(part);
+        }
+
+        @Override
+        public InputStream openStream() {
+            return stream;
+        }
+    }
+
+    /**
+     * Reads the body of the current part from the queued events.
+     */
+    private final class PartInputStream extends InputStream {
+
+        /**
+         * Whether the stream was closed by the caller or by the iterator.
+         */
+        private boolean closed;
+        /**
+         * Whether the end of the part has been reached.
+         */
+        private boolean ended;
+
+        @Override
+        public int read() throws IOException {
+            final var buffer = nextBuffer();
+            return buffer == null ? -1 : buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            Objects.checkFromIndexSize(offset, length, bytes.length);
+            if (length == 0) {
+                return 0;
+            }
+            final var buffer = nextBuffer();
+            if (buffer == null) {
+                return -1;
+            }
+            final var count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            final var event = events.peek();
+            return closed || ended || event == null || event.kind != DATA ? 0 : event.data.remaining();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        /**
+         * Returns the chunk which contains the next bytes, parsing more if necessary.
+         * @return The chunk or null if the part has ended
+         * @throws IOException If an error occurred with the I/O or the stream is closed
+         */
+        private ByteBuffer nextBuffer() throws IOException {
+            if (closed) {
+                throw new IOException("The stream of the part is closed!");
+            }
+            while (!ended) {
+                final var event = events.peek();
+                if (event == null) {
+                    ended = !advance();
+                } else if (event.kind == DATA && event.data.hasRemaining()) {
+                    return event.data;
+                } else {
+                    events.poll();
+                    ended = event.kind == END;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A queued event of the parser.
+     */
+    private static final class Event {
+
+        private final int kind;
+        private final PartStreamImpl part;
+        private final ByteBuffer data;
+
+        Event(int kind, PartStreamImpl part, ByteBuffer data) {
+            this.kind = kind;
+            this.part = part;
+            this.data = data;
+        }
+    }
+}
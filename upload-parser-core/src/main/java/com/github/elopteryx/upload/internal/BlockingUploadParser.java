@@ -21,6 +21,10 @@ import com.github.elopteryx.upload.errors.MultipartException;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 
@@ -40,6 +44,11 @@ public class BlockingUploadParser extends AbstractUploadParser {
      */
     protected InputStream inputStream;
 
+    /**
+     * The timeouts of a parse running on an executor, null if there are none.
+     */
+    private ParseWatchdog watchdog;
+
     public BlockingUploadParser(HttpServletRequest request) {
         this.request = request;
     }
@@ -49,9 +58,18 @@ public class BlockingUploadParser extends AbstractUploadParser {
      * the environment the concrete implementations can be very different.
      * @throws IOException If an error occurs with the IO
      */
-    private void init() throws IOException {
+    void init() throws IOException {
         init(request);
-        inputStream = request.getInputStream();
+        inputStream = decodeContent(request.getInputStream());
+    }
+
+    /**
+     * Decompresses the given stream if the request has a supported content coding.
+     * @param stream The request stream
+     * @return The stream which should be parsed
+     */
+    protected InputStream decodeContent(InputStream stream) {
+        return requestDecoder == null ? stream : new InflatingInputStream(stream, requestDecoder, dataBuffer.capacity());
     }
 
     /**
@@ -64,10 +82,12 @@ public class BlockingUploadParser extends AbstractUploadParser {
         init();
         try {
             blockingRead();
+            releaseBuffers();
             if (requestCallback != null) {
                 requestCallback.onRequestComplete(context);
             }
         } catch (Exception e) {
+            releaseBuffers();
             if (errorCallback != null) {
                 errorCallback.onError(context, e);
             }
@@ -75,6 +95,86 @@ public class BlockingUploadParser extends AbstractUploadParser {
         return context;
     }
 
+    /**
+     * Performs a full parsing on the given executor. The request is put into async mode
+     * if the servlet supports it, so the calling thread can return to the container.
+     * The callbacks are called on the executor, the returned future is completed after
+     * the request complete or the error callback has returned.
+     * @param executor The executor running the parse
+     * @param deadline The time limit of the whole parse, can be null
+     * @param idleTimeout The time limit between two reads, can be null
+     * @return The future of the upload context
+     */
+    public CompletableFuture<UploadContext> doBlockingParseAsync(Executor executor, Duration deadline, Duration idleTimeout) {
+        if (request.isAsyncSupported() && !request.isAsyncStarted()) {
+            request.startAsync();
+        }
+        if (deadline != null || idleTimeout != null) {
+            watchdog = new ParseWatchdog(deadline, idleTimeout, this::closeRequestStream);
+        }
+        final var future = new CompletableFuture<UploadContext>();
+        executor.execute(() -> runBlockingParse(future));
+        return future;
+    }
+
+    /**
+     * Runs the parse and completes the future, called on the executor.
+     * @param future The future of the upload context
+     */
+    private void runBlockingParse(CompletableFuture<UploadContext> future) {
+        Exception error = null;
+        if (watchdog == null || watchdog.begin()) {
+            try {
+                init();
+                blockingRead();
+            } catch (Exception e) {
+                error = e;
+            }
+            if (watchdog != null && !watchdog.finish()) {
+                error = watchdog.getTimeout();
+            }
+            releaseBuffers();
+        } else {
+            error = watchdog.getTimeout();
+        }
+        try {
+            if (error == null) {
+                if (requestCallback != null) {
+                    requestCallback.onRequestComplete(context);
+                }
+                future.complete(context);
+            } else {
+                if (errorCallback != null) {
+                    errorCallback.onError(context, error);
+                }
+                future.completeExceptionally(error);
+            }
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Closes the request stream to unblock a pending read after a timeout.
+     */
+    private void closeRequestStream() {
+        try {
+            request.getInputStream().close();
+        } catch (IOException ignored) {
+            // The parse thread reports the timeout
+        }
+    }
+
+    /**
+     * Returns the executor which is used if the caller does not specify one. It starts
+     * a virtual thread for every parse if the runtime supports them, otherwise it uses
+     * a cached pool of daemon threads.
+     * @return The default executor
+     */
+    public static Executor defaultExecutor() {
+        return DefaultExecutor.INSTANCE;
+    }
+
     /**
      * Reads everything from the input stream in a blocking mode. It will
      * throw an exception if the data is malformed, for example
@@ -82,19 +182,51 @@ public class BlockingUploadParser extends AbstractUploadParser {
      * @throws IOException If an error occurred with the I/O
      */
     protected void blockingRead() throws IOException {
-        while (true) {
-            var count = inputStream.read(dataBuffer.array());
-            if (count == -1) {
-                if (!parseState.isComplete()) {
-                    throw new MultipartException("Stream ended unexpectedly!");
-                } else {
-                    break;
-                }
-            } else if (count > 0) {
-                checkRequestSize(count);
-                dataBuffer.position(0);
-                dataBuffer.limit(count);
-                parseState.parse(dataBuffer);
+        while (fill()) {
+            if (dataBuffer.hasRemaining()) {
+                parseBuffer(dataBuffer);
+            }
+        }
+    }
+
+    /**
+     * Reads the next bytes from the input stream into the data buffer.
+     * @return False if the stream has ended
+     * @throws IOException If an error occurred with the I/O or the stream ended too early
+     */
+    boolean fill() throws IOException {
+        var count = inputStream.read(dataBuffer.array());
+        if (watchdog != null) {
+            watchdog.touch();
+        }
+        if (count == -1) {
+            if (!parseState.isComplete()) {
+                throw new MultipartException("Stream ended unexpectedly!");
+            }
+            return false;
+        }
+        dataBuffer.position(0);
+        dataBuffer.limit(count);
+        return true;
+    }
+
+    /**
+     * Lazy holder of the default executor.
+     */
+    private static final class DefaultExecutor {
+
+        private static final Executor INSTANCE = create();
+
+        private static Executor create() {
+            try {
+                // Available from Java 21, the build targets an earlier release
+                return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                return Executors.newCachedThreadPool(runnable -> {
+                    final var thread = new Thread(runnable, "upload-parser");
+                    thread.setDaemon(true);
+                    return thread;
+                });
             }
         }
     }
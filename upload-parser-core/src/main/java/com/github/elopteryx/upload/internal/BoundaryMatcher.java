@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+/**
+ * Searches for the multipart boundary in the body bytes. The matcher is built
+ * once per request from the boundary token and uses the Boyer-Moore-Horspool
+ * algorithm, meaning that in the typical case it only looks at every n-th byte,
+ * where n is the length of the boundary.
+ *
+ * <p>Alternatively the matcher can look for the first and last byte of the boundary
+ * with a {@link ByteScanner} and only verify the boundary at the candidate positions. The
+ * implementation is selected at startup with the {@value #SCANNER_PROPERTY} system
+ * property. The supported values are <code>scalar</code>, which is the default,
+ * <code>swar</code>, which compares eight bytes at a time on any runtime and
+ * <code>vector</code>, which uses the Vector API if the runtime supports it and falls
+ * back to the scalar search otherwise.</p>
+ *
+ * <p>The matcher is stateless, the caller is responsible for keeping track of
+ * the boundary bytes which were matched at the end of the previous buffer.</p>
+ */
+class BoundaryMatcher {
+
+    /**
+     * The system property used to select the boundary search.
+     */
+    static final String SCANNER_PROPERTY = "com.github.elopteryx.upload.scanner";
+
+    /**
+     * The candidate search selected at startup, null for the scalar search.
+     */
+    private static final ByteScanner DEFAULT_SCANNER = selectScanner(System.getProperty(SCANNER_PROPERTY, "scalar"));
+
+    /**
+     * The boundary, complete with the initial CRLF--.
+     */
+    private final byte[] boundary;
+
+    /**
+     * The candidate search, null if the Horspool search is used.
+     */
+    private final ByteScanner scanner;
+
+    /**
+     * The distance the search window can be moved, indexed by the last byte of the window.
+     */
+    private final int[] shift = new int[256];
+
+    /**
+     * Creates a new matcher.
+     * @param boundary The boundary token
+     */
+    BoundaryMatcher(byte[] boundary) {
+        this(boundary, DEFAULT_SCANNER);
+    }
+
+    /**
+     * Creates a new matcher which uses the given candidate search.
+     * @param boundary The boundary token
+     * @param scanner The candidate search or null for the Horspool search
+     */
+    BoundaryMatcher(byte[] boundary, ByteScanner scanner) {
+        this.boundary = boundary;
+        this.scanner = scanner;
+        final var last = boundary.length - 1;
+        for (var i = 0; i < shift.length; i++) {
+            shift[i] = boundary.length;
+        }
+        for (var i = 0; i < last; i++) {
+            shift[boundary[i] & 0xFF] = last - i;
+        }
+    }
+
+    /**
+     * Returns the length of the boundary token.
+     * @return The length of the boundary
+     */
+    int length() {
+        return boundary.length;
+    }
+
+    /**
+     * Finds the first complete occurrence of the boundary in the given range.
+     * @param data The array to search
+     * @param from The start index, inclusive
+     * @param to The end index, exclusive
+     * @return The index of the first boundary byte or -1 if the boundary is not present
+     */
+    int indexOf(byte[] data, int from, int to) {
+        return scanner == null ? horspool(data, from, to) : scan(data, from, to);
+    }
+
+    private int horspool(byte[] data, int from, int to) {
+        final var last = boundary.length - 1;
+        final var lastByte = boundary[last];
+        var pos = from;
+        while (pos <= to - boundary.length) {
+            final var current = data[pos + last];
+            if (current == lastByte && matchesAt(data, pos, last)) {
+                return pos;
+            }
+            pos += shift[current & 0xFF];
+        }
+        return -1;
+    }
+
+    private int scan(byte[] data, int from, int to) {
+        final var last = boundary.length - 1;
+        final var end = to - last;
+        var pos = from;
+        while (pos < end) {
+            pos = scanner.indexOf(data, pos, end, boundary[0], boundary[last], last);
+            if (pos == -1) {
+                return -1;
+            }
+            if (matchesAt(data, pos, last)) {
+                return pos;
+            }
+            pos++;
+        }
+        return -1;
+    }
+
+    /**
+     * Compares the beginning of the boundary with the bytes at the given position.
+     * @param data The array to compare with
+     * @param pos The start index in the array
+     * @param count The number of bytes to compare
+     * @return Whether the bytes are the same
+     */
+    private boolean matchesAt(byte[] data, int pos, int count) {
+        for (var i = 0; i < count; i++) {
+            if (data[pos + i] != boundary[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the longest tail of the given range which could be the start of
+     * a boundary continuing in the next buffer. This should be called only if the
+     * range does not contain the boundary.
+     * @param data The array to search
+     * @param from The start index, inclusive
+     * @param to The end index, exclusive
+     * @return The index where the partial match begins or the end index if there is none
+     */
+    int partialMatchStart(byte[] data, int from, int to) {
+        for (var pos = Math.max(from, to - boundary.length + 1); pos < to; pos++) {
+            if (matchesAt(data, pos, to - pos)) {
+                return pos;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * Continues a match which started in a previous buffer. The first <code>matched</code>
+     * bytes of the boundary were held back, this checks whether they form a boundary
+     * with the beginning of the given range. Because the held back bytes may
+     * contain the beginning of a different occurrence each possible start is checked,
+     * the held back bytes before the chosen start are body data.
+     * @param matched The number of boundary bytes at the end of the previous buffer
+     * @param data The array containing the new bytes
+     * @param from The start index, inclusive
+     * @param to The end index, exclusive
+     * @return The number of held back bytes which turned out to be body data, equals
+     *         <code>matched</code> if the match cannot be continued
+     */
+    int continueMatch(int matched, byte[] data, int from, int to) {
+        for (var start = 0; start < matched; start++) {
+            final var carried = matched - start;
+            if (!isBorder(start, carried)) {
+                continue;
+            }
+            final var count = Math.min(boundary.length - carried, to - from);
+            var same = true;
+            for (var i = 0; i < count; i++) {
+                if (data[from + i] != boundary[carried + i]) {
+                    same = false;
+                    break;
+                }
+            }
+            if (same) {
+                return start;
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Checks whether the boundary bytes starting at the given offset are also the start
+     * of the boundary.
+     * @param offset The offset in the boundary
+     * @param count The number of bytes to check
+     * @return Whether the bytes are the same
+     */
+    private boolean isBorder(int offset, int count) {
+        for (var i = 0; i < count; i++) {
+            if (boundary[offset + i] != boundary[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the candidate search for the given name.
+     * @param name The value of the system property
+     * @return The scanner or null for the scalar search
+     */
+    static ByteScanner selectScanner(String name) {
+        switch (name) {
+            case "swar":
+                return new SwarByteScanner();
+            case "vector":
+                return VectorSupport.scanner();
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+import com.github.elopteryx.upload.BufferPool;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The default buffer pool. Every requested capacity is a size class with its own
+ * free lists, the parsers use a few fixed capacities, so the buffers are never
+ * larger than what was requested. A size class has a lock-free free list for every
+ * stripe, a thread releases to and acquires from the stripe of its id first, so
+ * the threads of the different requests rarely touch the same list. A thread
+ * takes a buffer from the other stripes if its own is empty.
+ *
+ * <p>The number of size classes and the number of buffers kept in a stripe are
+ * limited, the buffers over the limits are allocated and dropped as usual.</p>
+ */
+public class BufferPoolImpl implements BufferPool {
+
+    /**
+     * The number of size classes per buffer kind.
+     */
+    static final int MAX_SIZE_CLASSES = 64;
+
+    /**
+     * The pool used if the caller did not set one, it allocates a new buffer every time.
+     */
+    static final BufferPool UNPOOLED = new BufferPool() {
+        @Override
+        public ByteBuffer acquire(int capacity) {
+            return ByteBuffer.allocate(capacity);
+        }
+
+        @Override
+        public ByteBuffer acquireDirect(int capacity) {
+            return ByteBuffer.allocateDirect(capacity);
+        }
+
+        @Override
+        public void release(ByteBuffer buffer) {
+            // Collected as garbage
+        }
+
+        @Override
+        public long getHits() {
+            return 0;
+        }
+
+        @Override
+        public long getMisses() {
+            return 0;
+        }
+    };
+
+    /**
+     * The number of stripes minus one, the number is a power of two.
+     */
+    private final int stripeMask;
+
+    /**
+     * The number of buffers kept in a stripe of a size class.
+     */
+    private final int buffersPerStripe;
+
+    /**
+     * The size classes of the heap buffers, by capacity.
+     */
+    private final Map<Integer, SizeClass> heapClasses = new ConcurrentHashMap<>();
+
+    /**
+     * The size classes of the direct buffers, by capacity.
+     */
+    private final Map<Integer, SizeClass> directClasses = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a new pool with a stripe for every available processor.
+     * @param buffersPerStripe The number of buffers kept in a stripe of a size class
+     */
+    public BufferPoolImpl(int buffersPerStripe) {
+        this(Runtime.getRuntime().availableProcessors(), buffersPerStripe);
+    }
+
+    /**
+     * Creates a new pool.
+     * @param stripes The number of stripes, rounded up to a power of two
+     * @param buffersPerStripe The number of buffers kept in a stripe of a size class
+     */
+    BufferPoolImpl(int stripes, int buffersPerStripe) {
+        this.stripeMask = Integer.highestOneBit(Math.max(1, stripes * 2 - 1)) - 1;
+        this.buffersPerStripe = buffersPerStripe;
+    }
+
+    @Override
+    public ByteBuffer acquire(int capacity) {
+        final var buffer = poll(heapClasses, capacity);
+        return buffer != null ? buffer : ByteBuffer.allocate(capacity);
+    }
+
+    @Override
+    public ByteBuffer acquireDirect(int capacity) {
+        final var buffer = poll(directClasses, capacity);
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(capacity);
+    }
+
+    private ByteBuffer poll(Map<Integer, SizeClass> classes, int capacity) {
+        final var sizeClass = classes.get(capacity);
+        final var buffer = sizeClass == null ? null : sizeClass.poll();
+        if (buffer == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return buffer;
+    }
+
+    @Override
+    public void release(ByteBuffer buffer) {
+        final var classes = buffer.isDirect() ? directClasses : heapClasses;
+        final var capacity = buffer.capacity();
+        var sizeClass = classes.get(capacity);
+        if (sizeClass == null) {
+            if (classes.size() >= MAX_SIZE_CLASSES) {
+                return;
+            }
+            sizeClass = classes.computeIfAbsent(capacity, key -> new SizeClass());
+        }
+        buffer.clear();
+        sizeClass.offer(buffer);
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Drops the pooled buffers.
+     */
+    void clear() {
+        heapClasses.clear();
+        directClasses.clear();
+    }
+
+    /**
+     * Returns the stripe of the current thread.
+     * @return The index of the stripe
+     */
+    private int stripe() {
+        return (int) Thread.currentThread().getId() & stripeMask;
+    }
+
+    /**
+     * The free lists of a capacity.
+     */
+    private final class SizeClass {
+
+        private final List<Queue<ByteBuffer>> stripes = new ArrayList<>();
+
+        /**
+         * The number of buffers in the stripes, it can be off by a few while
+         * a buffer is being added or taken.
+         */
+        private final AtomicIntegerArray counts = new AtomicIntegerArray(stripeMask + 1);
+
+        SizeClass() {
+            for (var i = 0; i <= stripeMask; i++) {
+                stripes.add(new ConcurrentLinkedQueue<>());
+            }
+        }
+
+        ByteBuffer poll() {
+            final var home = stripe();
+            for (var i = 0; i <= stripeMask; i++) {
+                final var index = (home + i) & stripeMask;
+                final var buffer = stripes.get(index).poll();
+                if (buffer != null) {
+                    counts.decrementAndGet(index);
+                    return buffer;
+                }
+            }
+            return null;
+        }
+
+        void offer(ByteBuffer buffer) {
+            final var index = stripe();
+            if (counts.incrementAndGet(index) > buffersPerStripe) {
+                counts.decrementAndGet(index);
+                return;
+            }
+            stripes.get(index).offer(buffer);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+/**
+ * Finds the candidate positions for the boundary search. A position is a candidate
+ * if both the first and the last byte of the boundary are at the right place,
+ * the boundary matcher verifies the remaining bytes. Checking two bytes instead of
+ * one makes false candidates very rare, even in binary data.
+ */
+interface ByteScanner {
+
+    /**
+     * Returns the first index in the range where the first byte is present and the
+     * last byte is present at the given distance. The caller guarantees that the
+     * array is long enough to read the last byte for every index in the range.
+     * @param data The array to search
+     * @param from The start index, inclusive
+     * @param to The end index, exclusive
+     * @param first The byte to look for at the index
+     * @param last The byte to look for at the distance
+     * @param distance The distance between the two bytes
+     * @return The index of the candidate or -1 if there is none
+     */
+    int indexOf(byte[] data, int from, int to, byte first, byte last, int distance);
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.elopteryx.upload.internal;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs the callbacks of a single request on an executor, one at a time and in the order
+ * they were offered. The queue is bounded only in the sense that the producer is expected
+ * to stop when {@link #isFull()} returns true, the tasks of a single buffer are always
+ * accepted. After a task failed the remaining tasks are dropped.
+ */
+final class CallbackQueue {
+
+    /**
+     * A callback which can throw the same exceptions as the user functions.
+     */
+    interface Task {
+        void run() throws Exception;
+    }
+
+    private final Queue<Task> tasks = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The number of tasks offered but not yet finished.
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * The number of pending drain requests.
+     */
+    private final AtomicInteger wip = new AtomicInteger();
+
+    private final Executor executor;
+
+    private final int capacity;
+
+    /**
+     * Called on the executor with the exception of the first failed task.
+     */
+    private final Consumer<Exception> onFailure;
+
+    /**
+     * Called on the executor whenever the last queued task has finished.
+     */
+    private final Runnable onEmpty;
+
+    private volatile boolean failed;
+
+    CallbackQueue(Executor executor, int capacity, Consumer<Exception> onFailure, Runnable onEmpty) {
+        this.executor = executor;
+        this.capacity = capacity;
+        this.onFailure = onFailure;
+        this.onEmpty = onEmpty;
+    }
+
+    /**
+     * Adds a task to the end of the queue.
+     * @param task The task to run on the executor
+     */
+    void offer(Task task) {
+        size.incrementAndGet();
+        tasks.add(task);
+        if (wip.getAndIncrement() == 0) {
+            executor.execute(this::drain);
+        }
+    }
+
+    /**
+     * Returns whether the producer should stop until the queue empties.
+     * @return True if the number of unfinished tasks reached the capacity
+     */
+    boolean isFull() {
+        return size.get() >= capacity;
+    }
+
+    /**
+     * Returns whether a task has failed.
+     * @return True if the remaining tasks are dropped
+     */
+    boolean isFailed() {
+        return failed;
+    }
+
+    private void drain() {
+        var missed = 1;
+        do {
+            Task task;
+            while ((task = tasks.poll()) != null) {
+                if (!failed) {
+                    try {
+                        task.run();
+                    } catch (Exception e) {
+                        failed = true;
+                        onFailure.accept(e);
+                    }
+                }
+                if (size.decrementAndGet() == 0) {
+                    onEmpty.run();
+                }
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.elopteryx.upload.internal;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import com.github.elopteryx.upload.errors.MultipartException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A snapshot of a parse, which allows continuing it with a new request if the
+ * connection was lost. Checkpoints are only taken inside the body of an identity
+ * encoded part whose bytes are written to a file, or discarded, because then
+ * the state is fully described by the parser position, the number of boundary
+ * bytes held back and the number of bytes written to the file.
+ *
+ * <p>The checkpoints are stored in the configured directory, one file per
+ * upload, named after the token. The file is replaced atomically.</p>
+ */
+final class Checkpoint {
+
+    /**
+     * The version of the file format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The extension of the checkpoint files.
+     */
+    private static final String EXTENSION = ".checkpoint";
+
+    /**
+     * The allowed tokens, they are used as file names.
+     */
+    private static final Pattern TOKEN = Pattern.compile("[A-Za-z0-9_-]{1,128}");
+
+    /**
+     * The offset of the next body byte in the original request.
+     */
+    final long offset;
+
+    /**
+     * The boundary of the request, without the leading dashes.
+     */
+    final byte[] boundary;
+
+    /**
+     * The number of boundary bytes held back at the offset.
+     */
+    final int matched;
+
+    /**
+     * The number of bytes written for the current part.
+     */
+    final long written;
+
+    /**
+     * The output file of the current part or null if the part is discarded.
+     */
+    final String output;
+
+    /**
+     * The header names of the current part, in lower case.
+     */
+    final List<String> headerNames;
+
+    /**
+     * The header values of the current part.
+     */
+    final List<String> headerValues;
+
+    Checkpoint(long offset, byte[] boundary, int matched, long written, String output, List<String> headerNames, List<String> headerValues) {
+        this.offset = offset;
+        this.boundary = boundary;
+        this.matched = matched;
+        this.written = written;
+        this.output = output;
+        this.headerNames = headerNames;
+        this.headerValues = headerValues;
+    }
+
+    /**
+     * Returns the headers of the current part.
+     * @return A new headers instance
+     */
+    Headers headers() {
+        final var headers = new Headers();
+        for (var i = 0; i < headerNames.size(); i++) {
+            headers.addHeader(headerNames.get(i), headerValues.get(i));
+        }
+        return headers;
+    }
+
+    /**
+     * Writes the checkpoint to a temporary file and moves it in place.
+     * @param directory The directory of the checkpoints
+     * @param token The token of the upload
+     * @throws IOException If an error occurred with the I/O
+     */
+    void write(Path directory, String token) throws IOException {
+        final var temporary = Files.createTempFile(directory, token, ".tmp");
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(VERSION);
+            out.writeLong(offset);
+            out.writeInt(boundary.length);
+            out.write(boundary);
+            out.writeInt(matched);
+            out.writeLong(written);
+            writeString(out, output == null ? "" : output);
+            out.writeInt(headerNames.size());
+            for (var i = 0; i < headerNames.size(); i++) {
+                writeString(out, headerNames.get(i));
+                writeString(out, headerValues.get(i));
+            }
+        }
+        Files.move(temporary, file(directory, token), ATOMIC_MOVE, REPLACE_EXISTING);
+    }
+
+    /**
+     * Reads the checkpoint of the given upload.
+     * @param directory The directory of the checkpoints
+     * @param token The token of the upload
+     * @return The checkpoint or null if there is none
+     * @throws IOException If an error occurred with the I/O or the file is invalid
+     */
+    static Checkpoint read(Path directory, String token) throws IOException {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file(directory, token))))) {
+            if (in.readInt() != VERSION) {
+                throw new MultipartException("Unsupported checkpoint version!");
+            }
+            final var offset = in.readLong();
+            final var boundary = new byte[in.readInt()];
+            in.readFully(boundary);
+            final var matched = in.readInt();
+            final var written = in.readLong();
+            final var output = readString(in);
+            final var count = in.readInt();
+            final var headerNames = new ArrayList<String>(count);
+            final var headerValues = new ArrayList<String>(count);
+            for (var i = 0; i < count; i++) {
+                headerNames.add(readString(in));
+                headerValues.add(readString(in));
+            }
+            return new Checkpoint(offset, boundary, matched, written, output.isEmpty() ? null : output, headerNames, headerValues);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the checkpoint of the given upload, if it exists.
+     * @param directory The directory of the checkpoints
+     * @param token The token of the upload
+     * @throws IOException If an error occurred with the I/O
+     */
+    static void delete(Path directory, String token) throws IOException {
+        Files.deleteIfExists(file(directory, token));
+    }
+
+    /**
+     * Checks whether the token can be used for a checkpoint.
+     * @param token The token to check
+     * @return The token
+     * @throws IllegalArgumentException If the token contains invalid characters
+     */
+    static String checkToken(String token) {
+        if (!TOKEN.matcher(token).matches()) {
+            throw new IllegalArgumentException("Invalid checkpoint token: " + token);
+        }
+        return token;
+    }
+
+    private static Path file(Path directory, String token) {
+        return directory.resolve(checkToken(token) + EXTENSION);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        final var bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        final var bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
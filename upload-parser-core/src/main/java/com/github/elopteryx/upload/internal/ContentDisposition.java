@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.elopteryx.upload.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The parsed value of a Content-Disposition header. The header is read in a single
+ * pass, the disposition type and the <code>name</code>, <code>filename</code> and
+ * <code>filename*</code> parameters are kept, the others are ignored. The extended
+ * <code>filename*</code> parameter is decoded according to RFC 5987.
+ *
+ * <p>Instances are immutable, so they can be shared between parts with the same header.</p>
+ */
+public final class ContentDisposition {
+
+    /**
+     * Used for the parts without a Content-Disposition header.
+     */
+    static final ContentDisposition NONE = new ContentDisposition("", null, null, null);
+
+    /**
+     * The disposition type, in lower case.
+     */
+    private final String type;
+    /**
+     * The value of the name parameter.
+     */
+    private final String name;
+    /**
+     * The value of the filename parameter.
+     */
+    private final String fileName;
+    /**
+     * The decoded value of the filename* parameter.
+     */
+    private final String extendedFileName;
+
+    /**
+     * Creates a new instance.
+     * @param type The disposition type
+     * @param name The field name, can be null
+     * @param fileName The file name, can be null
+     * @param extendedFileName The decoded extended file name, can be null
+     */
+    ContentDisposition(String type, String name, String fileName, String extendedFileName) {
+        this.type = type;
+        this.name = name;
+        this.fileName = fileName;
+        this.extendedFileName = extendedFileName;
+    }
+
+    /**
+     * Returns the disposition type, for example <code>form-data</code>.
+     * @return The type in lower case
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Returns the name parameter, which is the form field name.
+     * @return The name or null if it is missing
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the file name. The extended parameter is preferred if both are present,
+     * as recommended by RFC 6266.
+     * @return The file name or null if both parameters are missing
+     */
+    public String getFileName() {
+        return extendedFileName != null ? extendedFileName : fileName;
+    }
+
+    /**
+     * Returns the filename parameter as it was sent.
+     * @return The file name or null if it is missing
+     */
+    public String getPlainFileName() {
+        return fileName;
+    }
+
+    /**
+     * Returns the decoded filename* parameter.
+     * @return The file name or null if it is missing or could not be decoded
+     */
+    public String getExtendedFileName() {
+        return extendedFileName;
+    }
+
+    /**
+     * Parses the given header value.
+     * @param header The value of the Content-Disposition header
+     * @return The parsed value
+     */
+    public static ContentDisposition parse(String header) {
+        final var length = header.length();
+        var pos = 0;
+        while (pos < length && header.charAt(pos) != ';') {
+            pos++;
+        }
+        final var type = header.substring(0, pos).trim().toLowerCase(Locale.ENGLISH);
+        String name = null;
+        String fileName = null;
+        String extendedFileName = null;
+        while (pos < length) {
+            // Skip the separator and the whitespace before the key
+            pos++;
+            while (pos < length && isWhitespace(header.charAt(pos))) {
+                pos++;
+            }
+            final var keyStart = pos;
+            while (pos < length && header.charAt(pos) != '=' && header.charAt(pos) != ';') {
+                pos++;
+            }
+            final var keyEnd = pos;
+            if (pos == length || header.charAt(pos) == ';') {
+                // A parameter without a value
+                continue;
+            }
+            pos++;
+            final String value;
+            if (pos < length && header.charAt(pos) == '"') {
+                final var valueStart = ++pos;
+                while (pos < length && header.charAt(pos) != '"') {
+                    pos++;
+                }
+                value = header.substring(valueStart, pos);
+                while (pos < length && header.charAt(pos) != ';') {
+                    pos++;
+                }
+            } else {
+                final var valueStart = pos;
+                while (pos < length && !isWhitespace(header.charAt(pos)) && header.charAt(pos) != ';') {
+                    pos++;
+                }
+                value = header.substring(valueStart, pos);
+                while (pos < length && header.charAt(pos) != ';') {
+                    pos++;
+                }
+            }
+            if (isKey(header, keyStart, keyEnd, "name")) {
+                name = value;
+            } else if (isKey(header, keyStart, keyEnd, "filename")) {
+                fileName = value;
+            } else if (isKey(header, keyStart, keyEnd, "filename*")) {
+                extendedFileName = decodeExtendedValue(value);
+            }
+        }
+        return new ContentDisposition(type, name, fileName, extendedFileName);
+    }
+
+    private static boolean isWhitespace(char character) {
+        return character == ' ' || character == '\t';
+    }
+
+    private static boolean isKey(String header, int start, int end, String key) {
+        return end - start == key.length() && header.regionMatches(true, start, key, 0, key.length());
+    }
+
+    /**
+     * Decodes an extended parameter value, which has the form charset'language'value,
+     * where the value is percent encoded.
+     * @param value The raw parameter value
+     * @return The decoded value or null if it is malformed or the charset is not supported
+     */
+    static String decodeExtendedValue(String value) {
+        final var charsetEnd = value.indexOf('\'');
+        final var languageEnd = charsetEnd == -1 ? -1 : value.indexOf('\'', charsetEnd + 1);
+        if (languageEnd == -1) {
+            return null;
+        }
+        final Charset charset;
+        try {
+            charset = Charset.forName(value.substring(0, charsetEnd));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        final var bytes = new ByteArrayOutputStream(value.length() - languageEnd);
+        for (var i = languageEnd + 1; i < value.length(); i++) {
+            final var character = value.charAt(i);
+            if (character == '%') {
+                if (i + 2 >= value.length()) {
+                    return null;
+                }
+                final var high = Character.digit(value.charAt(i + 1), 16);
+                final var low = Character.digit(value.charAt(i + 2), 16);
+                if (high == -1 || low == -1) {
+                    return null;
+                }
+                bytes.write(high << 4 | low);
+                i += 2;
+            } else {
+                bytes.write(character);
+            }
+        }
+        return new String(bytes.toByteArray(), charset);
+    }
+
+    /**
+     * A small cache of the parsed headers for a single request. Forms often repeat the
+     * same disposition, for example fields named like <code>items[]</code>, those are
+     * only parsed once. The least recently used entry is dropped when the cache is full.
+     */
+    static final class Cache {
+
+        /**
+         * The maximum number of cached headers.
+         */
+        private static final int CAPACITY = 16;
+
+        /**
+         * The cached values, ordered by access.
+         */
+        private final Map<String, ContentDisposition> entries = new LinkedHashMap<>(CAPACITY * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ContentDisposition> eldest) {
+                return size() > CAPACITY;
+            }
+        };
+
+        /**
+         * Returns the parsed value for the given header, parsing it if it is not cached.
+         * @param header The value of the Content-Disposition header
+         * @return The parsed value
+         */
+        ContentDisposition get(String header) {
+            return entries.computeIfAbsent(header, ContentDisposition::parse);
+        }
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import com.github.elopteryx.upload.ContentStore;
+import com.github.elopteryx.upload.PartOutput;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Default implementation of {@link ContentStore}. The files are stored under two levels
+ * of directories named after the first bytes of the digest, for example
+ * <code>3a/7b/3a7b...</code>, so no directory grows too large. The temporary files are
+ * written into the <code>tmp</code> directory of the store, which is on the same file
+ * system, so they can be moved into place atomically. The temporary files of the
+ * parts which failed are left there and can be removed when the store is not in use.
+ */
+public class ContentStoreImpl implements ContentStore {
+
+    /**
+     * The algorithm of the content addresses.
+     */
+    private static final String ALGORITHM = "SHA-256";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Path root;
+
+    private final Path temp;
+
+    /**
+     * The recently stored digests, in access order, guarded by itself.
+     */
+    private final Map<String, Boolean> index;
+
+    /**
+     * Creates the store, the directories are created if they do not exist.
+     * @param root The root directory
+     * @param indexSize The number of digests kept in memory
+     * @throws IOException If the directories can not be created
+     */
+    public ContentStoreImpl(Path root, int indexSize) throws IOException {
+        this.root = root.toAbsolutePath();
+        this.temp = Files.createDirectories(this.root.resolve("tmp"));
+        this.index = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > indexSize;
+            }
+        };
+    }
+
+    @Override
+    public Path getRoot() {
+        return root;
+    }
+
+    @Override
+    public PartOutput newOutput() {
+        return new StoreOutput(new Entry(this, null));
+    }
+
+    @Override
+    public PartOutput newOutput(Path link) {
+        return new StoreOutput(new Entry(this, link.toAbsolutePath()));
+    }
+
+    /**
+     * Returns the path of the content with the given digest.
+     * @param digest The digest in hexadecimal form
+     * @return The path in the store
+     */
+    Path pathOf(String digest) {
+        return root.resolve(digest.substring(0, 2)).resolve(digest.substring(2, 4)).resolve(digest);
+    }
+
+    /**
+     * Moves the temporary file into the store, unless the content is already present,
+     * and creates the link to it if it was requested. If the link can not be created
+     * because an indexed content was removed from the store then the temporary file
+     * takes its place.
+     * @param file The temporary file
+     * @param digest The digest of the file in hexadecimal form
+     * @param link The path of the link or null
+     * @return The path of the content or the link
+     * @throws IOException If an error occurred with the I/O
+     */
+    Path store(Path file, String digest, Path link) throws IOException {
+        final var target = pathOf(digest);
+        if (link != null && isIndexed(digest)) {
+            try {
+                link(link, target);
+                Files.delete(file);
+                return link;
+            } catch (NoSuchFileException e) {
+                forget(digest);
+            }
+        }
+        if (isIndexed(digest) || Files.exists(target)) {
+            Files.delete(file);
+        } else {
+            Files.createDirectories(target.getParent());
+            try {
+                Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // Stored by a concurrent upload
+                Files.delete(file);
+            }
+        }
+        synchronized (index) {
+            index.put(digest, Boolean.TRUE);
+        }
+        if (link == null) {
+            return target;
+        }
+        link(link, target);
+        return link;
+    }
+
+    private static void link(Path link, Path target) throws IOException {
+        try {
+            Files.createLink(link, target);
+        } catch (UnsupportedOperationException e) {
+            Files.copy(target, link);
+        }
+    }
+
+    private boolean isIndexed(String digest) {
+        synchronized (index) {
+            return index.get(digest) != null;
+        }
+    }
+
+    private void forget(String digest) {
+        synchronized (index) {
+            index.remove(digest);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        final var chars = new char[bytes.length * 2];
+        for (var i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * The value of the outputs of the store. The parser opens the entry when the
+     * part begins and commits it after every byte has been written.
+     */
+    static final class Entry {
+
+        private final ContentStoreImpl store;
+
+        private final Path link;
+
+        private final MessageDigest digest;
+
+        private Path file;
+
+        /**
+         * The channel writing the file, null before the entry is opened.
+         */
+        private WritableByteChannel channel;
+
+        Entry(ContentStoreImpl store, Path link) {
+            this.store = store;
+            this.link = link;
+            try {
+                this.digest = MessageDigest.getInstance(ALGORITHM);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * Creates the temporary file and returns the channel writing it.
+         * @param diskWriters The writers of the files, can be null
+         * @return The channel, the bytes written to it are added to the digest
+         * @throws IOException If the file can not be created
+         */
+        WritableByteChannel open(DiskWriterPoolImpl diskWriters) throws IOException {
+            if (file != null) {
+                throw new IllegalStateException("The output of the store can only be used for a single part!");
+            }
+            file = store.temp.resolve(UUID.randomUUID() + ".part");
+            if (diskWriters != null) {
+                Files.createFile(file);
+                channel = diskWriters.open(file);
+            } else {
+                channel = FileChannel.open(file, CREATE_NEW, WRITE);
+            }
+            return new DigestingChannel(channel, digest);
+        }
+
+        /**
+         * Stores the written file, called after the channel was closed.
+         * @return The path of the stored content or the link
+         * @throws IOException If an error occurred with the I/O
+         */
+        Path commit() throws IOException {
+            return store.store(file, toHex(digest.digest()), link);
+        }
+
+        /**
+         * Closes the channel without waiting for the queued writes and deletes the
+         * temporary file, called if the parsing of the part failed.
+         */
+        void abandon() {
+            if (channel instanceof WriteBehindChannel) {
+                ((WriteBehindChannel) channel).abandon();
+            } else if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // The part has failed already
+                }
+            }
+            try {
+                discard();
+            } catch (IOException ignored) {
+                // The file is in the temporary directory of the store
+            }
+        }
+
+        /**
+         * Deletes the temporary file of a part which will not be stored.
+         * @throws IOException If an error occurred with the I/O
+         */
+        void discard() throws IOException {
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * The output returned to the caller, holding an entry.
+     */
+    private static final class StoreOutput extends PartOutput {
+
+        StoreOutput(Entry entry) {
+            super(entry);
+        }
+    }
+
+    /**
+     * Passes the written bytes to the digest.
+     */
+    private static final class DigestingChannel implements WritableByteChannel {
+
+        private final WritableByteChannel channel;
+
+        private final MessageDigest digest;
+
+        DigestingChannel(WritableByteChannel channel, MessageDigest digest) {
+            this.channel = channel;
+            this.digest = digest;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            final var written = src.duplicate();
+            final var count = channel.write(src);
+            written.limit(written.position() + count);
+            digest.update(written);
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.elopteryx.upload.internal;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import com.github.elopteryx.upload.BufferPool;
+import com.github.elopteryx.upload.DiskWriterPool;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Default implementation of {@link DiskWriterPool}. The devices are identified by the
+ * {@link FileStore} of the directory containing the file, each of them has its own queue
+ * and writer threads, which are started when the first file is opened on the device.
+ * The writes carry their file position, so the writers of a device do not have to
+ * coordinate, the chunks of a file can be written in any order.
+ */
+public class DiskWriterPoolImpl implements DiskWriterPool {
+
+    /**
+     * The size of the pooled buffers.
+     */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The number of writer threads per device.
+     */
+    private final int writersPerDevice;
+
+    /**
+     * The number of queued writes per device.
+     */
+    private final int queueCapacity;
+
+    /**
+     * The devices, by their file store.
+     */
+    private final Map<FileStore, Device> devices = new ConcurrentHashMap<>();
+
+    /**
+     * The pool of the direct buffers which are not in use.
+     */
+    private final BufferPool buffers;
+
+    /**
+     * The pool created for this instance, null if the buffers come from a shared pool.
+     */
+    private final BufferPoolImpl ownBuffers;
+
+    private volatile boolean closed;
+
+    public DiskWriterPoolImpl(int writersPerDevice, int queueCapacity) {
+        this(writersPerDevice, queueCapacity, null);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param writersPerDevice The number of writer threads per device
+     * @param queueCapacity The number of queued writes per device
+     * @param buffers The pool of the buffers, if it is null then the instance has its own pool,
+     *                which keeps every released buffer, their number is limited by the queues
+     */
+    public DiskWriterPoolImpl(int writersPerDevice, int queueCapacity, BufferPool buffers) {
+        this.writersPerDevice = writersPerDevice;
+        this.queueCapacity = queueCapacity;
+        this.ownBuffers = buffers == null ? new BufferPoolImpl(Integer.MAX_VALUE) : null;
+        this.buffers = buffers == null ? ownBuffers : buffers;
+    }
+
+    /**
+     * Opens a channel which appends to the given file through the writers of its device.
+     * @param path The file, it is created if it does not exist
+     * @return The channel
+     * @throws IOException If the file can not be opened
+     */
+    WriteBehindChannel open(Path path) throws IOException {
+        if (closed) {
+            throw new IOException("The disk writer pool is closed!");
+        }
+        final var absolute = path.toAbsolutePath();
+        final var store = Files.getFileStore(absolute.getParent() != null ? absolute.getParent() : absolute);
+        final var device = devices.computeIfAbsent(store, Device::new);
+        final var channel = FileChannel.open(path, CREATE, WRITE);
+        return new WriteBehindChannel(this, device, channel, channel.size());
+    }
+
+    ByteBuffer acquire() {
+        return buffers.acquireDirect(BUFFER_SIZE);
+    }
+
+    void release(ByteBuffer buffer) {
+        buffers.release(buffer);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (var device : devices.values()) {
+            device.stop();
+        }
+        devices.clear();
+        if (ownBuffers != null) {
+            ownBuffers.clear();
+        }
+    }
+
+    /**
+     * A positional write of a filled buffer.
+     */
+    static final class Write {
+
+        private final WriteBehindChannel owner;
+        private final ByteBuffer buffer;
+        private final long position;
+
+        Write(WriteBehindChannel owner, ByteBuffer buffer, long position) {
+            this.owner = owner;
+            this.buffer = buffer;
+            this.position = position;
+        }
+    }
+
+    /**
+     * The queue and the writer threads of a storage device.
+     */
+    final class Device {
+
+        private final BlockingQueue<Write> queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        private final List<Thread> writers = new ArrayList<>();
+
+        Device(FileStore store) {
+            for (var i = 0; i < writersPerDevice; i++) {
+                final var writer = new Thread(this::run, "upload-parser-writer-" + store.name() + "-" + i);
+                writer.setDaemon(true);
+                writer.start();
+                writers.add(writer);
+            }
+        }
+
+        /**
+         * Queues the write, waiting while the queue is full. If an exception is thrown
+         * then the write was not queued and the caller still owns its buffer.
+         * @param write The write
+         * @throws IOException If the waiting thread was interrupted or the pool is closed
+         */
+        void submit(Write write) throws IOException {
+            if (closed) {
+                throw new IOException("The disk writer pool is closed!");
+            }
+            try {
+                queue.put(write);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the disk writers!");
+            }
+            // The pool was closed while waiting, the write is failed by stop() unless it is taken back here
+            if (closed && queue.remove(write)) {
+                throw new IOException("The disk writer pool is closed!");
+            }
+        }
+
+        private void run() {
+            while (!closed) {
+                final Write write;
+                try {
+                    write = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                IOException failure = null;
+                try {
+                    var position = write.position;
+                    while (write.buffer.hasRemaining()) {
+                        position += write.owner.channel.write(write.buffer, position);
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                }
+                release(write.buffer);
+                write.owner.written(failure);
+            }
+        }
+
+        private void stop() {
+            for (var writer : writers) {
+                writer.interrupt();
+            }
+            Write write;
+            while ((write = queue.poll()) != null) {
+                release(write.buffer);
+                write.owner.written(new IOException("The disk writer pool is closed!"));
+            }
+        }
+    }
+}
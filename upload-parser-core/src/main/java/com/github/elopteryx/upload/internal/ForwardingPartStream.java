@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.elopteryx.upload.internal;
+
+import com.github.elopteryx.upload.PartStream;
+
+import java.util.Collection;
+
+/**
+ * Base class for the parts which extend the part created by the parser
+ * with a different way of reading the body.
+ */
+abstract class ForwardingPartStream implements PartStream {
+
+    /**
+     * The part created by the parser.
+     */
+    final PartStreamImpl part;
+
+    ForwardingPartStream(PartStreamImpl part) {
+        this.part = part;
+    }
+
+    @Override
+    public String getContentType() {
+        return part.getContentType();
+    }
+
+    @Override
+    public String getName() {
+        return part.getName();
+    }
+
+    @Override
+    public long getKnownSize() {
+        return part.getKnownSize();
+    }
+
+    @Override
+    public String getSubmittedFileName() {
+        return part.getSubmittedFileName();
+    }
+
+    @Override
+    public boolean isFile() {
+        return part.isFile();
+    }
+
+    @Override
+    public boolean isFinished() {
+        return part.isFinished();
+    }
+
+    @Override
+    public byte[] getDigest(String algorithm) {
+        return part.getDigest(algorithm);
+    }
+
+    @Override
+    public PartStream getParent() {
+        return part.getParent();
+    }
+
+    @Override
+    public String getHeader(String name) {
+        return part.getHeader(name);
+    }
+
+    @Override
+    public Collection<String> getHeaders(String name) {
+        return part.getHeaders(name);
+    }
+
+    @Override
+    public Collection<String> getHeaderNames() {
+        return part.getHeaderNames();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.elopteryx.upload.internal;
+
+/**
+ * Collects the bytes of the part header lines for a whole request. The bytes
+ * are appended to a chunk and the parsed headers keep referring to that chunk,
+ * so a header line does not need an allocation of its own. When a chunk is full
+ * a new one is started and the unfinished line is moved there, the old chunk stays
+ * alive as long as the headers using it.
+ */
+final class HeaderArena {
+
+    /**
+     * The default size of a chunk.
+     */
+    private static final int CHUNK_SIZE = 4096;
+
+    /**
+     * The chunk which receives the bytes.
+     */
+    private byte[] chunk = new byte[CHUNK_SIZE];
+
+    /**
+     * The index where the current token starts.
+     */
+    private int start;
+
+    /**
+     * The index where the next byte will be written.
+     */
+    private int pos;
+
+    /**
+     * Appends a byte to the current token.
+     * @param value The byte to add
+     */
+    void append(byte value) {
+        if (pos == chunk.length) {
+            final var length = pos - start;
+            final var next = new byte[Math.max(CHUNK_SIZE, length * 2)];
+            System.arraycopy(chunk, start, next, 0, length);
+            chunk = next;
+            start = 0;
+            pos = length;
+        }
+        chunk[pos++] = value;
+    }
+
+    /**
+     * Returns the chunk containing the current token. Only valid until the next append.
+     * @return The current chunk
+     */
+    byte[] chunk() {
+        return chunk;
+    }
+
+    /**
+     * Returns the index of the first byte of the current token.
+     * @return The start index
+     */
+    int start() {
+        return start;
+    }
+
+    /**
+     * Returns the index after the last byte of the current token.
+     * @return The end index
+     */
+    int end() {
+        return pos;
+    }
+
+    /**
+     * Returns the number of bytes in the current token.
+     * @return The token length
+     */
+    int length() {
+        return pos - start;
+    }
+
+    /**
+     * Drops the current token, its space is reused for the next one.
+     */
+    void discard() {
+        pos = start;
+    }
+
+    /**
+     * Keeps the current token, because something refers to it, and starts a new one.
+     */
+    void commit() {
+        start = pos;
+    }
+}
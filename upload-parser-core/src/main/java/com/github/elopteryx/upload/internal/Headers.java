@@ -16,18 +16,25 @@
 
 package com.github.elopteryx.upload.internal;
 
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 
 /**
  * This class is used to extract, store and retrieve header keys
  * and values. Supports the HTTP request headers and also the headers
  * for the part items received in the multipart request.
+ *
+ * <p>The parts usually have only a few headers, so they are kept in small arrays
+ * and looked up with a linear, case insensitive search. The values parsed from the
+ * request are kept as bytes and only decoded into a string when they are requested.
+ * The well known header names are mapped to constants without allocation.</p>
  */
 public class Headers {
 
@@ -39,23 +46,103 @@ public class Headers {
 
     public static final String CONTENT_LENGTH = "Content-Length";
 
+    public static final String CONTENT_MD5 = "Content-MD5";
+
     public static final String CONTENT_TYPE = "Content-Type";
 
-    private final Map<String, List<String>> headerNameToValueListMap = new LinkedHashMap<>();
+    public static final String CONTENT_TRANSFER_ENCODING = "Content-Transfer-Encoding";
+
+    public static final String DIGEST = "Digest";
+
+    /**
+     * The header names which are stored as a constant, in lower case, as they are returned.
+     */
+    private static final String[] KNOWN_NAMES = {
+        CONTENT_DISPOSITION.toLowerCase(Locale.ENGLISH),
+        CONTENT_TYPE.toLowerCase(Locale.ENGLISH),
+        CONTENT_TRANSFER_ENCODING.toLowerCase(Locale.ENGLISH),
+        CONTENT_LENGTH.toLowerCase(Locale.ENGLISH)
+    };
+
+    /**
+     * The initial capacity of the arrays.
+     */
+    private static final int INITIAL_CAPACITY = 4;
+
+    /**
+     * The charset used to decode the values.
+     */
+    private final Charset charset;
+
+    /**
+     * The number of stored headers.
+     */
+    private int size;
+
+    /**
+     * The lower case header names.
+     */
+    private String[] names = new String[INITIAL_CAPACITY];
+
+    /**
+     * The decoded values, null if a value was not requested yet.
+     */
+    private String[] values = new String[INITIAL_CAPACITY];
+
+    /**
+     * The arrays holding the encoded values.
+     */
+    private byte[][] sources = new byte[INITIAL_CAPACITY][];
+
+    /**
+     * The offsets of the encoded values.
+     */
+    private int[] offsets = new int[INITIAL_CAPACITY];
+
+    /**
+     * The lengths of the encoded values.
+     */
+    private int[] lengths = new int[INITIAL_CAPACITY];
+
+    /**
+     * Creates an instance for headers added as strings.
+     */
+    public Headers() {
+        this(ISO_8859_1);
+    }
+
+    /**
+     * Creates an instance which decodes the values with the given charset.
+     * @param charset The charset of the values
+     */
+    Headers(Charset charset) {
+        this.charset = charset;
+    }
 
     String getHeader(String name) {
-        var nameLower = name.toLowerCase(Locale.ENGLISH);
-        var headerValueList = headerNameToValueListMap.get(nameLower);
-        return headerValueList != null ? headerValueList.get(0) : null;
+        for (var i = 0; i < size; i++) {
+            if (names[i].equalsIgnoreCase(name)) {
+                return value(i);
+            }
+        }
+        return null;
     }
 
     Collection<String> getHeaders(String name) {
-        var nameLower = name.toLowerCase(Locale.ENGLISH);
-        return headerNameToValueListMap.getOrDefault(nameLower, Collections.emptyList());
+        List<String> result = null;
+        for (var i = 0; i < size; i++) {
+            if (names[i].equalsIgnoreCase(name)) {
+                if (result == null) {
+                    result = new ArrayList<>(2);
+                }
+                result.add(value(i));
+            }
+        }
+        return result == null ? List.of() : result;
     }
 
     Collection<String> getHeaderNames() {
-        return headerNameToValueListMap.keySet();
+        return new LinkedHashSet<>(Arrays.asList(names).subList(0, size));
     }
 
     /**
@@ -65,8 +152,116 @@ public class Headers {
      * @param value value of this header
      */
     void addHeader(String name, String value) {
-        var nameLower = name.toLowerCase(Locale.ENGLISH);
-        headerNameToValueListMap.computeIfAbsent(nameLower, key -> new ArrayList<>()).add(value);
+        final var index = nextIndex(name.toLowerCase(Locale.ENGLISH));
+        values[index] = value;
+    }
+
+    /**
+     * Adds a header whose value is not decoded yet. The bytes must not be changed
+     * afterwards, as they are only decoded when the value is requested.
+     *
+     * @param name   The lower case name of the header
+     * @param source The array containing the value
+     * @param from   The start index of the value, inclusive
+     * @param to     The end index of the value, exclusive
+     */
+    void addHeader(String name, byte[] source, int from, int to) {
+        final var index = nextIndex(name);
+        sources[index] = source;
+        offsets[index] = from;
+        lengths[index] = to - from;
+    }
+
+    /**
+     * Returns the number of headers, counting the repeated names as well.
+     * @return The number of headers
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the name of the header at the given position.
+     * @param index The index of the header
+     * @return The lower case header name
+     */
+    String nameAt(int index) {
+        return names[index];
+    }
+
+    /**
+     * Returns the value of the header at the given position.
+     * @param index The index of the header
+     * @return The header value
+     */
+    String valueAt(int index) {
+        return value(index);
+    }
+
+    private int nextIndex(String name) {
+        if (size == names.length) {
+            final var capacity = size * 2;
+            names = Arrays.copyOf(names, capacity);
+            values = Arrays.copyOf(values, capacity);
+            sources = Arrays.copyOf(sources, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        names[size] = name;
+        return size++;
+    }
+
+    private String value(int index) {
+        var value = values[index];
+        if (value == null) {
+            value = new String(sources[index], offsets[index], lengths[index], charset);
+            values[index] = value;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the lower case header name for the given bytes. The well known names
+     * are returned as constants, the others are decoded.
+     *
+     * @param data    The array containing the name
+     * @param from    The start index of the name, inclusive
+     * @param to      The end index of the name, exclusive
+     * @param charset The charset of the name
+     * @return The header name in lower case
+     */
+    static String headerName(byte[] data, int from, int to, Charset charset) {
+        for (var known : KNOWN_NAMES) {
+            if (equalsIgnoreCase(known, data, from, to)) {
+                return known;
+            }
+        }
+        return new String(data, from, to - from, charset).toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Compares the given bytes with a lower case ASCII string, ignoring the case of the bytes.
+     *
+     * @param lowerCase The string to compare with
+     * @param data      The array to compare
+     * @param from      The start index, inclusive
+     * @param to        The end index, exclusive
+     * @return Whether the bytes match the string
+     */
+    static boolean equalsIgnoreCase(String lowerCase, byte[] data, int from, int to) {
+        if (lowerCase.length() != to - from) {
+            return false;
+        }
+        for (var i = 0; i < lowerCase.length(); i++) {
+            var current = data[from + i];
+            if (current >= 'A' && current <= 'Z') {
+                current += 'a' - 'A';
+            }
+            if (current != lowerCase.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -0,0 +1,403 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.elopteryx.upload.internal;
+
+import com.github.elopteryx.upload.errors.MultipartException;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decompresses a body with the <code>gzip</code> or <code>deflate</code> content coding.
+ * The decoder is fed with the compressed bytes as they arrive, the gzip and zlib headers
+ * and trailers are processed by the decoder itself, so the {@link Inflater} instances
+ * can be reused from a shared pool. The checksums in the trailers are verified. The
+ * deflate coding should use the zlib format, but a raw deflate stream is also accepted,
+ * because some clients send that.
+ *
+ * <p>The decoder does not limit the size of the output, it is passed to the parser in
+ * buffers of limited size and the size limits are applied to the decompressed bytes.</p>
+ */
+final class InflatingDecoder {
+
+    /**
+     * The maximum number of idle inflaters kept in the pool.
+     */
+    private static final int MAX_POOLED = 64;
+
+    private static final Queue<Inflater> POOL = new ConcurrentLinkedQueue<>();
+
+    private static final AtomicInteger POOLED = new AtomicInteger();
+
+    private static final int GZIP_MAGIC = 0x8B1F;
+    private static final int DEFLATE_METHOD = 8;
+    private static final int FLAG_HCRC = 2;
+    private static final int FLAG_EXTRA = 4;
+    private static final int FLAG_NAME = 8;
+    private static final int FLAG_COMMENT = 16;
+    private static final int ZLIB_DICTIONARY = 0x20;
+
+    /**
+     * Reading the fixed part of the header.
+     */
+    private static final int HEADER = 0;
+    /**
+     * Reading the length of the gzip extra field.
+     */
+    private static final int EXTRA_LENGTH = 1;
+    /**
+     * Skipping the gzip extra field.
+     */
+    private static final int EXTRA = 2;
+    /**
+     * Skipping the zero terminated gzip file name.
+     */
+    private static final int NAME = 3;
+    /**
+     * Skipping the zero terminated gzip comment.
+     */
+    private static final int COMMENT = 4;
+    /**
+     * Skipping the gzip header checksum.
+     */
+    private static final int HEADER_CRC = 5;
+    /**
+     * Inflating the compressed data.
+     */
+    private static final int DATA = 6;
+    /**
+     * Reading the trailer.
+     */
+    private static final int TRAILER = 7;
+    /**
+     * After a gzip member, an other one may follow.
+     */
+    private static final int MEMBER_END = 8;
+    /**
+     * After the end of a zlib or raw deflate stream.
+     */
+    private static final int FINISHED = 9;
+
+    private final boolean gzip;
+
+    private final Checksum checksum;
+
+    private Inflater inflater;
+
+    private int state;
+
+    /**
+     * The bytes of the header or trailer which were read so far.
+     */
+    private final byte[] scratch = new byte[10];
+
+    private int scratchCount;
+
+    /**
+     * The flags of the gzip header.
+     */
+    private int flags;
+
+    /**
+     * The number of bytes still to skip in the current header field.
+     */
+    private int skip;
+
+    /**
+     * Whether the deflate stream has no zlib wrapper, it has no trailer then.
+     */
+    private boolean raw;
+
+    private InflatingDecoder(boolean gzip) {
+        this.gzip = gzip;
+        this.checksum = gzip ? new CRC32() : new Adler32();
+        this.inflater = acquire();
+    }
+
+    /**
+     * Returns a decoder for the given content coding.
+     * @param coding The value of the Content-Encoding header, can be null
+     * @return The decoder or null for the identity coding
+     * @throws MultipartException If the coding is not supported
+     */
+    static InflatingDecoder forCoding(String coding) throws MultipartException {
+        if (coding == null) {
+            return null;
+        }
+        switch (coding.trim().toLowerCase(Locale.ENGLISH)) {
+            case "":
+            case "identity":
+                return null;
+            case "gzip":
+            case "x-gzip":
+                return new InflatingDecoder(true);
+            case "deflate":
+                return new InflatingDecoder(false);
+            default:
+                throw new MultipartException("Unsupported content coding: " + coding);
+        }
+    }
+
+    /**
+     * Returns whether the given content coding is a compression supported by the decoder.
+     * @param coding The value of the Content-Encoding header, can be null
+     * @return True for the gzip and deflate codings
+     */
+    static boolean isCompressed(String coding) {
+        if (coding == null) {
+            return false;
+        }
+        final var value = coding.trim();
+        return "gzip".equalsIgnoreCase(value) || "x-gzip".equalsIgnoreCase(value) || "deflate".equalsIgnoreCase(value);
+    }
+
+    /**
+     * Decompresses the available bytes. The method returns if the output is full or the
+     * input is consumed, the input must not be reused until it was consumed.
+     * @param input The compressed bytes
+     * @param output The buffer for the decompressed bytes
+     * @return The number of decompressed bytes
+     * @throws MultipartException If the compressed data is corrupt
+     */
+    int inflate(ByteBuffer input, ByteBuffer output) throws MultipartException {
+        final var start = output.position();
+        while (output.hasRemaining()) {
+            if (state < DATA) {
+                if (!readHeader(input)) {
+                    break;
+                }
+            } else if (state == DATA) {
+                if (inflater.needsInput()) {
+                    if (!input.hasRemaining()) {
+                        break;
+                    }
+                    inflater.setInput(input);
+                }
+                final var before = output.position();
+                try {
+                    inflater.inflate(output);
+                } catch (DataFormatException e) {
+                    throw new MultipartException("Invalid compressed data: " + e.getMessage());
+                }
+                final var produced = output.duplicate().flip().position(before);
+                checksum.update(produced);
+                if (inflater.finished()) {
+                    state = raw ? FINISHED : TRAILER;
+                } else if (inflater.needsDictionary()) {
+                    throw new MultipartException("Compressed data with a preset dictionary is not supported!");
+                }
+            } else if (state == TRAILER) {
+                if (!readTrailer(input)) {
+                    break;
+                }
+            } else if (state == MEMBER_END) {
+                if (!input.hasRemaining()) {
+                    break;
+                }
+                inflater.reset();
+                checksum.reset();
+                state = HEADER;
+            } else {
+                // Anything after the end of the stream is ignored
+                input.position(input.limit());
+                break;
+            }
+        }
+        return output.position() - start;
+    }
+
+    /**
+     * Returns whether the decoder needs more input to produce output. If it does not,
+     * the previous call was stopped by the full output.
+     * @return False if the inflater holds decompressed bytes
+     */
+    boolean needsInput() {
+        return state != DATA || inflater.needsInput();
+    }
+
+    /**
+     * Checks that the compressed stream has ended and returns the inflater to the pool.
+     * @throws MultipartException If the stream is incomplete
+     */
+    void finish() throws MultipartException {
+        final var complete = state == MEMBER_END || state == FINISHED;
+        release();
+        if (!complete) {
+            throw new MultipartException("The compressed data ended unexpectedly!");
+        }
+    }
+
+    /**
+     * Returns the inflater to the pool, the decoder can not be used afterwards.
+     */
+    void release() {
+        if (inflater != null) {
+            final var released = inflater;
+            inflater = null;
+            state = FINISHED;
+            if (POOLED.incrementAndGet() <= MAX_POOLED) {
+                released.reset();
+                POOL.offer(released);
+            } else {
+                POOLED.decrementAndGet();
+                released.end();
+            }
+        }
+    }
+
+    private static Inflater acquire() {
+        final var pooled = POOL.poll();
+        if (pooled == null) {
+            return new Inflater(true);
+        }
+        POOLED.decrementAndGet();
+        return pooled;
+    }
+
+    private boolean readHeader(ByteBuffer input) throws MultipartException {
+        while (input.hasRemaining()) {
+            switch (state) {
+                case HEADER:
+                    if (!collect(input, gzip ? 10 : 2)) {
+                        return false;
+                    }
+                    if (gzip) {
+                        checkGzipHeader();
+                    } else if (!isZlibHeader()) {
+                        // A raw deflate stream, the two bytes were the beginning of the data
+                        raw = true;
+                        inflater.setInput(scratch, 0, 2);
+                        state = DATA;
+                        return true;
+                    }
+                    nextField(HEADER);
+                    break;
+                case EXTRA_LENGTH:
+                    if (!collect(input, 2)) {
+                        return false;
+                    }
+                    skip = (scratch[0] & 0xFF) | (scratch[1] & 0xFF) << 8;
+                    state = EXTRA;
+                    break;
+                case EXTRA:
+                case HEADER_CRC:
+                    final var count = Math.min(skip, input.remaining());
+                    input.position(input.position() + count);
+                    skip -= count;
+                    if (skip > 0) {
+                        return false;
+                    }
+                    nextField(state);
+                    break;
+                default:
+                    // The zero terminated name and comment
+                    if (input.get() == 0) {
+                        nextField(state);
+                    }
+                    break;
+            }
+            if (state == DATA) {
+                return true;
+            }
+        }
+        return state == DATA;
+    }
+
+    /**
+     * Moves to the next optional header field which is present.
+     * @param completed The state of the field which was completed
+     */
+    private void nextField(int completed) {
+        if (gzip && completed < EXTRA_LENGTH && (flags & FLAG_EXTRA) != 0) {
+            state = EXTRA_LENGTH;
+        } else if (gzip && completed < NAME && (flags & FLAG_NAME) != 0) {
+            state = NAME;
+        } else if (gzip && completed < COMMENT && (flags & FLAG_COMMENT) != 0) {
+            state = COMMENT;
+        } else if (gzip && completed < HEADER_CRC && (flags & FLAG_HCRC) != 0) {
+            state = HEADER_CRC;
+            skip = 2;
+        } else {
+            state = DATA;
+        }
+    }
+
+    private void checkGzipHeader() throws MultipartException {
+        if (((scratch[0] & 0xFF) | (scratch[1] & 0xFF) << 8) != GZIP_MAGIC || scratch[2] != DEFLATE_METHOD) {
+            throw new MultipartException("Invalid gzip header!");
+        }
+        flags = scratch[3] & 0xFF;
+    }
+
+    private boolean isZlibHeader() throws MultipartException {
+        final var header = (scratch[0] & 0xFF) << 8 | (scratch[1] & 0xFF);
+        if ((scratch[0] & 0x0F) != DEFLATE_METHOD || header % 31 != 0) {
+            return false;
+        }
+        if ((scratch[1] & ZLIB_DICTIONARY) != 0) {
+            throw new MultipartException("Compressed data with a preset dictionary is not supported!");
+        }
+        return true;
+    }
+
+    private boolean readTrailer(ByteBuffer input) throws MultipartException {
+        if (!collect(input, gzip ? 8 : 4)) {
+            return false;
+        }
+        final long expected;
+        if (gzip) {
+            expected = (scratch[0] & 0xFFL) | (scratch[1] & 0xFFL) << 8 | (scratch[2] & 0xFFL) << 16 | (scratch[3] & 0xFFL) << 24;
+            final var size = (scratch[4] & 0xFFL) | (scratch[5] & 0xFFL) << 8 | (scratch[6] & 0xFFL) << 16 | (scratch[7] & 0xFFL) << 24;
+            if (size != (inflater.getBytesWritten() & 0xFFFFFFFFL)) {
+                throw new MultipartException("The size of the decompressed data does not match the gzip trailer!");
+            }
+        } else {
+            expected = (scratch[0] & 0xFFL) << 24 | (scratch[1] & 0xFFL) << 16 | (scratch[2] & 0xFFL) << 8 | (scratch[3] & 0xFFL);
+        }
+        if (expected != checksum.getValue()) {
+            throw new MultipartException("The checksum of the decompressed data does not match!");
+        }
+        state = gzip ? MEMBER_END : FINISHED;
+        return true;
+    }
+
+    /**
+     * Collects the given number of bytes into the scratch array.
+     * @param input The input bytes
+     * @param count The number of bytes needed
+     * @return Whether the bytes are available, the count is reset then
+     */
+    private boolean collect(ByteBuffer input, int count) {
+        final var length = Math.min(count - scratchCount, input.remaining());
+        input.get(scratch, scratchCount, length);
+        scratchCount += length;
+        if (scratchCount < count) {
+            return false;
+        }
+        scratchCount = 0;
+        return true;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.elopteryx.upload.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Decompresses the request stream for the blocking parsers. Unlike the
+ * {@link java.util.zip.GZIPInputStream} it uses a pooled inflater and checks
+ * that the compressed data is complete when the stream ends.
+ */
+class InflatingInputStream extends InputStream {
+
+    private final InputStream stream;
+
+    private final InflatingDecoder decoder;
+
+    /**
+     * The compressed bytes which were read but not decompressed yet.
+     */
+    private final ByteBuffer compressed;
+
+    private boolean finished;
+
+    InflatingInputStream(InputStream stream, InflatingDecoder decoder, int bufferSize) {
+        this.stream = stream;
+        this.decoder = decoder;
+        this.compressed = ByteBuffer.allocate(bufferSize);
+        this.compressed.limit(0);
+    }
+
+    @Override
+    public int read() throws IOException {
+        final var single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        final var output = ByteBuffer.wrap(bytes, offset, length);
+        while (true) {
+            if (!compressed.hasRemaining() && decoder.needsInput()) {
+                if (finished) {
+                    return -1;
+                }
+                final var count = stream.read(compressed.array());
+                if (count == -1) {
+                    finished = true;
+                    decoder.finish();
+                    return -1;
+                }
+                compressed.position(0);
+                compressed.limit(count);
+            }
+            final var count = decoder.inflate(compressed, output);
+            if (count > 0) {
+                return count;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        decoder.release();
+        stream.close();
+    }
+}
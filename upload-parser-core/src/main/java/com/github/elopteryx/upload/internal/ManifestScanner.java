@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+import com.github.elopteryx.upload.PartStream;
+import com.github.elopteryx.upload.errors.MultipartException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Lists the parts of a multipart body without processing them. Every part is skipped
+ * right after its headers, the parser only looks for the next boundary, so the body
+ * bytes are not decoded, copied or passed to the callbacks. The size of a part is the
+ * number of body bytes in the request, before any transfer encoding is decoded. The
+ * request size limit is applied, the part size limit is not.
+ */
+public class ManifestScanner extends BlockingUploadParser {
+
+    /**
+     * The number of body bytes of the current part.
+     */
+    private long partSize;
+
+    /**
+     * Whether the current part is reported.
+     */
+    private boolean reporting;
+
+    /**
+     * Creates a scanner for the given request.
+     * @param request The request, can be null if the body is read from a stream
+     */
+    public ManifestScanner(HttpServletRequest request) {
+        super(request);
+    }
+
+    /**
+     * Scans the body of the request.
+     * @return The parts of the request
+     * @throws IOException If an error occurred with the I/O or the body is malformed
+     */
+    public List<PartStream> scan() throws IOException {
+        init();
+        try {
+            blockingRead();
+        } finally {
+            releaseBuffers();
+        }
+        return context.getPartStreams();
+    }
+
+    /**
+     * Scans the given multipart body, for example a request body which was saved to a file.
+     * @param stream The stream of the body
+     * @param boundary The boundary, without the leading dashes
+     * @param charset The charset of the part headers
+     * @return The parts of the body
+     * @throws IOException If an error occurred with the I/O or the body is malformed
+     */
+    public List<PartStream> scan(InputStream stream, byte[] boundary, Charset charset) throws IOException {
+        prepare(null);
+        start(boundary, charset);
+        inputStream = stream;
+        try {
+            blockingRead();
+        } finally {
+            releaseBuffers();
+        }
+        return context.getPartStreams();
+    }
+
+    /**
+     * The scanner does not take checkpoints, nothing is written which could be resumed.
+     */
+    @Override
+    public void setCheckpoints(Path checkpointDirectory, long checkpointInterval) {
+    }
+
+    @Override
+    public void setResume(String checkpointToken, long resumeOffset) {
+    }
+
+    @Override
+    public void beginPart(Headers headers) throws MultipartException {
+        final var previous = context.getCurrentPart();
+        super.beginPart(headers);
+        reporting = context.getCurrentPart() != previous;
+        partSize = 0;
+        skipPart();
+    }
+
+    @Override
+    public void data(ByteBuffer buffer) {
+        partSize += buffer.remaining();
+        buffer.position(buffer.limit());
+    }
+
+    @Override
+    public void skipped(int count) {
+        partSize += count;
+    }
+
+    @Override
+    public void endPart() {
+        if (reporting) {
+            final var part = context.getCurrentPart();
+            part.setSize(partSize);
+            part.markAsFinished();
+            reporting = false;
+        }
+    }
+}
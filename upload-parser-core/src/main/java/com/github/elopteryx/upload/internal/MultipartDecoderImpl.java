@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.elopteryx.upload.internal;
+
+import com.github.elopteryx.upload.MultipartDecoder;
+import com.github.elopteryx.upload.UploadContext;
+import com.github.elopteryx.upload.errors.MultipartException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Default implementation of {@link MultipartDecoder}. The heap buffers given by the caller
+ * are parsed directly, the others are copied into the data buffer first.
+ */
+public class MultipartDecoderImpl extends AbstractUploadParser implements MultipartDecoder {
+
+    /**
+     * The boundary of the request.
+     */
+    private final byte[] boundary;
+
+    /**
+     * The charset of the part headers.
+     */
+    private final Charset charset;
+
+    /**
+     * Creates a new instance. The parser must be configured before the first call to {@link #feed(ByteBuffer)}.
+     * @param boundary The boundary of the request, without the leading dashes
+     * @param charset The charset of the part headers
+     */
+    public MultipartDecoderImpl(byte[] boundary, Charset charset) {
+        this.boundary = boundary;
+        this.charset = charset;
+    }
+
+    /**
+     * Sets up the parser after the configuration has been passed.
+     * @throws IOException If the request is resumed and the checkpoint can not be used
+     */
+    public void init() throws IOException {
+        prepare(null);
+        start(boundary, charset);
+    }
+
+    @Override
+    public void feed(ByteBuffer buffer) throws IOException {
+        try {
+            parse(buffer);
+        } catch (IOException | RuntimeException e) {
+            releaseBuffers();
+            throw e;
+        }
+    }
+
+    private void parse(ByteBuffer buffer) throws IOException {
+        if (buffer.hasArray()) {
+            parseBuffer(buffer);
+            buffer.position(buffer.limit());
+            return;
+        }
+        while (buffer.hasRemaining()) {
+            final var count = Math.min(buffer.remaining(), dataBuffer.capacity());
+            dataBuffer.clear();
+            buffer.get(dataBuffer.array(), 0, count);
+            dataBuffer.limit(count);
+            parseBuffer(dataBuffer);
+        }
+    }
+
+    @Override
+    public UploadContext finish() throws IOException {
+        releaseBuffers();
+        if (!parseState.isComplete()) {
+            throw new MultipartException("Stream ended unexpectedly!");
+        }
+        if (requestCallback != null) {
+            try {
+                requestCallback.onRequestComplete(context);
+            } catch (IOException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        }
+        return context;
+    }
+
+    @Override
+    public boolean isComplete() {
+        return parseState.isComplete();
+    }
+}
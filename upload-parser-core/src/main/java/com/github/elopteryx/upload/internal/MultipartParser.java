@@ -18,12 +18,16 @@
 
 package com.github.elopteryx.upload.internal;
 
+import com.github.elopteryx.upload.BufferPool;
+import com.github.elopteryx.upload.errors.HeaderSizeException;
 import com.github.elopteryx.upload.errors.MultipartException;
+import com.github.elopteryx.upload.errors.PartCountException;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.lang.invoke.VarHandle;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 
 /**
  * Copied from Undertow. Made some refactoring to remove the
@@ -54,14 +58,44 @@ public class MultipartParser {
      */
     private static final byte[] BOUNDARY_PREFIX = {CR, LF, DASH, DASH};
 
-    private static final String CONTENT_TRANSFER_ENCODING = "Content-Transfer-Encoding";
+    /**
+     * The prefix of the nested multipart content types.
+     */
+    private static final String MULTIPART = "multipart/";
+
+    /**
+     * The default maximum depth of the nested multipart bodies.
+     */
+    private static final int DEFAULT_MAX_NESTING_DEPTH = 2;
 
     interface PartHandler {
-        void beginPart(final Headers headers);
+        void beginPart(final Headers headers) throws MultipartException;
 
         void data(final ByteBuffer buffer) throws IOException;
 
         void endPart() throws IOException;
+
+        /**
+         * Called when a part turns out to be a nested multipart body. The parts inside
+         * it are reported with the usual methods, until the matching end call.
+         * @param headers The headers of the enclosing part
+         */
+        default void beginMultipart(final Headers headers) {
+        }
+
+        /**
+         * Called when every part of the nested multipart body has been processed.
+         */
+        default void endMultipart() {
+        }
+
+        /**
+         * Called with the number of body bytes which were skipped instead of being
+         * passed to {@link #data(ByteBuffer)}, after the part was skipped.
+         * @param count The number of skipped bytes
+         */
+        default void skipped(final int count) {
+        }
     }
 
     /**
@@ -81,6 +115,31 @@ public class MultipartParser {
         return new ParseState(handler, bufferSize, requestCharset, boundaryToken);
     }
 
+    /**
+     * Continues a parse from a checkpoint. The parser starts inside the body of an
+     * identity encoded part.
+     * @param handler The part handler, which is to be called at certain points.
+     * @param boundary The boundary value for the multipart stream.
+     * @param bufferSize The size of the buffer for the encoding handlers.
+     * @param requestCharset The charset of the input.
+     * @param matched The number of boundary bytes which were held back at the checkpoint.
+     * @return A new state object to allow calling the parser.
+     */
+    static ParseState resumeParse(final PartHandler handler, final byte[] boundary, int bufferSize, final Charset requestCharset, int matched) {
+        final var parseState = beginParse(handler, boundary, bufferSize, requestCharset);
+        parseState.state = 3;
+        parseState.subState = matched;
+        return parseState;
+    }
+
+    /**
+     * The parser state of a single request. The state is confined to the thread which
+     * is currently parsing, the fields are deliberately not volatile so the JIT can keep
+     * them in registers during the byte loops. The blocking parser uses the same thread
+     * for the whole request, the async parser can be called on different container threads,
+     * the servlet container orders those callbacks and {@link #parse(ByteBuffer)} issues a
+     * fence at the start and at the end of each buffer to publish the state regardless.
+     */
     static class ParseState {
         private final PartHandler partHandler;
         private final Charset requestCharset;
@@ -91,13 +150,57 @@ public class MultipartParser {
          */
         private final byte[] boundary;
 
+        /**
+         * The boundary search, built once for the boundary.
+         */
+        private final BoundaryMatcher matcher;
+
         // 0=preamble
-        private volatile int state = 0;
-        private volatile int subState = Integer.MAX_VALUE; // used for preamble parsing
-        private volatile ByteArrayOutputStream currentString = null;
-        private volatile String currentHeaderName = null;
-        private volatile Headers headers;
-        private volatile Encoding encodingHandler;
+        private int state = 0;
+        private int subState = Integer.MAX_VALUE; // used for preamble parsing
+        private String currentHeaderName = null;
+        private Headers headers;
+
+        /**
+         * Collects the bytes of the header lines.
+         */
+        private final HeaderArena arena = new HeaderArena();
+
+        /**
+         * The decoder of the current part, null for the identity encoding, which
+         * passes the data to the part handler directly.
+         */
+        private Encoding encodingHandler;
+
+        /**
+         * The parser of the nested multipart body, if the current part is one.
+         */
+        private ParseState child;
+
+        /**
+         * Whether the part handler asked the parser to stop after the current step.
+         */
+        private boolean paused;
+
+        /**
+         * Whether the rest of the current part is skipped.
+         */
+        private boolean skipping;
+
+        /**
+         * The limits of the request.
+         */
+        private Limits limits = new Limits(-1, -1, -1, -1, DEFAULT_MAX_NESTING_DEPTH);
+
+        /**
+         * The pool of the buffers used by the encodings.
+         */
+        private BufferPool bufferPool = BufferPoolImpl.UNPOOLED;
+
+        /**
+         * The number of bytes in the current header line.
+         */
+        private int lineLength;
 
         /**
          * Public constructor.
@@ -111,55 +214,54 @@ public class MultipartParser {
             this.requestCharset = requestCharset;
             this.bufferSize = bufferSize;
             this.boundary = boundary;
+            this.matcher = new BoundaryMatcher(boundary);
         }
 
         /**
          * Parses the given data. This method can be called by the blocking and async upload parser as well.
+         * If the part handler pauses the parser then the method returns early, the buffer is positioned
+         * at the first unparsed byte.
          * @param buffer The buffer containing new data to process
          * @throws IOException If an error occurred with the I/O
          */
         void parse(ByteBuffer buffer) throws IOException {
-            while (buffer.hasRemaining()) {
-                switch (state) {
-                    case 0:
-                        preamble(buffer);
-                        break;
-                    case 1:
-                        headerName(buffer);
-                        break;
-                    case 2:
-                        headerValue(buffer);
-                        break;
-                    case 3:
-                        entity(buffer);
-                        break;
-                    case -1:
-                        return;
-                    default:
-                        throw new IllegalStateException("" + state);
+            VarHandle.acquireFence();
+            paused = false;
+            try {
+                while (!paused && buffer.hasRemaining()) {
+                    switch (state) {
+                        case 0:
+                            preamble(buffer);
+                            break;
+                        case 1:
+                        case 2:
+                            header(buffer);
+                            break;
+                        case 3:
+                            entity(buffer);
+                            break;
+                        case -1:
+                            return;
+                        default:
+                            throw new IllegalStateException("" + state);
+                    }
                 }
+            } finally {
+                VarHandle.releaseFence();
             }
         }
 
-        private void preamble(final ByteBuffer buffer) {
+        private void preamble(final ByteBuffer buffer) throws IOException {
+            if (subState == Integer.MAX_VALUE) {
+                //handle the case of no preamble. In this case there is no CRLF, it is treated as already matched
+                subState = 2;
+            }
+            if (subState >= 0 && !findBoundary(buffer, false)) {
+                return;
+            }
             while (buffer.hasRemaining()) {
                 final var b = buffer.get();
-                if (subState >= 0) {
-                    //handle the case of no preamble. In this case there is no CRLF
-                    if (subState == Integer.MAX_VALUE) {
-                        subState = boundary[2] == b ? 2 : 0;
-                    }
-                    if (b == boundary[subState]) {
-                        subState++;
-                        if (subState == boundary.length) {
-                            subState = -1;
-                        }
-                    } else if (b == boundary[0]) {
-                        subState = 1;
-                    } else {
-                        subState = 0;
-                    }
-                } else if (subState == -1) {
+                if (subState == -1) {
                     if (b == CR) {
                         subState = -2;
                     }
@@ -167,7 +269,7 @@ public class MultipartParser {
                     if (b == LF) {
                         subState = 0;
                         state = 1;//preamble is done
-                        headers = new Headers();
+                        headers = new Headers(requestCharset);
                         return;
                     } else {
                         subState = -1;
@@ -176,57 +278,117 @@ public class MultipartParser {
             }
         }
 
+        /**
+         * Parses the header lines and counts their bytes against the limit of the request.
+         * @param buffer The buffer containing new data to process
+         * @throws MultipartException If the headers are malformed
+         */
+        private void header(final ByteBuffer buffer) throws MultipartException {
+            final var begin = buffer.position();
+            if (state == 1) {
+                headerName(buffer);
+            } else {
+                headerValue(buffer);
+            }
+            limits.addHeaderBytes(buffer.position() - begin);
+        }
+
         private void headerName(final ByteBuffer buffer) throws MultipartException {
             while (buffer.hasRemaining()) {
                 final var b = buffer.get();
                 if (b == ':') {
-                    if (currentString == null || subState != 0) {
+                    if (arena.length() == 0 || subState != 0) {
                         throw new MultipartException("Invalid multipart request!");
                     } else {
-                        currentHeaderName = new String(currentString.toByteArray(), requestCharset);
-                        currentString.reset();
+                        limits.checkLine(++lineLength);
+                        final var data = arena.chunk();
+                        final var end = trimEnd(data, arena.start(), arena.end());
+                        currentHeaderName = Headers.headerName(data, trimStart(data, arena.start(), end), end, requestCharset);
+                        arena.discard();
                         subState = 0;
                         state = 2;
                         return;
                     }
                 } else if (b == CR) {
-                    if (currentString != null) {
+                    if (arena.length() != 0) {
                         throw new MultipartException("Invalid multipart request!");
                     } else {
                         subState = 1;
                     }
                 } else if (b == LF) {
-                    if (currentString != null || subState != 1) {
+                    if (arena.length() != 0 || subState != 1) {
                         throw new MultipartException("Invalid multipart request!");
                     }
-                    state = 3;
-                    subState = 0;
-                    partHandler.beginPart(headers);
-                    //select the appropriate encoding
-                    var encoding = headers.getHeader(CONTENT_TRANSFER_ENCODING);
-                    if (encoding == null) {
-                        encodingHandler = new IdentityEncoding();
-                    } else if (encoding.equalsIgnoreCase("base64")) {
-                        encodingHandler = new Base64Encoding(bufferSize);
-                    } else if (encoding.equalsIgnoreCase("quoted-printable")) {
-                        encodingHandler = new QuotedPrintableEncoding(bufferSize);
-                    } else {
-                        encodingHandler = new IdentityEncoding();
-                    }
-                    headers = null;
+                    beginEntity();
                     return;
-
                 } else {
                     if (subState != 0) {
                         throw new MultipartException("Invalid multipart request!");
-                    } else if (currentString == null) {
-                        currentString = new ByteArrayOutputStream();
                     }
-                    currentString.write(b);
+                    limits.checkLine(++lineLength);
+                    arena.append(b);
                 }
             }
         }
 
+        private void beginEntity() throws MultipartException {
+            limits.addPart();
+            state = 3;
+            subState = 0;
+            skipping = false;
+            final var nestedBoundary = nestedBoundary(headers.getHeader(Headers.CONTENT_TYPE));
+            if (nestedBoundary != null) {
+                //the part is parsed by a child parser, in the same pass
+                limits.enterMultipart();
+                partHandler.beginMultipart(headers);
+                child = beginParse(partHandler, nestedBoundary.getBytes(requestCharset), bufferSize, requestCharset);
+                child.limits = limits;
+                child.bufferPool = bufferPool;
+                encodingHandler = null;
+            } else {
+                partHandler.beginPart(headers);
+                encodingHandler = selectEncoding(headers.getHeader(Headers.CONTENT_TRANSFER_ENCODING));
+            }
+            headers = null;
+        }
+
+        /**
+         * Returns the boundary of the nested multipart body.
+         * @param contentType The content type of the part, can be null
+         * @return The boundary or null if the part is not a multipart body
+         */
+        private static String nestedBoundary(final String contentType) {
+            if (contentType == null || !contentType.regionMatches(true, 0, MULTIPART, 0, MULTIPART.length())) {
+                return null;
+            }
+            final var boundary = Headers.extractBoundaryFromHeader(contentType);
+            if (boundary != null && boundary.length() > 1 && boundary.startsWith("\"") && boundary.endsWith("\"")) {
+                return boundary.substring(1, boundary.length() - 1);
+            }
+            return boundary;
+        }
+
+        /**
+         * Returns the decoder for the given transfer encoding. A part without a transfer
+         * encoding may be compressed with the gzip or deflate content coding, the other
+         * content codings are not decoded.
+         * @param encoding The value of the header, can be null
+         * @return The decoder or null for the identity encoding
+         * @throws MultipartException If the content coding is not supported
+         */
+        private Encoding selectEncoding(final String encoding) throws MultipartException {
+            if (encoding == null) {
+                final var coding = headers.getHeader(Headers.CONTENT_ENCODING);
+                return InflatingDecoder.isCompressed(coding) ? new InflatingEncoding(InflatingDecoder.forCoding(coding), bufferPool.acquire(bufferSize)) : null;
+            } else if (encoding.equalsIgnoreCase("base64")) {
+                return new Base64Encoding(bufferPool.acquire(bufferSize));
+            } else if (encoding.equalsIgnoreCase("quoted-printable")) {
+                return new QuotedPrintableEncoding(bufferPool.acquire(bufferSize));
+            } else {
+                return null;
+            }
+        }
+
         private void headerValue(final ByteBuffer buffer) throws MultipartException {
             while (buffer.hasRemaining()) {
                 final var b = buffer.get();
@@ -236,58 +398,183 @@ public class MultipartParser {
                     if (subState != 1) {
                         throw new MultipartException("Invalid multipart request!");
                     }
-                    headers.addHeader(currentHeaderName.trim(), new String(currentString.toByteArray(), requestCharset).trim());
+                    final var data = arena.chunk();
+                    final var end = trimEnd(data, arena.start(), arena.end());
+                    headers.addHeader(currentHeaderName, data, trimStart(data, arena.start(), end), end);
+                    limits.checkHeaderCount(headers.size());
+                    arena.commit();
+                    lineLength = 0;
                     state = 1;
                     subState = 0;
-                    currentString = null;
                     return;
                 } else {
                     if (subState != 0) {
                         throw new MultipartException("Invalid multipart request!");
                     }
-                    currentString.write(b);
+                    limits.checkLine(++lineLength);
+                    arena.append(b);
                 }
             }
         }
 
+        /**
+         * Skips the leading whitespace, like {@link String#trim()} does.
+         * @param data The array containing the token
+         * @param from The start index, inclusive
+         * @param to The end index, exclusive
+         * @return The index of the first non whitespace byte
+         */
+        private static int trimStart(final byte[] data, int from, final int to) {
+            while (from < to && (data[from] & 0xFF) <= ' ') {
+                from++;
+            }
+            return from;
+        }
+
+        /**
+         * Skips the trailing whitespace, like {@link String#trim()} does.
+         * @param data The array containing the token
+         * @param from The start index, inclusive
+         * @param to The end index, exclusive
+         * @return The index after the last non whitespace byte
+         */
+        private static int trimEnd(final byte[] data, final int from, int to) {
+            while (to > from && (data[to - 1] & 0xFF) <= ' ') {
+                to--;
+            }
+            return to;
+        }
+
         private void entity(final ByteBuffer buffer) throws IOException {
-            var startingSubState = subState;
-            var pos = buffer.position();
-            while (buffer.hasRemaining()) {
-                final var b = buffer.get();
-                if (subState >= 0) {
-                    if (b == boundary[subState]) {
-                        //if we have a potential boundary match
-                        subState++;
-                        if (subState == boundary.length) {
-                            startingSubState = 0;
-                            //we have our data
-                            var retBuffer = buffer.duplicate();
-                            retBuffer.position(pos);
-
-                            retBuffer.limit(Math.max(buffer.position() - boundary.length, 0));
-                            encodingHandler.handle(partHandler, retBuffer);
-                            partHandler.endPart();
-                            subState = -1;
-                        }
-                    } else if (b == boundary[0]) {
-                        //we started half way through a boundary, but it turns out we did not actually meet the boundary condition
-                        //so we call the part handler with our copy of the boundary data
-                        if (startingSubState > 0) {
-                            encodingHandler.handle(partHandler, ByteBuffer.wrap(boundary, 0, startingSubState));
-                            startingSubState = 0;
-                        }
-                        subState = 1;
+            if (subState >= 0) {
+                if (!findBoundary(buffer, !skipping)) {
+                    return;
+                }
+                endEntity();
+            }
+            afterBoundary(buffer);
+        }
+
+        /**
+         * Looks for the boundary in the given buffer. The subState holds the number of boundary
+         * bytes matched at the end of the previous buffer, those are held back until it is
+         * known whether they are body bytes or not.
+         * @param buffer The buffer containing new data to process
+         * @param deliver Whether to pass the body bytes to the encoding or simply skip them
+         * @return True if the boundary was found, the buffer is then positioned after it
+         * @throws IOException If an error occurred with the I/O
+         */
+        private boolean findBoundary(final ByteBuffer buffer, final boolean deliver) throws IOException {
+            final var data = buffer.array();
+            final var from = buffer.arrayOffset() + buffer.position();
+            final var to = buffer.arrayOffset() + buffer.limit();
+            if (subState > 0) {
+                //the previous buffer ended with a partial boundary match, check whether it continues here
+                final var bodyBytes = matcher.continueMatch(subState, data, from, to);
+                if (bodyBytes > 0 && deliver) {
+                    //we started half way through a boundary, but it turns out we did not actually meet the boundary condition
+                    //so we call the part handler with our copy of the boundary data
+                    deliver(ByteBuffer.wrap(boundary, 0, bodyBytes));
+                } else if (bodyBytes > 0) {
+                    skip(bodyBytes);
+                }
+                final var carried = subState - bodyBytes;
+                if (carried > 0) {
+                    final var needed = boundary.length - carried;
+                    if (to - from < needed) {
+                        subState = carried + to - from;
+                        buffer.position(buffer.limit());
+                        return false;
+                    }
+                    buffer.position(buffer.position() + needed);
+                    subState = -1;
+                    return true;
+                }
+                subState = 0;
+            }
+            final var match = matcher.indexOf(data, from, to);
+            if (match != -1) {
+                //we have our data
+                if (deliver) {
+                    handleData(data, from, match);
+                } else {
+                    skip(match - from);
+                }
+                buffer.position(match + boundary.length - buffer.arrayOffset());
+                subState = -1;
+                return true;
+            }
+            //if we end partially through a boundary we do not handle those bytes yet
+            final var partialMatch = matcher.partialMatchStart(data, from, to);
+            if (deliver) {
+                handleData(data, from, partialMatch);
+            } else {
+                skip(partialMatch - from);
+            }
+            subState = to - partialMatch;
+            buffer.position(buffer.limit());
+            return false;
+        }
+
+        /**
+         * Reports the skipped body bytes, the preamble is not reported.
+         * @param count The number of skipped bytes
+         */
+        private void skip(final int count) {
+            if (state == 3 && count > 0) {
+                partHandler.skipped(count);
+            }
+        }
+
+        private void endEntity() throws IOException {
+            if (child == null) {
+                if (encodingHandler != null) {
+                    if (skipping) {
+                        encodingHandler.discard();
                     } else {
-                        //we started half way through a boundary, but it turns out we did not actually meet the boundary condition
-                        //so we call the part handler with our copy of the boundary data
-                        if (startingSubState > 0) {
-                            encodingHandler.handle(partHandler, ByteBuffer.wrap(boundary, 0, startingSubState));
-                            startingSubState = 0;
-                        }
-                        subState = 0;
+                        encodingHandler.finish();
                     }
-                } else if (subState == -1) {
+                    encodingHandler.release(bufferPool);
+                    encodingHandler = null;
+                }
+                partHandler.endPart();
+                return;
+            }
+            if (!child.isComplete()) {
+                throw new MultipartException("Invalid multipart request!");
+            }
+            child = null;
+            limits.exitMultipart();
+            partHandler.endMultipart();
+        }
+
+        private void handleData(final byte[] data, final int from, final int to) throws IOException {
+            if (from < to) {
+                deliver(ByteBuffer.wrap(data, from, to - from));
+            }
+        }
+
+        /**
+         * Passes the body bytes to the part handler. Identity encoded parts skip the
+         * encoding interface, that keeps the call site monomorphic for the common case.
+         * The body of a nested multipart part is passed to the child parser instead.
+         * @param rawData The body bytes
+         * @throws IOException If an error occurred with the I/O
+         */
+        private void deliver(final ByteBuffer rawData) throws IOException {
+            if (child != null) {
+                child.parse(rawData);
+            } else if (encodingHandler == null) {
+                partHandler.data(rawData);
+            } else {
+                encodingHandler.handle(partHandler, rawData);
+            }
+        }
+
+        private void afterBoundary(final ByteBuffer buffer) {
+            while (buffer.hasRemaining()) {
+                final var b = buffer.get();
+                if (subState == -1) {
                     if (b == CR) {
                         subState = -2;
                     } else if (b == DASH) {
@@ -298,7 +585,7 @@ public class MultipartParser {
                         //ok, we have our data
                         subState = 0;
                         state = 1;
-                        headers = new Headers();
+                        headers = new Headers(requestCharset);
                         return;
                     } else if (b == DASH) {
                         subState = -3;
@@ -314,17 +601,62 @@ public class MultipartParser {
                     }
                 }
             }
-            //handle the data we read so far
-            var retBuffer = buffer.duplicate();
-            retBuffer.position(pos);
-            if (subState == 0) {
-                //if we end partially through a boundary we do not handle the data
-                encodingHandler.handle(partHandler, retBuffer);
-            } else if (retBuffer.remaining() > subState && subState > 0) {
-                //we have some data to handle, and the end of the buffer might be a boundary match
-                retBuffer.limit(retBuffer.limit() - subState);
-                encodingHandler.handle(partHandler, retBuffer);
+        }
+
+        /**
+         * Returns the number of boundary bytes held back, if the current position
+         * can be described by a checkpoint. That is the case inside the body of an
+         * identity encoded part which is not a nested multipart body.
+         * @return The number of held back bytes or -1 if a checkpoint is not possible
+         */
+        int checkpointState() {
+            if (state == 3 && subState >= 0 && encodingHandler == null && child == null) {
+                return subState;
             }
+            return -1;
+        }
+
+        /**
+         * Sets the header and part limits of the request, the parsers of the nested
+         * multipart bodies use the same instance.
+         * @param limits The limits
+         */
+        void setLimits(Limits limits) {
+            this.limits = limits;
+        }
+
+        /**
+         * Sets the pool of the buffers used by the encodings, the parsers of the
+         * nested multipart bodies use the same instance.
+         * @param bufferPool The pool
+         */
+        void setBufferPool(BufferPool bufferPool) {
+            this.bufferPool = bufferPool;
+        }
+
+        /**
+         * Skips the rest of the current part, the parser only looks for the boundary
+         * and does not pass the body bytes to the encoding or the handler. The bytes
+         * which are being delivered are still passed to the handler, the skipping
+         * starts with the next buffer. The end of the part is still reported. If the
+         * current part is inside a nested multipart body then the nested parser skips it.
+         */
+        void skipPart() {
+            if (child != null) {
+                child.skipPart();
+            } else if (state == 3) {
+                skipping = true;
+            }
+        }
+
+        /**
+         * Makes the current {@link #parse(ByteBuffer)} call return after the current step. The
+         * step which calls the handler may call it more than once, for example a body chunk is
+         * followed by the end of the part if the boundary is in the same buffer. The parsers
+         * of nested multipart bodies are not paused, they finish the bytes passed to them.
+         */
+        void pause() {
+            paused = true;
         }
 
         boolean isComplete() {
@@ -333,16 +665,120 @@ public class MultipartParser {
     }
 
 
+    /**
+     * The limits of the part headers, the number of parts and the nesting depth, shared
+     * by the parsers of a request, including the parsers of the nested multipart bodies.
+     * Together they bound the memory used for the headers and the parts, and the stack
+     * used by the nested parsers. The unlimited values
+     * are stored as the maximum value, so the checks need no extra branch.
+     */
+    static final class Limits {
+
+        private final int maxHeaderLineLength;
+        private final int maxHeadersPerPart;
+        private final long maxHeaderBytes;
+        private final long maxPartCount;
+        private final int maxNestingDepth;
+
+        /**
+         * The number of header bytes parsed so far.
+         */
+        private long headerBytes;
+
+        /**
+         * The number of parts parsed so far.
+         */
+        private long partCount;
+
+        /**
+         * The number of nested multipart bodies currently parsed.
+         */
+        private int depth;
+
+        /**
+         * Creates the limits of a request, a negative value means no limit.
+         * @param maxHeaderLineLength The maximum length of a header line, without the line break
+         * @param maxHeadersPerPart The maximum number of headers of a part
+         * @param maxHeaderBytes The maximum size of all the part headers, including the line breaks
+         * @param maxPartCount The maximum number of parts
+         * @param maxNestingDepth The maximum depth of the nested multipart bodies
+         */
+        Limits(int maxHeaderLineLength, int maxHeadersPerPart, long maxHeaderBytes, long maxPartCount, int maxNestingDepth) {
+            this.maxHeaderLineLength = maxHeaderLineLength < 0 ? Integer.MAX_VALUE : maxHeaderLineLength;
+            this.maxHeadersPerPart = maxHeadersPerPart < 0 ? Integer.MAX_VALUE : maxHeadersPerPart;
+            this.maxHeaderBytes = maxHeaderBytes < 0 ? Long.MAX_VALUE : maxHeaderBytes;
+            this.maxPartCount = maxPartCount < 0 ? Long.MAX_VALUE : maxPartCount;
+            this.maxNestingDepth = maxNestingDepth < 0 ? Integer.MAX_VALUE : maxNestingDepth;
+        }
+
+        private void checkLine(int length) {
+            if (length > maxHeaderLineLength) {
+                throw new HeaderSizeException("The length of the header line (" + length
+                        + ") is greater than the allowed length (" + maxHeaderLineLength + ")!", length, maxHeaderLineLength);
+            }
+        }
+
+        private void addHeaderBytes(int count) {
+            headerBytes += count;
+            if (headerBytes > maxHeaderBytes) {
+                throw new HeaderSizeException("The size of the part headers (" + headerBytes
+                        + ") is greater than the allowed size (" + maxHeaderBytes + ")!", headerBytes, maxHeaderBytes);
+            }
+        }
+
+        private void checkHeaderCount(int count) {
+            if (count > maxHeadersPerPart) {
+                throw new HeaderSizeException("The number of headers in the part (" + count
+                        + ") is greater than the allowed number (" + maxHeadersPerPart + ")!", count, maxHeadersPerPart);
+            }
+        }
+
+        private void addPart() {
+            partCount++;
+            if (partCount > maxPartCount) {
+                throw new PartCountException("The number of parts (" + partCount
+                        + ") is greater than the allowed number (" + maxPartCount + ")!", partCount, maxPartCount);
+            }
+        }
+
+        private void enterMultipart() throws MultipartException {
+            if (depth == maxNestingDepth) {
+                throw new MultipartException("The depth of the nested multipart bodies is greater than the allowed depth ("
+                        + maxNestingDepth + ")!");
+            }
+            depth++;
+        }
+
+        private void exitMultipart() {
+            depth--;
+        }
+    }
+
     interface Encoding {
         void handle(final PartHandler handler, final ByteBuffer rawData) throws IOException;
-    }
 
-    static class IdentityEncoding implements Encoding {
+        /**
+         * Called at the end of the part instead of {@link #finish()} if the rest of
+         * the part was skipped.
+         */
+        default void discard() {
+            // Nothing is held by default
+        }
+
+        /**
+         * Called at the end of the part, after the last bytes were handled.
+         * @throws IOException If the encoded data is incomplete
+         */
+        default void finish() throws IOException {
+            // Nothing is buffered by default
+        }
 
-        @Override
-        public void handle(final PartHandler handler, final ByteBuffer rawData) throws IOException {
-            handler.data(rawData);
-            rawData.clear();
+        /**
+         * Returns the buffer of the encoding to the pool, called after the part has ended.
+         * @param pool The pool
+         */
+        default void release(BufferPool pool) {
+            // Nothing is pooled by default
         }
     }
 
@@ -352,8 +788,13 @@ public class MultipartParser {
 
         private final ByteBuffer buffer;
 
-        Base64Encoding(int size) {
-            buffer = ByteBuffer.allocate(size);
+        Base64Encoding(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void release(BufferPool pool) {
+            pool.release(buffer);
         }
 
         @Override
@@ -371,60 +812,199 @@ public class MultipartParser {
         }
     }
 
+    /**
+     * Decompresses a part with the gzip or deflate content coding. The part size limit
+     * is applied to the decompressed bytes by the handler.
+     */
+    static class InflatingEncoding implements Encoding {
+
+        private final InflatingDecoder decoder;
+
+        private final ByteBuffer buffer;
+
+        InflatingEncoding(InflatingDecoder decoder, ByteBuffer buffer) {
+            this.decoder = decoder;
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void release(BufferPool pool) {
+            pool.release(buffer);
+        }
+
+        @Override
+        public void handle(final PartHandler handler, final ByteBuffer rawData) throws IOException {
+            try {
+                do {
+                    buffer.clear();
+                    decoder.inflate(rawData, buffer);
+                    buffer.flip();
+                    if (buffer.hasRemaining()) {
+                        handler.data(buffer);
+                    }
+                } while (rawData.hasRemaining() || !decoder.needsInput());
+            } catch (IOException | RuntimeException e) {
+                decoder.release();
+                throw e;
+            } finally {
+                buffer.clear();
+            }
+        }
+
+        @Override
+        public void discard() {
+            decoder.release();
+        }
+
+        @Override
+        public void finish() throws IOException {
+            decoder.finish();
+        }
+    }
+
+    /**
+     * Decodes the quoted-printable encoding. The literal runs between the escapes are
+     * copied in bulk, the escapes are decoded with a table. An escape can be split
+     * between two buffers, the state is kept until the next call. Invalid escapes
+     * are passed through unchanged, as recommended by RFC 2045.
+     */
     static class QuotedPrintableEncoding implements Encoding {
 
-        boolean equalsSeen;
-        byte firstCharacter;
+        /**
+         * The value of every possible input byte as a hexadecimal digit, -1 for the other bytes.
+         */
+        private static final int[] HEX_TABLE = new int[256];
+
+        static {
+            Arrays.fill(HEX_TABLE, -1);
+            for (var i = 0; i < 16; i++) {
+                HEX_TABLE[Character.forDigit(i, 16)] = i;
+                HEX_TABLE[Character.toUpperCase(Character.forDigit(i, 16))] = i;
+            }
+        }
+
+        private static final byte EQUALS = 0x3D;
+
+        /**
+         * Outside of an escape.
+         */
+        private static final int LITERAL = 0;
+
+        /**
+         * After the escape character.
+         */
+        private static final int ESCAPE = 1;
+
+        /**
+         * After the first digit of the escape.
+         */
+        private static final int DIGIT = 2;
+
+        /**
+         * After the carriage return of a soft line break, a line feed is dropped.
+         */
+        private static final int SOFT_BREAK = 3;
+
+        private int state;
+
+        private byte firstDigit;
 
         private final ByteBuffer buffer;
 
-        QuotedPrintableEncoding(int size) {
-            buffer = ByteBuffer.allocate(size);
+        QuotedPrintableEncoding(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void release(BufferPool pool) {
+            pool.release(buffer);
         }
 
         @Override
         public void handle(final PartHandler handler, final ByteBuffer rawData) throws IOException {
-            var equalsSeen = this.equalsSeen;
-            var firstCharacter = this.firstCharacter;
+            final var data = rawData.array();
+            final var end = rawData.arrayOffset() + rawData.limit();
+            var pos = rawData.arrayOffset() + rawData.position();
+            var state = this.state;
             buffer.clear();
             try {
-                while (rawData.hasRemaining()) {
-                    var readByte = rawData.get();
-                    if (equalsSeen) {
-                        if (firstCharacter == 0) {
-                            if (readByte == '\n' || readByte == '\r') {
-                                //soft line break
-                                //ignore
-                                equalsSeen = false;
-                            } else {
-                                firstCharacter = readByte;
-                            }
+                while (pos < end) {
+                    if (state == LITERAL) {
+                        var escape = pos;
+                        while (escape < end && data[escape] != EQUALS) {
+                            escape++;
+                        }
+                        write(handler, data, pos, escape - pos);
+                        if (escape == end) {
+                            pos = end;
+                            break;
+                        }
+                        pos = escape + 1;
+                        state = ESCAPE;
+                        continue;
+                    }
+                    final var current = data[pos++];
+                    if (state == ESCAPE) {
+                        if (current == CR) {
+                            //soft line break, the line feed may follow in the next buffer
+                            state = SOFT_BREAK;
+                        } else if (current == LF) {
+                            //soft line break
+                            state = LITERAL;
                         } else {
-                            var result = Character.digit((char) firstCharacter, 16);
-                            result <<= 4; //shift it 4 bytes and then add the next value to the end
-                            result += Character.digit((char) readByte, 16);
-                            buffer.put((byte) result);
-                            equalsSeen = false;
-                            firstCharacter = 0;
+                            firstDigit = current;
+                            state = DIGIT;
+                        }
+                    } else if (state == SOFT_BREAK) {
+                        if (current != LF) {
+                            pos--;
                         }
-                    } else if (readByte == '=') {
-                        equalsSeen = true;
+                        state = LITERAL;
                     } else {
-                        buffer.put(readByte);
-                        if (!buffer.hasRemaining()) {
-                            buffer.flip();
-                            handler.data(buffer);
-                            buffer.clear();
+                        final var high = HEX_TABLE[firstDigit & 0xFF];
+                        final var low = HEX_TABLE[current & 0xFF];
+                        if ((high | low) < 0) {
+                            write(handler, EQUALS);
+                            write(handler, firstDigit);
+                            pos--;
+                        } else {
+                            write(handler, (byte) (high << 4 | low));
                         }
+                        state = LITERAL;
                     }
                 }
+                rawData.position(pos - rawData.arrayOffset());
                 buffer.flip();
                 handler.data(buffer);
             } finally {
                 buffer.clear();
-                this.equalsSeen = equalsSeen;
-                this.firstCharacter = firstCharacter;
+                this.state = state;
+            }
+        }
+
+        private void write(final PartHandler handler, final byte[] data, int offset, int length) throws IOException {
+            while (length > 0) {
+                final var count = Math.min(length, buffer.remaining());
+                buffer.put(data, offset, count);
+                offset += count;
+                length -= count;
+                if (!buffer.hasRemaining()) {
+                    flush(handler);
+                }
             }
         }
+
+        private void write(final PartHandler handler, final byte value) throws IOException {
+            buffer.put(value);
+            if (!buffer.hasRemaining()) {
+                flush(handler);
+            }
+        }
+
+        private void flush(final PartHandler handler) throws IOException {
+            buffer.flip();
+            handler.data(buffer);
+            buffer.clear();
+        }
     }
 }
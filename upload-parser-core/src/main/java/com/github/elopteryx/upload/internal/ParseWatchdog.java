@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.elopteryx.upload.internal;
+
+import com.github.elopteryx.upload.errors.UploadTimeoutException;
+
+import java.time.Duration;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Enforces the deadline and the idle timeout of a blocking parse running on an executor.
+ * A shared daemon thread checks the limits when they are due. If one of them is exceeded
+ * then the parse thread is interrupted and the request stream is closed, which unblocks the
+ * pending read in the usual containers. The parse thread reports the timeout itself, so
+ * the callbacks are still called from a single thread.
+ *
+ * <p>The parse thread and the checker race for the outcome through a single atomic state,
+ * there are no locks, a virtual thread running the parse is never pinned.</p>
+ */
+final class ParseWatchdog implements Runnable {
+
+    /**
+     * The states of the parse.
+     */
+    private static final int PENDING = 0;
+    private static final int RUNNING = 1;
+    private static final int DONE = 2;
+    private static final int TIMING_OUT = 3;
+    private static final int TIMED_OUT = 4;
+
+    /**
+     * The thread which checks the limits of every parse.
+     */
+    private static final ScheduledThreadPoolExecutor SCHEDULER = createScheduler();
+
+    /**
+     * The current state.
+     */
+    private final AtomicInteger state = new AtomicInteger(PENDING);
+    /**
+     * The overall time limit, null if there is none.
+     */
+    private final Duration deadline;
+    /**
+     * The time limit between two reads, null if there is none.
+     */
+    private final Duration idleTimeout;
+    /**
+     * Closes the request stream after a timeout.
+     */
+    private final Runnable abort;
+    /**
+     * The time when the parse was submitted.
+     */
+    private final long start;
+    /**
+     * The time of the last read.
+     */
+    private volatile long lastActivity;
+    /**
+     * The thread running the parse.
+     */
+    private volatile Thread thread;
+    /**
+     * The next check, cancelled when the parse is done so the finished parser is not retained.
+     */
+    private volatile ScheduledFuture<?> check;
+    /**
+     * The exception describing the exceeded limit, published by the state change.
+     */
+    private UploadTimeoutException timeout;
+
+    /**
+     * Creates a new instance and schedules the first check.
+     * @param deadline The overall time limit, can be null
+     * @param idleTimeout The time limit between two reads, can be null
+     * @param abort Called after the parse thread has been interrupted
+     */
+    ParseWatchdog(Duration deadline, Duration idleTimeout, Runnable abort) {
+        this.deadline = deadline;
+        this.idleTimeout = idleTimeout;
+        this.abort = abort;
+        this.start = System.nanoTime();
+        this.lastActivity = start;
+        schedule(start);
+    }
+
+    /**
+     * Called by the parse thread before it starts parsing.
+     * @return False if the parse has already timed out
+     */
+    boolean begin() {
+        thread = Thread.currentThread();
+        if (state.compareAndSet(PENDING, RUNNING)) {
+            return true;
+        }
+        awaitTimeout();
+        return false;
+    }
+
+    /**
+     * Called by the parse thread after every read.
+     */
+    void touch() {
+        if (idleTimeout != null) {
+            lastActivity = System.nanoTime();
+        }
+    }
+
+    /**
+     * Called by the parse thread after the parse has finished, successfully or not.
+     * @return False if the parse timed out in the meantime
+     */
+    boolean finish() {
+        if (state.compareAndSet(RUNNING, DONE)) {
+            check.cancel(false);
+            return true;
+        }
+        awaitTimeout();
+        return false;
+    }
+
+    /**
+     * Returns the exception describing the exceeded limit, valid after
+     * {@link #begin()} or {@link #finish()} returned false.
+     * @return The timeout exception
+     */
+    UploadTimeoutException getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Waits until the checker has interrupted the parse thread, then clears the interrupt
+     * so the thread can be reused by the executor.
+     */
+    private void awaitTimeout() {
+        while (state.get() != TIMED_OUT) {
+            Thread.onSpinWait();
+        }
+        Thread.interrupted();
+    }
+
+    @Override
+    public void run() {
+        final var now = System.nanoTime();
+        final UploadTimeoutException exception;
+        if (deadline != null && now - start >= deadline.toNanos()) {
+            exception = new UploadTimeoutException("The upload did not finish in " + deadline + "!", deadline, false);
+        } else if (idleTimeout != null && now - lastActivity >= idleTimeout.toNanos()) {
+            exception = new UploadTimeoutException("Nothing was read from the upload for " + idleTimeout + "!", idleTimeout, true);
+        } else {
+            schedule(now);
+            return;
+        }
+        while (true) {
+            final var current = state.get();
+            if (current >= DONE) {
+                return;
+            }
+            if (state.compareAndSet(current, TIMING_OUT)) {
+                break;
+            }
+        }
+        timeout = exception;
+        try {
+            final var current = thread;
+            if (current != null) {
+                current.interrupt();
+            }
+            abort.run();
+        } finally {
+            state.set(TIMED_OUT);
+        }
+    }
+
+    /**
+     * Schedules the next check, unless the parse is already done.
+     * @param now The current time
+     */
+    private void schedule(long now) {
+        if (state.get() >= DONE) {
+            return;
+        }
+        check = SCHEDULER.schedule(this, nextCheck(now), TimeUnit.NANOSECONDS);
+        if (state.get() == DONE) {
+            // The parse finished while scheduling, its cancel may have missed this check
+            check.cancel(false);
+        }
+    }
+
+    /**
+     * Returns the delay until the earliest limit is due.
+     * @param now The current time
+     * @return The delay in nanoseconds
+     */
+    private long nextCheck(long now) {
+        var delay = Long.MAX_VALUE;
+        if (deadline != null) {
+            delay = Math.min(delay, start + deadline.toNanos() - now);
+        }
+        if (idleTimeout != null) {
+            delay = Math.min(delay, lastActivity + idleTimeout.toNanos() - now);
+        }
+        return Math.max(delay, 0);
+    }
+
+    private static ScheduledThreadPoolExecutor createScheduler() {
+        final var scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final var thread = new Thread(runnable, "upload-parser-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+import com.github.elopteryx.upload.errors.DigestMismatchException;
+import com.github.elopteryx.upload.errors.MultipartException;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+
+/**
+ * Computes the digests of the current part while its bytes are passed to the output,
+ * so they do not have to be read again after the upload. The configured algorithms
+ * are computed for every part. If the part has a <code>Content-MD5</code> or a
+ * <code>Digest</code> header then the algorithms named there are computed as well
+ * and the results are compared with the header values when the part ends.
+ *
+ * <p>The algorithms can be either {@link MessageDigest} algorithms or one of the
+ * <code>CRC32</code>, <code>CRC32C</code> and <code>Adler32</code> checksums, the
+ * value of a checksum is returned as four bytes in big-endian order. The instances
+ * are reused for the parts of the request.</p>
+ */
+final class PartDigests {
+
+    /**
+     * The digests computed for every part.
+     */
+    private final List<Accumulator> configured = new ArrayList<>();
+
+    /**
+     * The digests created for the headers, reused by the later parts.
+     */
+    private final Map<String, Accumulator> created = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    /**
+     * The digests of the current part.
+     */
+    private final List<Accumulator> active = new ArrayList<>();
+
+    /**
+     * The values sent by the client for the current part, by algorithm.
+     */
+    private final Map<String, byte[]> expected = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    /**
+     * Creates a new instance.
+     * @param algorithms The algorithms computed for every part
+     * @throws IllegalArgumentException If an algorithm is not supported
+     */
+    PartDigests(Collection<String> algorithms) {
+        for (final var algorithm : algorithms) {
+            if (!created.containsKey(algorithm)) {
+                final var accumulator = newAccumulator(algorithm);
+                created.put(algorithm, accumulator);
+                configured.add(accumulator);
+            }
+        }
+    }
+
+    /**
+     * Starts the digests of a new part.
+     * @param headers The headers of the part
+     * @throws MultipartException If a digest header is malformed
+     */
+    void begin(Headers headers) throws MultipartException {
+        active.clear();
+        expected.clear();
+        for (final var accumulator : configured) {
+            accumulator.reset();
+            active.add(accumulator);
+        }
+        final var contentMd5 = headers.getHeader(Headers.CONTENT_MD5);
+        if (contentMd5 != null) {
+            expect("MD5", contentMd5.trim());
+        }
+        final var digest = headers.getHeader(Headers.DIGEST);
+        if (digest != null) {
+            for (final var instance : digest.split(",")) {
+                final var separator = instance.indexOf('=');
+                if (separator == -1) {
+                    throw new MultipartException("Malformed digest header: " + digest);
+                }
+                final var algorithm = headerAlgorithm(instance.substring(0, separator).trim());
+                if (algorithm != null) {
+                    expect(algorithm, instance.substring(separator + 1).trim());
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops computing the digests of the current part, used when only a part
+     * of its bytes will be seen, for example after resuming the upload.
+     */
+    void skip() {
+        active.clear();
+        expected.clear();
+    }
+
+    /**
+     * Adds the given bytes to the digests. The position of the buffer is not changed.
+     * @param buffer The bytes of the current part
+     */
+    void update(ByteBuffer buffer) {
+        final var position = buffer.position();
+        for (final var accumulator : active) {
+            accumulator.update(buffer);
+            buffer.position(position);
+        }
+    }
+
+    /**
+     * Finishes the digests of the current part and checks them against the values
+     * sent by the client.
+     * @return The digests by algorithm, null if they were not computed
+     * @throws DigestMismatchException If a digest is different from the one in the headers
+     */
+    Map<String, byte[]> finish() throws DigestMismatchException {
+        if (active.isEmpty()) {
+            return null;
+        }
+        final Map<String, byte[]> digests = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (final var accumulator : active) {
+            digests.put(accumulator.algorithm, accumulator.finish());
+        }
+        active.clear();
+        for (final var entry : expected.entrySet()) {
+            if (!MessageDigest.isEqual(entry.getValue(), digests.get(entry.getKey()))) {
+                throw new DigestMismatchException("The " + entry.getKey()
+                        + " digest of the part is different from the one sent by the client!", entry.getKey());
+            }
+        }
+        return Collections.unmodifiableMap(digests);
+    }
+
+    private void expect(String algorithm, String value) throws MultipartException {
+        final byte[] decoded;
+        try {
+            decoded = Base64.getDecoder().decode(value);
+        } catch (IllegalArgumentException e) {
+            throw new MultipartException("Malformed " + algorithm + " digest: " + value);
+        }
+        expected.put(algorithm, decoded);
+        var accumulator = created.get(algorithm);
+        if (accumulator == null) {
+            accumulator = newAccumulator(algorithm);
+            created.put(algorithm, accumulator);
+        }
+        if (!active.contains(accumulator)) {
+            accumulator.reset();
+            active.add(accumulator);
+        }
+    }
+
+    /**
+     * Maps the algorithm names of the Digest header to the names used by the runtime.
+     * @param name The name in the header
+     * @return The algorithm or null if it can not be checked
+     */
+    private static String headerAlgorithm(String name) {
+        switch (name.toLowerCase(Locale.ENGLISH)) {
+            case "md5":
+                return "MD5";
+            case "sha":
+                return "SHA-1";
+            case "sha-256":
+                return "SHA-256";
+            case "sha-512":
+                return "SHA-512";
+            case "crc32c":
+                return "CRC32C";
+            default:
+                return null;
+        }
+    }
+
+    private static Accumulator newAccumulator(String algorithm) {
+        switch (algorithm.toUpperCase(Locale.ENGLISH)) {
+            case "CRC32":
+                return new ChecksumAccumulator(algorithm, new CRC32());
+            case "CRC32C":
+                return new ChecksumAccumulator(algorithm, new CRC32C());
+            case "ADLER32":
+                return new ChecksumAccumulator(algorithm, new Adler32());
+            default:
+                try {
+                    return new DigestAccumulator(algorithm, MessageDigest.getInstance(algorithm));
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IllegalArgumentException("Unsupported digest algorithm: " + algorithm, e);
+                }
+        }
+    }
+
+    /**
+     * Common interface of the message digests and the checksums.
+     */
+    private abstract static class Accumulator {
+
+        final String algorithm;
+
+        Accumulator(String algorithm) {
+            this.algorithm = algorithm;
+        }
+
+        abstract void update(ByteBuffer buffer);
+
+        abstract byte[] finish();
+
+        abstract void reset();
+    }
+
+    private static final class DigestAccumulator extends Accumulator {
+
+        private final MessageDigest digest;
+
+        DigestAccumulator(String algorithm, MessageDigest digest) {
+            super(algorithm);
+            this.digest = digest;
+        }
+
+        @Override
+        void update(ByteBuffer buffer) {
+            digest.update(buffer);
+        }
+
+        @Override
+        byte[] finish() {
+            return digest.digest();
+        }
+
+        @Override
+        void reset() {
+            digest.reset();
+        }
+    }
+
+    private static final class ChecksumAccumulator extends Accumulator {
+
+        private final Checksum checksum;
+
+        ChecksumAccumulator(String algorithm, Checksum checksum) {
+            super(algorithm);
+            this.checksum = checksum;
+        }
+
+        @Override
+        void update(ByteBuffer buffer) {
+            checksum.update(buffer);
+        }
+
+        @Override
+        byte[] finish() {
+            final var value = checksum.getValue();
+            return new byte[] {(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+        }
+
+        @Override
+        void reset() {
+            checksum.reset();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+import com.github.elopteryx.upload.PartStream;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Resolves the maximum size of a part from its field name and its declared content
+ * type. The limit is resolved once when the part begins, the parser compares the
+ * part size with it afterwards. A limit of the field name takes precedence over a
+ * limit of the content type, which takes precedence over the limit of the subtype
+ * wildcard, for example <code>video/*</code>. The parts without a matching entry
+ * use the default limit.
+ */
+final class PartLimits {
+
+    /**
+     * The value used if there is no limit.
+     */
+    static final long UNLIMITED = Long.MAX_VALUE;
+
+    /**
+     * The limits by field name.
+     */
+    private final Map<String, Long> fields;
+
+    /**
+     * The limits by lower case media type, without the parameters.
+     */
+    private final Map<String, Long> contentTypes;
+
+    /**
+     * Creates a new instance.
+     * @param fields The limits by field name
+     * @param contentTypes The limits by media type, can contain subtype wildcards
+     */
+    PartLimits(Map<String, Long> fields, Map<String, Long> contentTypes) {
+        this.fields = new HashMap<>(fields);
+        this.contentTypes = new HashMap<>();
+        contentTypes.forEach((type, limit) -> this.contentTypes.put(type.trim().toLowerCase(Locale.ENGLISH), limit));
+    }
+
+    /**
+     * Returns the limit of the given part.
+     * @param part The part which begins
+     * @param defaultLimit The limit if there is no matching entry, negative if there is none
+     * @return The maximum size of the part, {@link #UNLIMITED} if there is none
+     */
+    long resolve(PartStream part, long defaultLimit) {
+        var limit = part.getName() == null ? null : fields.get(part.getName());
+        if (limit == null && !contentTypes.isEmpty() && part.getContentType() != null) {
+            final var contentType = mediaType(part.getContentType());
+            limit = contentTypes.get(contentType);
+            final var slash = contentType.indexOf('/');
+            if (limit == null && slash > 0) {
+                limit = contentTypes.get(contentType.substring(0, slash + 1) + '*');
+            }
+        }
+        final long resolved = limit == null ? defaultLimit : limit;
+        return resolved < 0 ? UNLIMITED : resolved;
+    }
+
+    /**
+     * Returns the media type of a content type header value.
+     * @param contentType The header value
+     * @return The lower case type and subtype
+     */
+    private static String mediaType(String contentType) {
+        final var semicolon = contentType.indexOf(';');
+        final var type = semicolon == -1 ? contentType : contentType.substring(0, semicolon);
+        return type.trim().toLowerCase(Locale.ENGLISH);
+    }
+}
@@ -20,16 +20,13 @@ import com.github.elopteryx.upload.PartOutput;
 import com.github.elopteryx.upload.PartStream;
 
 import java.util.Collection;
+import java.util.Map;
 
 /**
  * Default implementation of {@link PartStream}.
  */
 public class PartStreamImpl implements PartStream {
 
-    /**
-     * The content type of the part.
-     */
-    private final String contentType;
     /**
      * The file name of the part.
      */
@@ -42,6 +39,14 @@ public class PartStreamImpl implements PartStream {
      * Whether the part is a file field.
      */
     private final boolean fileField;
+    /**
+     * The parsed Content-Disposition header.
+     */
+    private final ContentDisposition contentDisposition;
+    /**
+     * The enclosing multipart part, if this part is nested.
+     */
+    private final PartStreamImpl parent;
     /**
      * The headers, if any.
      */
@@ -55,6 +60,10 @@ public class PartStreamImpl implements PartStream {
      * completely uploaded.
      */
     private boolean finished;
+    /**
+     * The digests of the part by algorithm, set after the part ended.
+     */
+    private Map<String, byte[]> digests;
     /**
      * The output object supplied by the caller. Not used here, but for
      * the Jax-Rs module it has to be made available.
@@ -68,16 +77,37 @@ public class PartStreamImpl implements PartStream {
      * @param headers The object containing the headers
      */
     public PartStreamImpl(String fileName, String fieldName, Headers headers) {
-        this.fileName = fileName;
-        this.fieldName = fieldName;
-        this.contentType = headers.getHeader(Headers.CONTENT_TYPE);
+        this(new ContentDisposition("form-data", fieldName, fileName, null), headers);
+    }
+
+    /**
+     * Creates a new instance from the parsed Content-Disposition header.
+     * @param contentDisposition The parsed header
+     * @param headers The object containing the headers
+     */
+    public PartStreamImpl(ContentDisposition contentDisposition, Headers headers) {
+        this(contentDisposition, headers, null);
+    }
+
+    /**
+     * Creates a new instance for a part inside a nested multipart body. Nested parts
+     * usually have no field name of their own, they inherit the name of the parent.
+     * @param contentDisposition The parsed header
+     * @param headers The object containing the headers
+     * @param parent The enclosing part or null
+     */
+    PartStreamImpl(ContentDisposition contentDisposition, Headers headers, PartStreamImpl parent) {
+        this.contentDisposition = contentDisposition;
+        this.fileName = contentDisposition.getFileName();
+        this.fieldName = contentDisposition.getName() == null && parent != null ? parent.getName() : contentDisposition.getName();
         this.fileField = fileName != null;
         this.headers = headers;
+        this.parent = parent;
     }
 
     @Override
     public String getContentType() {
-        return contentType;
+        return headers.getHeader(Headers.CONTENT_TYPE);
     }
 
     @Override
@@ -105,6 +135,17 @@ public class PartStreamImpl implements PartStream {
         return finished;
     }
 
+    @Override
+    public byte[] getDigest(String algorithm) {
+        final var digest = digests == null ? null : digests.get(algorithm);
+        return digest == null ? null : digest.clone();
+    }
+
+    @Override
+    public PartStreamImpl getParent() {
+        return parent;
+    }
+
     @Override
     public String getHeader(String name) {
         return headers.getHeader(name);
@@ -120,6 +161,10 @@ public class PartStreamImpl implements PartStream {
         return headers.getHeaders(name);
     }
 
+    public ContentDisposition getContentDisposition() {
+        return contentDisposition;
+    }
+
     public Headers getHeadersObject() {
         return headers;
     }
@@ -128,6 +173,14 @@ public class PartStreamImpl implements PartStream {
         this.size = size;
     }
 
+    public Map<String, byte[]> getDigests() {
+        return digests;
+    }
+
+    protected void setDigests(Map<String, byte[]> digests) {
+        this.digests = digests;
+    }
+
     void markAsFinished() {
         this.finished = true;
     }
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.elopteryx.upload.internal;
+
+import static java.util.Objects.requireNonNull;
+
+import com.github.elopteryx.upload.PartPublisher;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Default implementation of {@link PartPublisher}. The part information is taken from the
+ * wrapped part, the body is emitted by the drain loop of the {@link AsyncPartPublisher},
+ * this class only keeps track of the subscriber and its demand.
+ */
+class PublishedPart extends ForwardingPartStream implements PartPublisher, Flow.Subscription {
+
+    /**
+     * The publisher of the request, which emits the body.
+     */
+    private final AsyncPartPublisher publisher;
+    /**
+     * Whether the body has been subscribed to.
+     */
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+    /**
+     * Whether a terminal signal has been sent to the subscriber.
+     */
+    private final AtomicBoolean terminated = new AtomicBoolean();
+    /**
+     * The number of buffers requested by the subscriber.
+     */
+    private final AtomicLong demand = new AtomicLong();
+    /**
+     * The subscriber of the body, set after its onSubscribe method returned.
+     */
+    private volatile Flow.Subscriber<? super ByteBuffer> subscriber;
+    /**
+     * Whether the subscriber cancelled the body.
+     */
+    private volatile boolean cancelled;
+    /**
+     * The error of the upload, kept for a late subscriber.
+     */
+    private volatile Throwable failure;
+    /**
+     * The error caused by the subscriber, signalled by the drain loop.
+     */
+    private volatile Throwable error;
+
+    PublishedPart(PartStreamImpl part, AsyncPartPublisher publisher) {
+        super(part);
+        this.publisher = publisher;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        requireNonNull(subscriber);
+        if (!subscribed.compareAndSet(false, true)) {
+            AsyncPartPublisher.reject(subscriber, "The body of the part allows only one subscriber!");
+            return;
+        }
+        subscriber.onSubscribe(this);
+        this.subscriber = subscriber;
+        final var error = failure;
+        if (error != null && terminated.compareAndSet(false, true)) {
+            subscriber.onError(error);
+        } else {
+            publisher.drain();
+        }
+    }
+
+    @Override
+    public void request(long count) {
+        if (count <= 0) {
+            error = new IllegalArgumentException("The requested amount must be positive, got " + count + "!");
+            cancelled = true;
+        } else {
+            AsyncPartPublisher.addDemand(demand, count);
+        }
+        publisher.drain();
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+        publisher.drain();
+    }
+
+    /**
+     * Returns whether the next bytes of the body can be read.
+     * @return True if the subscriber requested more or the body is skipped
+     */
+    boolean hasDemand() {
+        return cancelled || demand.get() > 0;
+    }
+
+    /**
+     * Returns whether the bytes of the body are skipped.
+     * @return True if the subscriber cancelled the body
+     */
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Emits the given bytes if they were requested. Called only from the drain loop.
+     * @param buffer The bytes of the body
+     * @return Whether the buffer was consumed, either emitted or skipped
+     */
+    boolean emit(ByteBuffer buffer) {
+        if (error != null) {
+            return signalError();
+        }
+        if (cancelled) {
+            return true;
+        }
+        final var current = subscriber;
+        if (current == null || demand.get() == 0) {
+            return false;
+        }
+        AsyncPartPublisher.consumeDemand(demand);
+        current.onNext(buffer);
+        return true;
+    }
+
+    /**
+     * Completes the body. Called only from the drain loop.
+     * @return Whether the body could be completed, false if there is no subscriber yet
+     */
+    boolean complete() {
+        if (error != null) {
+            return signalError();
+        }
+        if (cancelled) {
+            return true;
+        }
+        final var current = subscriber;
+        if (current == null) {
+            return false;
+        }
+        if (terminated.compareAndSet(false, true)) {
+            current.onComplete();
+        }
+        return true;
+    }
+
+    /**
+     * Signals the error caused by the subscriber. Called only from the drain loop.
+     * @return Whether the error could be signalled, false if there is no subscriber yet
+     */
+    private boolean signalError() {
+        final var current = subscriber;
+        if (current == null) {
+            return false;
+        }
+        if (terminated.compareAndSet(false, true)) {
+            current.onError(error);
+        }
+        return true;
+    }
+
+    /**
+     * Signals the error to the subscriber, or stores it until there is one.
+     * @param throwable The error of the upload
+     */
+    void fail(Throwable throwable) {
+        failure = throwable;
+        final var current = subscriber;
+        if (current != null && terminated.compareAndSet(false, true)) {
+            current.onError(throwable);
+        }
+    }
+}
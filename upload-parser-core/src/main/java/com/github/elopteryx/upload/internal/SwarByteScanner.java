@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.elopteryx.upload.internal;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Portable candidate search which compares eight bytes at a time. The array is
+ * read as little-endian longs and every byte of a word is compared with the searched
+ * byte using the usual bit tricks, the position of the first equal byte is then given
+ * by the number of trailing zero bits. This does not depend on the Vector API, only
+ * on the JIT turning the view reads into plain loads.
+ */
+final class SwarByteScanner implements ByteScanner {
+
+    /**
+     * Reads the byte array as longs, the byte with the lowest index is the lowest byte of the word.
+     */
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * The lowest bit of every byte.
+     */
+    private static final long LOW_BITS = 0x0101010101010101L;
+
+    /**
+     * The highest bit of every byte.
+     */
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    @Override
+    public int indexOf(byte[] data, int from, int to, byte first, byte last, int distance) {
+        final var firstPattern = (first & 0xFFL) * LOW_BITS;
+        final var lastPattern = (last & 0xFFL) * LOW_BITS;
+        var pos = from;
+        for (; pos <= to - Long.BYTES; pos += Long.BYTES) {
+            // A byte is zero only where both the first and the last byte are in place
+            final var word = ((long) LONGS.get(data, pos) ^ firstPattern)
+                    | ((long) LONGS.get(data, pos + distance) ^ lastPattern);
+            final var found = zeroBytes(word);
+            if (found != 0) {
+                return pos + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; pos < to; pos++) {
+            if (data[pos] == first && data[pos + distance] == last) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Marks the zero bytes of the word by setting their highest bit. The borrow
+     * can mark a 0x01 byte above a zero byte as well, but never below one, so the
+     * lowest marked byte is always correct.
+     * @param word The word to check
+     * @return The markers or zero if the word has no zero byte
+     */
+    static long zeroBytes(long word) {
+        return (word - LOW_BITS) & ~word & HIGH_BITS;
+    }
+}
@@ -59,7 +59,11 @@ public class UploadContextImpl implements UploadContext {
     /**
      * The total number for the bytes read for the current part.
      */
-    private int partBytesRead;
+    private long partBytesRead;
+    /**
+     * The token of the checkpoints, null if they are disabled.
+     */
+    private String checkpointToken;
 
     public UploadContextImpl(HttpServletRequest request, Object userObject) {
         this.request = request;
@@ -91,6 +95,15 @@ public class UploadContextImpl implements UploadContext {
         return Collections.unmodifiableList(partStreams);
     }
 
+    @Override
+    public String getCheckpointToken() {
+        return checkpointToken;
+    }
+
+    void setCheckpointToken(String checkpointToken) {
+        this.checkpointToken = checkpointToken;
+    }
+
     void reset(PartStreamImpl newPart) {
         buffering = true;
         partBytesRead = 0;
@@ -116,11 +129,15 @@ public class UploadContextImpl implements UploadContext {
         currentPart.setSize(partBytesRead);
     }
 
-    int getPartBytesRead() {
+    void setPartBytesRead(long partBytesRead) {
+        this.partBytesRead = partBytesRead;
+    }
+
+    long getPartBytesRead() {
         return partBytesRead;
     }
 
-    int incrementAndGetPartBytesRead(int additional) {
+    long incrementAndGetPartBytesRead(int additional) {
         partBytesRead += additional;
         return partBytesRead;
     }
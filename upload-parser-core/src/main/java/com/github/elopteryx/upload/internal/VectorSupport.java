@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+/**
+ * Provides the candidate search which uses the Vector API. This class is
+ * replaced in the multi-release jar for Java 17 and later, for older
+ * runtimes the vector implementation is not available.
+ */
+final class VectorSupport {
+
+    private VectorSupport() {
+        // No need to instantiate
+    }
+
+    /**
+     * Returns the vector based scanner if the runtime supports it.
+     * @return The scanner or null if not supported
+     */
+    static ByteScanner scanner() {
+        return null;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.elopteryx.upload.internal;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A channel which collects the bytes into pooled buffers and passes the filled buffers
+ * to the writers of the device. The failures of the writers are thrown by the next call.
+ * Closing the channel waits until every byte has been written, so the file is complete
+ * when the part end callback is called. The waiting uses a lock instead of a monitor,
+ * a waiting virtual thread is not pinned.
+ */
+class WriteBehindChannel implements WritableByteChannel {
+
+    private final DiskWriterPoolImpl pool;
+    private final DiskWriterPoolImpl.Device device;
+    final FileChannel channel;
+
+    /**
+     * The file position of the first byte in the current buffer.
+     */
+    private long position;
+
+    /**
+     * The buffer being filled, null if there is none.
+     */
+    private ByteBuffer current;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition idle = lock.newCondition();
+
+    /**
+     * The number of queued writes, guarded by the lock.
+     */
+    private int pending;
+
+    /**
+     * The first failure of the writers, guarded by the lock.
+     */
+    private IOException failure;
+
+    private boolean open = true;
+
+    WriteBehindChannel(DiskWriterPoolImpl pool, DiskWriterPoolImpl.Device device, FileChannel channel, long position) {
+        this.pool = pool;
+        this.device = device;
+        this.channel = channel;
+        this.position = position;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+        checkFailure();
+        final var count = src.remaining();
+        while (src.hasRemaining()) {
+            if (current == null) {
+                current = pool.acquire();
+            }
+            final var length = Math.min(current.remaining(), src.remaining());
+            final var slice = src.duplicate();
+            slice.limit(slice.position() + length);
+            current.put(slice);
+            src.position(src.position() + length);
+            if (!current.hasRemaining()) {
+                submit();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Queues the current buffer and waits until every queued write has finished.
+     * @throws IOException If a write failed
+     */
+    void flush() throws IOException {
+        if (current != null && current.position() > 0) {
+            submit();
+        }
+        lock.lock();
+        try {
+            while (pending > 0) {
+                idle.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the disk writers!");
+        } finally {
+            lock.unlock();
+        }
+        checkFailure();
+    }
+
+    private void submit() throws IOException {
+        final var buffer = current;
+        buffer.flip();
+        final var write = new DiskWriterPoolImpl.Write(this, buffer, position);
+        position += buffer.remaining();
+        current = null;
+        lock.lock();
+        try {
+            pending++;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            device.submit(write);
+        } catch (IOException e) {
+            // The write was not queued, nobody else finishes it
+            pool.release(buffer);
+            written(null);
+            throw e;
+        }
+    }
+
+    /**
+     * Called by the writer after a queued write has finished.
+     * @param exception The failure of the write or null
+     */
+    void written(IOException exception) {
+        lock.lock();
+        try {
+            if (exception != null && failure == null) {
+                failure = exception;
+            }
+            if (--pending == 0) {
+                idle.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        lock.lock();
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the channel without waiting for the queued writes, called if the parsing
+     * of the part failed. The queued writes fail because the file is closed.
+     */
+    void abandon() {
+        open = false;
+        if (current != null) {
+            pool.release(current);
+            current = null;
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // The part has failed already
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+        try {
+            flush();
+        } finally {
+            if (current != null) {
+                pool.release(current);
+                current = null;
+            }
+            channel.close();
+        }
+    }
+}
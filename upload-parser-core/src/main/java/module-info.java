@@ -2,7 +2,7 @@
  * Async file upload library for servlets.
  */
 module com.github.elopteryx.upload {
-    requires javax.servlet.api;
+    requires static javax.servlet.api;
     exports com.github.elopteryx.upload;
     exports com.github.elopteryx.upload.errors;
     exports com.github.elopteryx.upload.util;
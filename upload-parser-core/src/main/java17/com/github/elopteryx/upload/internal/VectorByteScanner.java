@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Candidate search using the Vector API. Compares as many bytes at once as
+ * the preferred vector species allows, which is 32 bytes with AVX2 and 64 bytes
+ * with AVX-512.
+ */
+final class VectorByteScanner implements ByteScanner {
+
+    /**
+     * The widest species supported by the platform.
+     */
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    @Override
+    public int indexOf(byte[] data, int from, int to, byte first, byte last, int distance) {
+        var pos = from;
+        final var bound = from + SPECIES.loopBound(to - from);
+        for (; pos < bound; pos += SPECIES.length()) {
+            var mask = ByteVector.fromArray(SPECIES, data, pos).eq(first)
+                    .and(ByteVector.fromArray(SPECIES, data, pos + distance).eq(last));
+            if (mask.anyTrue()) {
+                return pos + mask.firstTrue();
+            }
+        }
+        for (; pos < to; pos++) {
+            if (data[pos] == first && data[pos + distance] == last) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+}
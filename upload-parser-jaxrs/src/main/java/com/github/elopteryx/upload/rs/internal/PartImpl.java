@@ -28,6 +28,7 @@ class PartImpl extends PartStreamImpl implements Part {
     PartImpl(PartStreamImpl partStream) {
         super(partStream.getSubmittedFileName(), partStream.getName(), partStream.getHeadersObject());
         this.output = partStream.getOutput();
+        setDigests(partStream.getDigests());
     }
 
     @Override
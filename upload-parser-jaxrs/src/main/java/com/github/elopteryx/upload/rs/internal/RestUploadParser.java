@@ -21,14 +21,11 @@ import static java.nio.charset.StandardCharsets.ISO_8859_1;
 import com.github.elopteryx.upload.errors.RequestSizeException;
 import com.github.elopteryx.upload.internal.BlockingUploadParser;
 import com.github.elopteryx.upload.internal.Headers;
-import com.github.elopteryx.upload.internal.MultipartParser;
 import com.github.elopteryx.upload.internal.PartStreamImpl;
-import com.github.elopteryx.upload.internal.UploadContextImpl;
 import com.github.elopteryx.upload.rs.Part;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -51,15 +48,19 @@ public class RestUploadParser extends BlockingUploadParser {
     /**
      * Initializes the parser from the given parameters and performs
      * a blocking parse.
+     * The gzip and deflate content codings are decompressed, the size limits are applied
+     * to the decompressed bytes. The charset of the part headers is taken from the
+     * content type.
      * @param contentLength The length of the request
      * @param mimeType The content type of the request
-     * @param encoding The character encoding of the request
+     * @param encoding The content coding of the request, the value of the Content-Encoding header
      * @param stream The request stream
      * @return The multipart object, representing the request
      * @throws IOException If an error occurred with the I/O
      */
     public MultiPartImpl doBlockingParse(long contentLength, String mimeType, String encoding, InputStream stream) throws IOException {
-        if (maxRequestSize > -1) {
+        // The length of a compressed request says nothing about the decompressed size
+        if (maxRequestSize > -1 && !isCompressed(encoding)) {
             if (contentLength > maxRequestSize) {
                 throw new RequestSizeException("The size of the request ("
                         + contentLength
@@ -68,10 +69,15 @@ public class RestUploadParser extends BlockingUploadParser {
             }
         }
 
-        checkBuffer = ByteBuffer.allocate(sizeThreshold);
-        context = new UploadContextImpl(null, null);
-        dataBuffer = ByteBuffer.allocate(maxBytesUsed / 2);
+        prepare(null);
+        try {
+            return parse(mimeType, encoding, stream);
+        } finally {
+            releaseBuffers();
+        }
+    }
 
+    private MultiPartImpl parse(String mimeType, String encoding, InputStream stream) throws IOException {
         String boundary;
         if (mimeType != null && mimeType.startsWith(MULTIPART_FORM_DATA)) {
             boundary = Headers.extractBoundaryFromHeader(mimeType);
@@ -80,10 +86,12 @@ public class RestUploadParser extends BlockingUploadParser {
                         + mimeType
                         + ", multipart data will not be available");
             }
-            var charset = encoding != null ? Charset.forName(encoding) : ISO_8859_1;
-            parseState = MultipartParser.beginParse(this, boundary.getBytes(), maxBytesUsed, charset);
+            var charsetName = Headers.extractQuotedValueFromHeader(mimeType, "charset");
+            var charset = charsetName != null ? Charset.forName(charsetName) : ISO_8859_1;
+            setContentEncoding(encoding);
+            start(boundary.getBytes(), charset);
 
-            inputStream = stream;
+            inputStream = decodeContent(stream);
         }
         blockingRead();
         List<Part> parts = context.getPartStreams()
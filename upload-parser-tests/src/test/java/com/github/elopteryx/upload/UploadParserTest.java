@@ -44,7 +44,12 @@ public class UploadParserTest implements OnPartBegin, OnPartEnd, OnRequestComple
                 () -> assertThrows(IllegalArgumentException.class, () -> UploadParser.newParser().sizeThreshold(-1)),
                 () -> assertThrows(IllegalArgumentException.class, () -> UploadParser.newParser().maxPartSize(-1)),
                 () -> assertThrows(IllegalArgumentException.class, () -> UploadParser.newParser().maxRequestSize(-1)),
-                () -> assertThrows(IllegalArgumentException.class, () -> UploadParser.newParser().maxBytesUsed(-1))
+                () -> assertThrows(IllegalArgumentException.class, () -> UploadParser.newParser().maxBytesUsed(-1)),
+                () -> assertThrows(IllegalArgumentException.class, () -> UploadParser.newParser().maxHeaderLineLength(-1)),
+                () -> assertThrows(IllegalArgumentException.class, () -> UploadParser.newParser().maxHeadersPerPart(-1)),
+                () -> assertThrows(IllegalArgumentException.class, () -> UploadParser.newParser().maxHeaderSize(-1)),
+                () -> assertThrows(IllegalArgumentException.class, () -> UploadParser.newParser().maxPartCount(-1)),
+                () -> assertThrows(IllegalArgumentException.class, () -> UploadParser.newParser().maxNestingDepth(-1))
         );
     }
 
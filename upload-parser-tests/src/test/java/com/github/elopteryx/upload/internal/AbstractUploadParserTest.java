@@ -65,5 +65,14 @@ class AbstractUploadParserTest {
         assertEquals(exception.getPermittedSize(), smallSize);
         assertTrue(exception.getActualSize() > smallSize);
     }
-    
+
+    @Test
+    void part_size_is_counted_beyond_the_int_range() throws Exception {
+        var parser = runSetupForSize(0, -1, 3L * Integer.MAX_VALUE - 1);
+        parser.checkPartSize(Integer.MAX_VALUE);
+        parser.checkPartSize(Integer.MAX_VALUE);
+        assertEquals(2L * Integer.MAX_VALUE, parser.context.getPartBytesRead());
+        final var exception = assertThrows(PartSizeException.class, () -> parser.checkPartSize(Integer.MAX_VALUE));
+        assertEquals(3L * Integer.MAX_VALUE, exception.getActualSize());
+    }
 }
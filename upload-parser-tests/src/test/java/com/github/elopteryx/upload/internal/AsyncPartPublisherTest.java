@@ -0,0 +1,226 @@
+package com.github.elopteryx.upload.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import com.github.elopteryx.upload.PartPublisher;
+import com.github.elopteryx.upload.UploadParser;
+import com.github.elopteryx.upload.errors.MultipartException;
+import com.github.elopteryx.upload.errors.PartSizeException;
+import com.github.elopteryx.upload.util.MockServletInputStream;
+import com.github.elopteryx.upload.util.Servlets;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.servlet.http.HttpServletRequest;
+
+class AsyncPartPublisherTest {
+
+    private static final String BODY = "--x\r\n"
+            + "Content-Disposition: form-data; name=\"file\"; filename=\"file.txt\"\r\n"
+            + "\r\n"
+            + "file content\r\n"
+            + "--x\r\n"
+            + "Content-Disposition: form-data; name=\"field\"\r\n"
+            + "\r\n"
+            + "value\r\n"
+            + "--x--\r\n";
+
+    private int reads;
+
+    private MockServletInputStream inputStream;
+
+    private HttpServletRequest request(String body) throws Exception {
+        var request = Servlets.newRequest();
+        inputStream = new MockServletInputStream(body) {
+            @Override
+            public int read(byte[] bytes) throws IOException {
+                reads++;
+                return super.read(bytes);
+            }
+        };
+        when(request.getInputStream()).thenReturn(inputStream);
+        when(request.getContentType()).thenReturn("multipart/form-data; boundary=x");
+        when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn("multipart/form-data; boundary=x");
+        return request;
+    }
+
+    @Test
+    void parts_are_read_on_demand() throws Exception {
+        var publisher = UploadParser.newParser().publish(request(BODY));
+        var subscriber = new PartSubscriber();
+        publisher.subscribe(subscriber);
+        inputStream.onDataAvailable();
+        assertEquals(0, reads);
+        assertTrue(subscriber.bodies.isEmpty());
+
+        subscriber.subscription.request(1);
+        assertEquals(1, reads);
+        assertEquals(List.of("file"), new ArrayList<>(subscriber.bodies.keySet()));
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertTrue(subscriber.completed);
+        assertNull(subscriber.error);
+        assertEquals("file content", subscriber.bodies.get("file").toString());
+        assertEquals("value", subscriber.bodies.get("field").toString());
+    }
+
+    @Test
+    void malformed_body_is_signalled() throws Exception {
+        var publisher = UploadParser.newParser().publish(request(BODY.substring(0, 60)));
+        var subscriber = new PartSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertTrue(subscriber.error instanceof MultipartException);
+    }
+
+    @Test
+    void part_size_limit_is_signalled() throws Exception {
+        var publisher = UploadParser.newParser().maxPartSize(4).publish(request(BODY));
+        var subscriber = new PartSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertTrue(subscriber.error instanceof PartSizeException);
+        // The whole body was read at once, the part failed before it could be emitted
+        assertTrue(subscriber.bodies.isEmpty());
+    }
+
+    @Test
+    void failed_publish_returns_the_buffers() throws Exception {
+        var pool = new BufferPoolImpl(1, 4);
+        var publisher = UploadParser.newParser().maxBytesUsed(64).maxPartSize(4).bufferPool(pool).publish(request(BODY));
+        var subscriber = new PartSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertTrue(subscriber.error instanceof PartSizeException);
+        pool.acquire(32);
+        assertEquals(1, pool.getHits());
+    }
+
+    @Test
+    void invalid_body_request_is_signalled_after_on_next() throws Exception {
+        var publisher = UploadParser.newParser().publish(request(BODY));
+        var signals = new ArrayList<String>();
+        var completed = new AtomicBoolean();
+        publisher.subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(PartPublisher part) {
+                part.subscribe(new Flow.Subscriber<>() {
+                    private Flow.Subscription subscription;
+
+                    @Override
+                    public void onSubscribe(Flow.Subscription subscription) {
+                        this.subscription = subscription;
+                        subscription.request(1);
+                    }
+
+                    @Override
+                    public void onNext(ByteBuffer buffer) {
+                        signals.add("next");
+                        subscription.request(0);
+                        signals.add("request");
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                        signals.add(throwable.getClass().getSimpleName());
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        signals.add("complete");
+                    }
+                });
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                signals.add("upload error");
+            }
+
+            @Override
+            public void onComplete() {
+                completed.set(true);
+            }
+        });
+        assertTrue(completed.get());
+        assertEquals(List.of("next", "request", "IllegalArgumentException", "next", "request", "IllegalArgumentException"), signals);
+    }
+
+    @Test
+    void only_one_subscriber_is_allowed() throws Exception {
+        var publisher = UploadParser.newParser().publish(request(BODY));
+        publisher.subscribe(new PartSubscriber());
+        var second = new PartSubscriber();
+        publisher.subscribe(second);
+        assertTrue(second.error instanceof IllegalStateException);
+    }
+
+    /**
+     * Subscribes to every body with unbounded demand and collects the bytes as text.
+     */
+    private static class PartSubscriber implements Flow.Subscriber<PartPublisher> {
+
+        private final Map<String, StringBuilder> bodies = new LinkedHashMap<>();
+        private Flow.Subscription subscription;
+        private Throwable error;
+        private boolean completed;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(PartPublisher part) {
+            var body = new StringBuilder();
+            bodies.put(part.getName(), body);
+            part.subscribe(new Flow.Subscriber<>() {
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    subscription.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(ByteBuffer buffer) {
+                    body.append(StandardCharsets.US_ASCII.decode(buffer));
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    body.append("error");
+                }
+
+                @Override
+                public void onComplete() {
+                    // The body is complete
+                }
+            });
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
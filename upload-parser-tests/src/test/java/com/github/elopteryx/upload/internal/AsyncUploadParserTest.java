@@ -1,16 +1,39 @@
 package com.github.elopteryx.upload.internal;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.when;
 
+import com.github.elopteryx.upload.PartOutput;
 import com.github.elopteryx.upload.UploadParser;
 import com.github.elopteryx.upload.errors.MultipartException;
 import com.github.elopteryx.upload.util.MockServletInputStream;
 import com.github.elopteryx.upload.util.Servlets;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 class AsyncUploadParserTest {
 
+    private static final String BODY = "--x\r\n"
+            + "Content-Disposition: form-data; name=\"file\"; filename=\"file.txt\"\r\n"
+            + "\r\n"
+            + "file content\r\n"
+            + "--x\r\n"
+            + "Content-Disposition: form-data; name=\"field\"\r\n"
+            + "\r\n"
+            + "value\r\n"
+            + "--x--\r\n";
+
     @Test
     void this_should_end_with_multipart_exception() throws Exception {
         var request = Servlets.newRequest();
@@ -41,4 +64,144 @@ class AsyncUploadParserTest {
 
         assertThrows(IllegalArgumentException.class, () -> UploadParser.newParser().setupAsyncParse(request));
     }
+
+    @Test
+    void callbacks_run_on_the_executor_and_pause_the_reading() throws Exception {
+        var request = Servlets.newRequest();
+        var reads = new AtomicInteger();
+        var servletInputStream = new MockServletInputStream(BODY) {
+            @Override
+            public int read(byte[] bytes) throws IOException {
+                reads.incrementAndGet();
+                return super.read(bytes);
+            }
+        };
+        when(request.getInputStream()).thenReturn(servletInputStream);
+        when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn("multipart/form-data; boundary=x");
+
+        var tasks = new ArrayDeque<Runnable>();
+        var outputs = new ArrayList<ByteArrayOutputStream>();
+        var completed = new AtomicBoolean();
+        UploadParser.newParser()
+                .maxBytesUsed(32)
+                .onPartBegin((context, buffer) -> {
+                    var output = new ByteArrayOutputStream();
+                    outputs.add(output);
+                    return PartOutput.from(output);
+                })
+                .onRequestComplete(context -> completed.set(true))
+                .callbackExecutor(tasks::add, 2)
+                .setupAsyncParse(request);
+
+        servletInputStream.onDataAvailable();
+        var readsBeforeCallbacks = reads.get();
+        assertTrue(outputs.isEmpty());
+        assertFalse(tasks.isEmpty());
+
+        // The reading continues on the executor whenever the queue empties
+        while (!tasks.isEmpty()) {
+            tasks.poll().run();
+        }
+        assertTrue(reads.get() > readsBeforeCallbacks);
+        assertTrue(completed.get());
+        assertEquals(2, outputs.size());
+        assertEquals("file content", outputs.get(0).toString(StandardCharsets.US_ASCII));
+        assertEquals("value", outputs.get(1).toString(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void parse_errors_are_passed_to_the_executor() throws Exception {
+        var request = Servlets.newRequest();
+        var servletInputStream = new MockServletInputStream(BODY.substring(0, 40));
+        when(request.getInputStream()).thenReturn(servletInputStream);
+        when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn("multipart/form-data; boundary=x");
+
+        var tasks = new ArrayDeque<Runnable>();
+        var errors = new ArrayList<Throwable>();
+        UploadParser.newParser()
+                .onError((context, throwable) -> errors.add(throwable))
+                .callbackExecutor(tasks::add, 16)
+                .setupAsyncParse(request);
+
+        servletInputStream.onDataAvailable();
+        assertTrue(errors.isEmpty());
+        while (!tasks.isEmpty()) {
+            tasks.poll().run();
+        }
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0) instanceof MultipartException);
+    }
+
+    @Test
+    void failed_callback_releases_the_buffers() throws Exception {
+        var request = Servlets.newRequest();
+        var servletInputStream = new MockServletInputStream(BODY);
+        when(request.getInputStream()).thenReturn(servletInputStream);
+        when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn("multipart/form-data; boundary=x");
+
+        var output = Files.createTempDirectory("async").resolve("file.txt");
+        var buffers = new BufferPoolImpl(1, 4);
+        var writerBuffers = new BufferPoolImpl(1, 4);
+        var tasks = new ArrayDeque<Runnable>();
+        var errors = new ArrayList<Throwable>();
+        try (var pool = UploadParser.newDiskWriterPool(1, 1, writerBuffers)) {
+            UploadParser.newParser()
+                    .maxBytesUsed(64)
+                    .bufferPool(buffers)
+                    .writeBehind(pool)
+                    .onPartBegin((context, buffer) -> {
+                        if (context.getCurrentPart().isFile()) {
+                            return PartOutput.from(output);
+                        }
+                        throw new IllegalStateException("Unexpected part!");
+                    })
+                    .onError((context, throwable) -> errors.add(throwable))
+                    .callbackExecutor(tasks::add, 16)
+                    .setupAsyncParse(request);
+
+            servletInputStream.onDataAvailable();
+            while (!tasks.isEmpty()) {
+                tasks.poll().run();
+            }
+        }
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0) instanceof IllegalStateException);
+        assertEquals("file content", Files.readString(output));
+        buffers.acquire(32);
+        assertEquals(1, buffers.getHits());
+        writerBuffers.acquireDirect(DiskWriterPoolImpl.BUFFER_SIZE);
+        assertEquals(1, writerBuffers.getHits());
+    }
+
+    @Test
+    void compressed_request_is_decompressed() throws Exception {
+        var request = Servlets.newRequest();
+        var servletInputStream = new MockServletInputStream(InflatingDecoderTest.gzip(BODY.getBytes(StandardCharsets.US_ASCII)));
+        when(request.getInputStream()).thenReturn(servletInputStream);
+        when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn("multipart/form-data; boundary=x");
+        when(request.getHeader(Headers.CONTENT_ENCODING)).thenReturn("gzip");
+
+        var tasks = new ArrayDeque<Runnable>();
+        var outputs = new ArrayList<ByteArrayOutputStream>();
+        var completed = new AtomicBoolean();
+        UploadParser.newParser()
+                .maxBytesUsed(32)
+                .onPartBegin((context, buffer) -> {
+                    var output = new ByteArrayOutputStream();
+                    outputs.add(output);
+                    return PartOutput.from(output);
+                })
+                .onRequestComplete(context -> completed.set(true))
+                .callbackExecutor(tasks::add, 2)
+                .setupAsyncParse(request);
+
+        servletInputStream.onDataAvailable();
+        while (!tasks.isEmpty()) {
+            tasks.poll().run();
+        }
+        assertTrue(completed.get());
+        assertEquals(2, outputs.size());
+        assertEquals("file content", outputs.get(0).toString(StandardCharsets.US_ASCII));
+        assertEquals("value", outputs.get(1).toString(StandardCharsets.US_ASCII));
+    }
 }
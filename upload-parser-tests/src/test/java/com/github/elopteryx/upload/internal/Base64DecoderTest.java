@@ -19,6 +19,7 @@
 package com.github.elopteryx.upload.internal;
 
 import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
@@ -27,6 +28,7 @@ import org.junit.jupiter.api.Test;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Random;
 
 /**
  * Copied from Undertow.
@@ -205,6 +207,37 @@ class Base64DecoderTest {
         });
     }
 
+    @Test
+    void block_and_byte_decoding_match() throws IOException {
+        var nums = new byte[10000];
+        new Random(7).nextBytes(nums);
+        var encoded = java.util.Base64.getMimeEncoder().encode(nums);
+        for (var chunk : new int[] {1, 3, 5, 77, 1000}) {
+            for (var direct : new boolean[] {false, true}) {
+                var decoder = new Base64Decoder();
+                var decoded = direct ? ByteBuffer.allocateDirect(nums.length + 3) : ByteBuffer.allocate(nums.length + 3);
+                for (var pos = 0; pos < encoded.length; pos += chunk) {
+                    var source = ByteBuffer.wrap(encoded, pos, Math.min(chunk, encoded.length - pos));
+                    while (source.hasRemaining()) {
+                        decoder.decode(source, decoded);
+                    }
+                }
+                decoded.flip();
+                var bytes = new byte[decoded.remaining()];
+                decoded.get(bytes);
+                assertArrayEquals(nums, bytes);
+            }
+        }
+    }
+
+    @Test
+    void block_decoding_stops_at_invalid_character() {
+        var source = ByteBuffer.wrap("QUJD QUJD!QUJD".getBytes(US_ASCII));
+        var target = ByteBuffer.allocate(100);
+        assertThrows(IOException.class, () -> new Base64Decoder().decode(source, target));
+        assertEquals(6, target.position());
+    }
+
     private static class FlexBase64 {
 
         private static final byte[] ENCODING_TABLE = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(StandardCharsets.US_ASCII);
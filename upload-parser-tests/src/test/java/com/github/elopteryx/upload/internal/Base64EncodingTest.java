@@ -29,7 +29,7 @@ class Base64EncodingTest {
 
     private static void checkEncoding(final String original, String encoded) throws IOException {
 
-        var encoding = new MultipartParser.Base64Encoding(1024);
+        var encoding = new MultipartParser.Base64Encoding(ByteBuffer.allocate(1024));
         encoding.handle(new MultipartParser.PartHandler() {
 
             @Override
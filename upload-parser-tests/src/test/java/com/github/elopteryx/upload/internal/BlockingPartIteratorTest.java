@@ -0,0 +1,114 @@
+package com.github.elopteryx.upload.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import com.github.elopteryx.upload.UploadParser;
+import com.github.elopteryx.upload.errors.MultipartException;
+import com.github.elopteryx.upload.errors.PartSizeException;
+import com.github.elopteryx.upload.util.MockServletInputStream;
+import com.github.elopteryx.upload.util.Servlets;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+import javax.servlet.http.HttpServletRequest;
+
+class BlockingPartIteratorTest {
+
+    private static final String BODY = "--x\r\n"
+            + "Content-Disposition: form-data; name=\"file\"; filename=\"file.csv\"\r\n"
+            + "Content-Type: text/csv\r\n"
+            + "\r\n"
+            + "id,name\r\n1,first\r\n2,second\r\n"
+            + "\r\n"
+            + "--x\r\n"
+            + "Content-Disposition: form-data; name=\"encoded\"\r\n"
+            + "Content-Transfer-Encoding: base64\r\n"
+            + "\r\n"
+            + "ZW5jb2RlZCB2YWx1ZQ==\r\n"
+            + "--x\r\n"
+            + "Content-Disposition: form-data; name=\"field\"\r\n"
+            + "\r\n"
+            + "value\r\n"
+            + "--x--\r\n";
+
+    private static HttpServletRequest request(String body) throws Exception {
+        var request = Servlets.newRequest();
+        when(request.getInputStream()).thenReturn(new MockServletInputStream(body));
+        when(request.getContentType()).thenReturn("multipart/form-data; boundary=x");
+        when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn("multipart/form-data; boundary=x");
+        return request;
+    }
+
+    private static String read(InputStream stream) throws IOException {
+        return new String(stream.readAllBytes(), StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    void iterate_over_the_parts() throws Exception {
+        for (var maxBytesUsed : new int[] {16, 64, 4096}) {
+            var iterator = UploadParser.newParser().maxBytesUsed(maxBytesUsed).iterate(request(BODY));
+
+            assertTrue(iterator.hasNext());
+            var file = iterator.next();
+            assertEquals("file", file.getName());
+            assertEquals("file.csv", file.getSubmittedFileName());
+            assertEquals("text/csv", file.getContentType());
+            assertEquals("id,name\r\n1,first\r\n2,second\r\n", read(file.openStream()));
+            assertTrue(file.isFinished());
+
+            var encoded = iterator.next();
+            assertEquals("encoded value", read(encoded.openStream()));
+
+            var field = iterator.next();
+            assertEquals('v', field.openStream().read());
+            assertEquals("alue", read(field.openStream()));
+            assertEquals(5, field.getKnownSize());
+
+            assertFalse(iterator.hasNext());
+            assertThrows(NoSuchElementException.class, iterator::next);
+            assertEquals(3, iterator.getContext().getPartStreams().size());
+        }
+    }
+
+    @Test
+    void unread_parts_are_skipped() throws Exception {
+        var iterator = UploadParser.newParser().maxBytesUsed(32).iterate(request(BODY));
+        var file = iterator.next();
+        iterator.next();
+        assertThrows(IOException.class, () -> file.openStream().read());
+        assertEquals("value", read(iterator.next().openStream()));
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    void incomplete_body_is_reported() throws Exception {
+        var iterator = UploadParser.newParser().iterate(request(BODY.substring(0, 100)));
+        var file = iterator.next();
+        assertThrows(MultipartException.class, () -> read(file.openStream()));
+    }
+
+    @Test
+    void part_size_limit_is_applied() throws Exception {
+        var iterator = UploadParser.newParser().maxPartSize(8).iterate(request(BODY));
+        var file = iterator.next();
+        assertThrows(PartSizeException.class, () -> read(file.openStream()));
+    }
+
+    @Test
+    void failed_iteration_returns_the_buffers() throws Exception {
+        var pool = new BufferPoolImpl(1, 4);
+        var iterator = UploadParser.newParser().maxBytesUsed(64).maxPartSize(8).bufferPool(pool).iterate(request(BODY));
+        var file = iterator.next();
+        assertThrows(PartSizeException.class, () -> read(file.openStream()));
+        assertThrows(PartSizeException.class, iterator::hasNext);
+        pool.acquire(32);
+        assertEquals(1, pool.getHits());
+    }
+}
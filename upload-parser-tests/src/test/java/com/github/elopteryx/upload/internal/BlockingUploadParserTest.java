@@ -1,5 +1,11 @@
 package com.github.elopteryx.upload.internal;
 
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.when;
@@ -11,14 +17,24 @@ import com.github.elopteryx.upload.PartOutput;
 import com.github.elopteryx.upload.UploadContext;
 import com.github.elopteryx.upload.UploadParser;
 import com.github.elopteryx.upload.errors.MultipartException;
+import com.github.elopteryx.upload.errors.PartSizeException;
+import com.github.elopteryx.upload.errors.RequestSizeException;
+import com.github.elopteryx.upload.errors.UploadTimeoutException;
+import com.github.elopteryx.upload.util.MockServletInputStream;
 import com.github.elopteryx.upload.util.Servlets;
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class BlockingUploadParserTest implements OnPartBegin, OnPartEnd, OnError {
     
@@ -40,6 +56,142 @@ public class BlockingUploadParserTest implements OnPartBegin, OnPartEnd, OnError
                 .doBlockingParse(request);
     }
 
+    @Test
+    void part_data_callback_receives_every_byte() throws Exception {
+        var request = Servlets.newRequest();
+
+        when(request.isAsyncSupported()).thenReturn(false);
+        when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn("multipart/form-data; boundary=---1234");
+
+        var received = new ArrayList<StringBuilder>();
+        var outputs = new ArrayList<ByteArrayOutputStream>();
+        var context = UploadParser.newParser()
+                .onPartBegin((ctx, buffer) -> {
+                    assertEquals(0, buffer.remaining());
+                    received.add(new StringBuilder());
+                    outputs.add(new ByteArrayOutputStream());
+                    return PartOutput.from(outputs.get(outputs.size() - 1));
+                })
+                .onPartData((ctx, buffer) -> {
+                    assertTrue(buffer.isReadOnly());
+                    while (buffer.hasRemaining()) {
+                        received.get(received.size() - 1).append((char) buffer.get());
+                    }
+                })
+                .sizeThreshold(1024)
+                .doBlockingParse(request);
+
+        assertEquals(4, received.size());
+        assertEquals("This is the content of the file\n", received.get(0).toString());
+        assertEquals("fieldValue", received.get(1).toString());
+        assertEquals(List.of("value1", "value2"), List.of(received.get(2).toString(), received.get(3).toString()));
+        assertEquals(32, context.getPartStreams().get(0).getKnownSize());
+        assertEquals("fieldValue", outputs.get(1).toString());
+    }
+
+    @Test
+    void nested_parts_have_a_parent() throws Exception {
+        var request = Servlets.newRequest();
+        var data = "--outer\r\n"
+                + "Content-Disposition: form-data; name=\"files\"\r\n"
+                + "Content-Type: multipart/mixed; boundary=inner\r\n"
+                + "\r\n"
+                + "--inner\r\n"
+                + "Content-Disposition: file; filename=\"a.txt\"\r\n"
+                + "\r\n"
+                + "first file\r\n"
+                + "--inner\r\n"
+                + "Content-Type: text/plain\r\n"
+                + "\r\n"
+                + "second file\r\n"
+                + "--inner--\r\n"
+                + "--outer--\r\n";
+
+        when(request.isAsyncSupported()).thenReturn(false);
+        when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn("multipart/form-data; boundary=outer");
+        when(request.getInputStream()).thenReturn(new MockServletInputStream(data));
+
+        var context = UploadParser.newParser().doBlockingParse(request);
+
+        var parts = context.getPartStreams();
+        assertEquals(2, parts.size());
+        assertEquals("a.txt", parts.get(0).getSubmittedFileName());
+        assertEquals("files", parts.get(0).getName());
+        assertEquals("files", parts.get(1).getName());
+        assertEquals(10, parts.get(0).getKnownSize());
+        assertEquals(11, parts.get(1).getKnownSize());
+        var parent = parts.get(0).getParent();
+        assertSame(parent, parts.get(1).getParent());
+        assertEquals("multipart/mixed; boundary=inner", parent.getContentType());
+        assertTrue(parent.isFinished());
+        assertNull(parent.getParent());
+    }
+
+    @Test
+    void compressed_request_is_decompressed() throws Exception {
+        var request = Servlets.newRequest();
+        var data = "--x\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"file.txt\"\r\n"
+                + "\r\n"
+                + "file content\r\n"
+                + "--x--\r\n";
+
+        when(request.isAsyncSupported()).thenReturn(false);
+        when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn("multipart/form-data; boundary=x");
+        when(request.getHeader(Headers.CONTENT_ENCODING)).thenReturn("gzip");
+        when(request.getInputStream()).thenReturn(new MockServletInputStream(InflatingDecoderTest.gzip(data.getBytes(US_ASCII))));
+
+        var output = new ByteArrayOutputStream();
+        UploadParser.newParser()
+                .onPartBegin((context, buffer) -> PartOutput.from(output))
+                .doBlockingParse(request);
+        assertEquals("file content", output.toString(US_ASCII));
+    }
+
+    @Test
+    void size_limits_apply_to_decompressed_bytes() throws Exception {
+        var head = "--x\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"file.txt\"\r\n"
+                + "\r\n";
+        var body = new ByteArrayOutputStream();
+        body.writeBytes(head.getBytes(US_ASCII));
+        body.writeBytes(new byte[1024 * 1024]);
+        body.writeBytes("\r\n--x--\r\n".getBytes(US_ASCII));
+        var compressed = InflatingDecoderTest.gzip(body.toByteArray());
+
+        var request = Servlets.newRequest();
+        when(request.isAsyncSupported()).thenReturn(false);
+        when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn("multipart/form-data; boundary=x");
+        when(request.getHeader(Headers.CONTENT_ENCODING)).thenReturn("gzip");
+        when(request.getContentLengthLong()).thenReturn((long) compressed.length);
+        when(request.getInputStream()).thenReturn(new MockServletInputStream(compressed));
+        var errors = new ArrayList<Throwable>();
+        UploadParser.newParser()
+                .maxRequestSize(64 * 1024)
+                .onError((context, throwable) -> errors.add(throwable))
+                .doBlockingParse(request);
+
+        var part = "--x\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"file.gz\"\r\n"
+                + "Content-Encoding: gzip\r\n"
+                + "\r\n";
+        body.reset();
+        body.writeBytes(part.getBytes(US_ASCII));
+        body.writeBytes(InflatingDecoderTest.gzip(new byte[1024 * 1024]));
+        body.writeBytes("\r\n--x--\r\n".getBytes(US_ASCII));
+        var partRequest = Servlets.newRequest();
+        when(partRequest.isAsyncSupported()).thenReturn(false);
+        when(partRequest.getHeader(Headers.CONTENT_TYPE)).thenReturn("multipart/form-data; boundary=x");
+        when(partRequest.getInputStream()).thenReturn(new MockServletInputStream(body.toByteArray()));
+        UploadParser.newParser()
+                .maxPartSize(64 * 1024)
+                .onError((context, throwable) -> errors.add(throwable))
+                .doBlockingParse(partRequest);
+        assertEquals(2, errors.size());
+        assertTrue(errors.get(0) instanceof RequestSizeException);
+        assertTrue(errors.get(1) instanceof PartSizeException);
+    }
+
     @Test
     void this_should_end_with_illegal_argument_exception() throws Exception {
         var request = Servlets.newRequest();
@@ -50,6 +202,84 @@ public class BlockingUploadParserTest implements OnPartBegin, OnPartEnd, OnError
         assertThrows(IllegalArgumentException.class, () -> UploadParser.newParser().doBlockingParse(request));
     }
 
+    @Test
+    void parse_on_an_executor() throws Exception {
+        var request = Servlets.newRequest();
+
+        when(request.isAsyncSupported()).thenReturn(false);
+        when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn("multipart/form-data; boundary=---1234");
+
+        var threads = new ArrayList<Thread>();
+        var context = UploadParser.newParser()
+                .onPartBegin(this)
+                .onRequestComplete(ctx -> threads.add(Thread.currentThread()))
+                .deadline(Duration.ofSeconds(10))
+                .idleTimeout(Duration.ofSeconds(10))
+                .doBlockingParseAsync(request)
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals(4, context.getPartStreams().size());
+        assertEquals(1, threads.size());
+        assertNotSame(Thread.currentThread(), threads.get(0));
+    }
+
+    @Test
+    void idle_timeout_interrupts_the_read() throws Exception {
+        var request = Servlets.newRequest();
+        var released = new CountDownLatch(1);
+        when(request.getInputStream()).thenReturn(new MockServletInputStream("--x\r\n") {
+            @Override
+            public int read(byte[] bytes) throws IOException {
+                try {
+                    released.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                return -1;
+            }
+        });
+        when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn("multipart/form-data; boundary=x");
+
+        var errors = new ArrayList<Throwable>();
+        var future = UploadParser.newParser()
+                .onError((context, throwable) -> errors.add(throwable))
+                .idleTimeout(Duration.ofMillis(100))
+                .doBlockingParseAsync(request, Executors.newSingleThreadExecutor());
+
+        var exception = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+        var timeout = (UploadTimeoutException) exception.getCause();
+        assertTrue(timeout.isIdleTimeout());
+        assertEquals(List.of(timeout), errors);
+    }
+
+    @Test
+    void deadline_is_enforced_while_bytes_arrive() throws Exception {
+        var request = Servlets.newRequest();
+        when(request.getInputStream()).thenReturn(new MockServletInputStream("--x\r\n") {
+            @Override
+            public int read(byte[] bytes) throws IOException {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                bytes[0] = 'a';
+                return 1;
+            }
+        });
+        when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn("multipart/form-data; boundary=x");
+
+        var future = UploadParser.newParser()
+                .deadline(Duration.ofMillis(200))
+                .idleTimeout(Duration.ofSeconds(10))
+                .doBlockingParseAsync(request);
+
+        var exception = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+        var timeout = (UploadTimeoutException) exception.getCause();
+        assertFalse(timeout.isIdleTimeout());
+        assertEquals(Duration.ofMillis(200), timeout.getTimeout());
+    }
+
     @Override
     public PartOutput onPartBegin(UploadContext context, ByteBuffer buffer) throws IOException {
         var baos = new ByteArrayOutputStream();
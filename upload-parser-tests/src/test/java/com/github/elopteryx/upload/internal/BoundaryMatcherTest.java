@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2016 Adam Forgacs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.elopteryx.upload.internal;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Random;
+
+class BoundaryMatcherTest {
+
+    private static final byte[] BOUNDARY = "\r\n--unique-boundary-1".getBytes(ISO_8859_1);
+
+    private static ByteScanner[] scannerProvider() {
+        ByteScanner simple = (data, from, to, first, last, distance) -> {
+            for (var i = from; i < to; i++) {
+                if (data[i] == first && data[i + distance] == last) {
+                    return i;
+                }
+            }
+            return -1;
+        };
+        return new ByteScanner[]{null, simple, new SwarByteScanner()};
+    }
+
+    @ParameterizedTest
+    @MethodSource("scannerProvider")
+    void find_the_same_boundaries_as_a_naive_search(ByteScanner scanner) {
+        var matcher = new BoundaryMatcher(BOUNDARY, scanner);
+        var random = new Random(1);
+        for (var round = 0; round < 200; round++) {
+            var data = new byte[random.nextInt(300)];
+            for (var i = 0; i < data.length; i++) {
+                // Mostly boundary bytes, to produce many partial matches
+                data[i] = random.nextInt(4) == 0 ? (byte) random.nextInt(256) : BOUNDARY[random.nextInt(6)];
+            }
+            if (data.length > BOUNDARY.length && random.nextBoolean()) {
+                System.arraycopy(BOUNDARY, 0, data, random.nextInt(data.length - BOUNDARY.length), BOUNDARY.length);
+            }
+            var from = data.length == 0 ? 0 : random.nextInt(data.length);
+            assertEquals(naiveIndexOf(data, from, data.length), matcher.indexOf(data, from, data.length));
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("scannerProvider")
+    void find_partial_matches_at_the_end(ByteScanner scanner) {
+        var matcher = new BoundaryMatcher(BOUNDARY, scanner);
+        var data = "body\r\n--unique".getBytes(ISO_8859_1);
+        assertEquals(4, matcher.partialMatchStart(data, 0, data.length));
+        assertEquals(4, matcher.partialMatchStart(data, 0, 4));
+        assertEquals(3, matcher.partialMatchStart("abc\r".getBytes(ISO_8859_1), 0, 4));
+    }
+
+    @ParameterizedTest
+    @MethodSource("scannerProvider")
+    void continue_partial_matches(ByteScanner scanner) {
+        var matcher = new BoundaryMatcher(BOUNDARY, scanner);
+        var rest = "unique-boundary-1".getBytes(ISO_8859_1);
+        assertEquals(0, matcher.continueMatch(4, rest, 0, rest.length));
+        assertEquals(0, matcher.continueMatch(4, rest, 0, 3));
+        assertEquals(4, matcher.continueMatch(4, "xyz".getBytes(ISO_8859_1), 0, 3));
+    }
+
+    @ParameterizedTest
+    @MethodSource("scannerProvider")
+    void restart_inside_the_held_back_bytes(ByteScanner scanner) {
+        var boundary = "\r\n--x\r\n--xy".getBytes(ISO_8859_1);
+        var matcher = new BoundaryMatcher(boundary, scanner);
+        // "\r\n--x\r\n--x" was held back, the next bytes only match the occurrence starting at the second CR
+        var next = "\r\n--xy".getBytes(ISO_8859_1);
+        assertEquals(5, matcher.continueMatch(10, next, 0, next.length));
+    }
+
+    @Test
+    void unknown_scanner_falls_back_to_scalar() {
+        assertNull(BoundaryMatcher.selectScanner("scalar"));
+        assertNull(BoundaryMatcher.selectScanner("unknown"));
+        assertTrue(BoundaryMatcher.selectScanner("swar") instanceof SwarByteScanner);
+    }
+
+    @Test
+    void swar_scanner_finds_every_candidate() {
+        var scanner = new SwarByteScanner();
+        var random = new Random(2);
+        for (var round = 0; round < 500; round++) {
+            var data = new byte[20 + random.nextInt(60)];
+            for (var i = 0; i < data.length; i++) {
+                data[i] = (byte) (random.nextInt(3) == 0 ? 0x0D : random.nextInt(3));
+            }
+            var distance = 1 + random.nextInt(8);
+            var from = random.nextInt(data.length - distance);
+            var to = from + random.nextInt(data.length - distance - from + 1);
+            var expected = -1;
+            for (var i = from; i < to; i++) {
+                if (data[i] == 0x0D && data[i + distance] == 1) {
+                    expected = i;
+                    break;
+                }
+            }
+            assertEquals(expected, scanner.indexOf(data, from, to, (byte) 0x0D, (byte) 1, distance));
+        }
+    }
+
+    @Test
+    void lowest_zero_byte_is_exact() {
+        assertEquals(0L, SwarByteScanner.zeroBytes(0x0101010101010101L));
+        assertEquals(1, Long.numberOfTrailingZeros(SwarByteScanner.zeroBytes(0x1111111111110011L)) >>> 3);
+        // The borrow also marks the 0x01 above the zero byte, the lowest marker is still the zero byte
+        assertEquals(1, Long.numberOfTrailingZeros(SwarByteScanner.zeroBytes(0x1111111111010011L)) >>> 3);
+    }
+
+    private static int naiveIndexOf(byte[] data, int from, int to) {
+        outer:
+        for (var i = from; i <= to - BOUNDARY.length; i++) {
+            for (var j = 0; j < BOUNDARY.length; j++) {
+                if (data[i + j] != BOUNDARY[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.elopteryx.upload.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.elopteryx.upload.BufferPool;
+import com.github.elopteryx.upload.PartOutput;
+import com.github.elopteryx.upload.UploadParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+
+class BufferPoolTest {
+
+    @Test
+    void released_buffer_is_reused() {
+        var pool = new BufferPoolImpl(1, 4);
+        var buffer = pool.acquire(128);
+        buffer.put((byte) 1);
+        pool.release(buffer);
+
+        var reused = pool.acquire(128);
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(128, reused.limit());
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+    }
+
+    @Test
+    void size_classes_and_kinds_are_separate() {
+        var pool = new BufferPoolImpl(1, 4);
+        var heap = pool.acquire(128);
+        var direct = pool.acquireDirect(128);
+        assertTrue(direct.isDirect());
+        pool.release(heap);
+        pool.release(direct);
+
+        assertEquals(64, pool.acquire(64).capacity());
+        assertSame(direct, pool.acquireDirect(128));
+        assertSame(heap, pool.acquire(128));
+        assertEquals(2, pool.getHits());
+        assertEquals(3, pool.getMisses());
+    }
+
+    @Test
+    void stripe_keeps_limited_number_of_buffers() {
+        var pool = new BufferPoolImpl(1, 1);
+        var first = pool.acquire(16);
+        var second = pool.acquire(16);
+        pool.release(first);
+        pool.release(second);
+
+        assertSame(first, pool.acquire(16));
+        assertNotSame(second, pool.acquire(16));
+    }
+
+    @Test
+    void buffer_released_by_other_thread_is_taken() throws InterruptedException {
+        var pool = new BufferPoolImpl(8, 4);
+        var buffer = new AtomicReference<ByteBuffer>();
+        var thread = new Thread(() -> {
+            buffer.set(pool.acquire(16));
+            pool.release(buffer.get());
+        });
+        thread.start();
+        thread.join();
+        assertSame(buffer.get(), pool.acquire(16));
+    }
+
+    @Test
+    void parser_buffers_are_returned() throws IOException {
+        var body = "--x\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"file.txt\"\r\n"
+                + "Content-Transfer-Encoding: base64\r\n"
+                + "\r\n"
+                + "ZmlsZSBjb250ZW50\r\n"
+                + "--x--\r\n";
+        var pool = UploadParser.newBufferPool(4);
+        decode(pool, body);
+        var misses = pool.getMisses();
+        assertEquals(0, pool.getHits());
+
+        var output = decode(pool, body);
+        assertEquals("file content", output.toString(StandardCharsets.US_ASCII));
+        assertEquals(misses, pool.getHits());
+        assertEquals(misses, pool.getMisses());
+    }
+
+    private static ByteArrayOutputStream decode(BufferPool pool, String body) throws IOException {
+        var output = new ByteArrayOutputStream();
+        var decoder = UploadParser.newParser()
+                .bufferPool(pool)
+                .onPartBegin((context, buffer) -> PartOutput.from(output))
+                .newDecoder("x", StandardCharsets.UTF_8);
+        decoder.feed(ByteBuffer.allocateDirect(body.length()).put(body.getBytes(StandardCharsets.US_ASCII)).flip());
+        decoder.finish();
+        return output;
+    }
+
+    @Test
+    void invalid_pool_parameters() {
+        assertThrows(IllegalArgumentException.class, () -> UploadParser.newBufferPool(0));
+        assertThrows(NullPointerException.class, () -> UploadParser.newParser().bufferPool(null));
+    }
+}
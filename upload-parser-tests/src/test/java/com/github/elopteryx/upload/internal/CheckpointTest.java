@@ -0,0 +1,144 @@
+package com.github.elopteryx.upload.internal;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import com.github.elopteryx.upload.PartOutput;
+import com.github.elopteryx.upload.UploadParser;
+import com.github.elopteryx.upload.errors.MultipartException;
+import com.github.elopteryx.upload.util.MockServletInputStream;
+import com.github.elopteryx.upload.util.Servlets;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import javax.servlet.http.HttpServletRequest;
+
+class CheckpointTest {
+
+    private static final String TOKEN = "upload-1";
+
+    @Test
+    void resume_after_the_connection_was_lost() throws Exception {
+        var directory = Files.createTempDirectory("checkpoints");
+        var output = directory.resolve("file.bin");
+        var content = randomText(100_000);
+        var body = "--x\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"file.bin\"\r\n"
+                + "\r\n"
+                + content + "\r\n"
+                + "--x\r\n"
+                + "Content-Disposition: form-data; name=\"field\"\r\n"
+                + "\r\n"
+                + "value\r\n"
+                + "--x--\r\n";
+
+        var errors = new ArrayList<Throwable>();
+        UploadParser.newParser()
+                .onPartBegin((context, buffer) -> PartOutput.from(output))
+                .onError((context, throwable) -> errors.add(throwable))
+                .checkpoints(directory, 8192)
+                .checkpointToken(TOKEN)
+                .doBlockingParse(request(body, 0, 60_000));
+        assertEquals(1, errors.size());
+
+        var offset = UploadParser.checkpointOffset(directory, TOKEN);
+        assertTrue(offset > 0 && offset <= 60_000);
+
+        // The client resends a bit more than necessary
+        var resumeOffset = offset - 100;
+        var begun = new ArrayList<String>();
+        var ended = new ArrayList<String>();
+        var context = UploadParser.newParser()
+                .onPartBegin((ctx, buffer) -> {
+                    begun.add(ctx.getCurrentPart().getName());
+                    return PartOutput.from(directory.resolve("field.txt"));
+                })
+                .onPartEnd(ctx -> ended.add(ctx.getCurrentPart().getName()))
+                .checkpoints(directory, 8192)
+                .resume(TOKEN, resumeOffset)
+                .doBlockingParse(request(body, (int) resumeOffset, Integer.MAX_VALUE));
+
+        assertEquals(List.of("field"), begun);
+        assertEquals(List.of("file", "field"), ended);
+        assertEquals(content.length(), context.getPartStreams().get(0).getKnownSize());
+        assertArrayEquals(content.getBytes(StandardCharsets.US_ASCII), Files.readAllBytes(output));
+        assertEquals("value", Files.readString(directory.resolve("field.txt")));
+        assertEquals(-1, UploadParser.checkpointOffset(directory, TOKEN));
+    }
+
+    @Test
+    void checkpoint_round_trip() throws IOException {
+        var directory = Files.createTempDirectory("checkpoints");
+        var checkpoint = new Checkpoint(1234, "boundary".getBytes(StandardCharsets.US_ASCII), 3, 1000, "/tmp/out",
+                List.of("content-disposition", "x-custom"), List.of("form-data; name=\"f\"", "árvíztűrő"));
+        checkpoint.write(directory, TOKEN);
+
+        var read = Checkpoint.read(directory, TOKEN);
+        assertNotNull(read);
+        assertEquals(1234, read.offset);
+        assertArrayEquals(checkpoint.boundary, read.boundary);
+        assertEquals(3, read.matched);
+        assertEquals(1000, read.written);
+        assertEquals("/tmp/out", read.output);
+        assertEquals("árvíztűrő", read.headers().getHeader("X-Custom"));
+
+        Checkpoint.delete(directory, TOKEN);
+        assertEquals(-1, UploadParser.checkpointOffset(directory, TOKEN));
+    }
+
+    @Test
+    void invalid_tokens_are_rejected() {
+        assertThrows(IllegalArgumentException.class, () -> Checkpoint.checkToken("../etc/passwd"));
+        assertThrows(IllegalArgumentException.class, () -> Checkpoint.checkToken(""));
+        assertEquals("abc-DEF_123", Checkpoint.checkToken("abc-DEF_123"));
+    }
+
+    @Test
+    void resume_without_checkpoint_fails() throws Exception {
+        var directory = Files.createTempDirectory("checkpoints");
+        var errors = new ArrayList<Throwable>();
+        var request = request("--x--\r\n", 0, Integer.MAX_VALUE);
+        assertThrows(MultipartException.class, () -> UploadParser.newParser()
+                .onError((context, throwable) -> errors.add(throwable))
+                .checkpoints(directory, 8192)
+                .resume(TOKEN, 0)
+                .doBlockingParse(request));
+    }
+
+    private static String randomText(int length) {
+        var random = new Random(3);
+        var sb = new StringBuilder(length);
+        for (var i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(26)));
+        }
+        return sb.toString();
+    }
+
+    private static HttpServletRequest request(String body, int from, int failAfter) throws Exception {
+        var request = Servlets.newRequest();
+        when(request.isAsyncSupported()).thenReturn(false);
+        when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn("multipart/form-data; boundary=x");
+        when(request.getInputStream()).thenReturn(new MockServletInputStream(body.substring(from)) {
+
+            private int remaining = failAfter;
+
+            @Override
+            public int read() {
+                if (remaining-- == 0) {
+                    throw new IllegalStateException("Connection reset");
+                }
+                return super.read();
+            }
+        });
+        return request;
+    }
+}
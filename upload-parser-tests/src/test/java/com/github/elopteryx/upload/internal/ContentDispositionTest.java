@@ -0,0 +1,69 @@
+package com.github.elopteryx.upload.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+class ContentDispositionTest {
+
+    @Test
+    void parse_form_fields() {
+        var disposition = ContentDisposition.parse("form-data; name=\"field\"");
+        assertEquals("form-data", disposition.getType());
+        assertEquals("field", disposition.getName());
+        assertNull(disposition.getFileName());
+    }
+
+    @Test
+    void parse_files() {
+        var disposition = ContentDisposition.parse("Form-Data;name=file;\tFILENAME=\"a; b=c.txt\"");
+        assertEquals("form-data", disposition.getType());
+        assertEquals("file", disposition.getName());
+        assertEquals("a; b=c.txt", disposition.getFileName());
+    }
+
+    @Test
+    void name_is_not_matched_inside_filename() {
+        var disposition = ContentDisposition.parse("form-data; filename=\"file.txt\"; name=\"field\"");
+        assertEquals("field", disposition.getName());
+        assertEquals("file.txt", disposition.getFileName());
+    }
+
+    @Test
+    void extended_file_name_is_preferred() {
+        var disposition = ContentDisposition.parse("form-data; name=\"f\"; filename=\"EURO rates\"; filename*=utf-8''%e2%82%ac%20rates");
+        assertEquals("EURO rates", disposition.getPlainFileName());
+        assertEquals("€ rates", disposition.getExtendedFileName());
+        assertEquals("€ rates", disposition.getFileName());
+    }
+
+    @Test
+    void malformed_extended_values_are_ignored() {
+        assertNull(ContentDisposition.decodeExtendedValue("utf-8%e2"));
+        assertNull(ContentDisposition.decodeExtendedValue("unknown-charset''abc"));
+        assertNull(ContentDisposition.decodeExtendedValue("utf-8''%e"));
+        assertNull(ContentDisposition.decodeExtendedValue("utf-8''%zz"));
+        assertEquals("abc", ContentDisposition.decodeExtendedValue("ISO-8859-1'en'abc"));
+    }
+
+    @Test
+    void parameters_without_values_are_skipped() {
+        var disposition = ContentDisposition.parse("form-data; flag; name=x ; other=\"y\"");
+        assertEquals("x", disposition.getName());
+        assertNull(disposition.getFileName());
+    }
+
+    @Test
+    void cache_returns_the_same_instance() {
+        var cache = new ContentDisposition.Cache();
+        var first = cache.get("form-data; name=\"items[]\"");
+        assertSame(first, cache.get("form-data; name=\"items[]\""));
+        for (var i = 0; i < 100; i++) {
+            cache.get("form-data; name=\"field" + i + "\"");
+        }
+        assertNotSame(first, cache.get("form-data; name=\"items[]\""));
+    }
+}
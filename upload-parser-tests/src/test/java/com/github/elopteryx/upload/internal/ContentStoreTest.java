@@ -0,0 +1,134 @@
+package com.github.elopteryx.upload.internal;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.elopteryx.upload.ContentStore;
+import com.github.elopteryx.upload.PartOutput;
+import com.github.elopteryx.upload.UploadParser;
+import com.github.elopteryx.upload.errors.DigestMismatchException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+class ContentStoreTest {
+
+    private static final String BOUNDARY = "----ContentStoreBoundary7MA4YWxkTrZu0gW";
+
+    private static byte[] body(String headers, byte[]... contents) {
+        var body = new ByteArrayOutputStream();
+        for (var i = 0; i < contents.length; i++) {
+            body.writeBytes(("--" + BOUNDARY + "\r\n"
+                    + "Content-Disposition: form-data; name=\"file" + i + "\"; filename=\"file.bin\"\r\n"
+                    + headers
+                    + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            body.writeBytes(contents[i]);
+            body.writeBytes("\r\n".getBytes(StandardCharsets.US_ASCII));
+        }
+        body.writeBytes(("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        return body.toByteArray();
+    }
+
+    private static List<Path> decode(UploadParser parser, Function<Integer, PartOutput> outputs, byte[] body) throws IOException {
+        var paths = new ArrayList<Path>();
+        var decoder = parser
+                .onPartBegin((context, buffer) -> outputs.apply(paths.size()))
+                .onPartEnd(context -> paths.add(context.getCurrentOutput().unwrap(Path.class)))
+                .newDecoder(BOUNDARY, StandardCharsets.UTF_8);
+        for (var offset = 0; offset < body.length; offset += 8192) {
+            decoder.feed(ByteBuffer.wrap(body, offset, Math.min(8192, body.length - offset)));
+        }
+        decoder.finish();
+        return paths;
+    }
+
+    private static String sha256(byte[] content) throws Exception {
+        var hex = new StringBuilder();
+        for (var b : MessageDigest.getInstance("SHA-256").digest(content)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static long countFiles(Path root) throws IOException {
+        try (var files = Files.walk(root)) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+
+    @Test
+    void identical_parts_are_stored_once() throws Exception {
+        var content = new byte[100_000];
+        new Random(7).nextBytes(content);
+        var other = "other".getBytes(StandardCharsets.US_ASCII);
+        var store = UploadParser.newContentStore(Files.createTempDirectory("store"), 16);
+
+        var paths = decode(UploadParser.newParser(), index -> store.newOutput(), body("", content, other, content));
+        assertEquals(3, paths.size());
+        assertEquals(paths.get(0), paths.get(2));
+        var hex = sha256(content);
+        assertEquals(store.getRoot().resolve(hex.substring(0, 2)).resolve(hex.substring(2, 4)).resolve(hex), paths.get(0));
+        assertArrayEquals(content, Files.readAllBytes(paths.get(0)));
+        assertArrayEquals(other, Files.readAllBytes(paths.get(1)));
+        assertEquals(2, countFiles(store.getRoot()));
+    }
+
+    @Test
+    void links_refer_to_the_stored_content() throws Exception {
+        var content = "shared attachment".getBytes(StandardCharsets.US_ASCII);
+        var directory = Files.createTempDirectory("links");
+        var store = UploadParser.newContentStore(directory.resolve("store"), 0);
+        var links = List.of(directory.resolve("first.bin"), directory.resolve("second.bin")).iterator();
+
+        try (var pool = UploadParser.newDiskWriterPool(1, 4)) {
+            var paths = decode(UploadParser.newParser().writeBehind(pool), index -> store.newOutput(links.next()), body("", content, content));
+            assertEquals(List.of(directory.resolve("first.bin"), directory.resolve("second.bin")), paths);
+            for (var path : paths) {
+                assertArrayEquals(content, Files.readAllBytes(path));
+            }
+        }
+        assertEquals(1, countFiles(store.getRoot()));
+    }
+
+    @Test
+    void removed_content_is_stored_again_for_links() throws Exception {
+        var content = "content".getBytes(StandardCharsets.US_ASCII);
+        var directory = Files.createTempDirectory("links");
+        var store = UploadParser.newContentStore(directory.resolve("store"), 16);
+        var stored = decode(UploadParser.newParser(), index -> store.newOutput(), body("", content)).get(0);
+        Files.delete(stored);
+
+        var link = directory.resolve("link.bin");
+        decode(UploadParser.newParser(), index -> store.newOutput(link), body("", content));
+        assertArrayEquals(content, Files.readAllBytes(link));
+        assertTrue(Files.exists(stored));
+    }
+
+    @Test
+    void digest_mismatch_discards_the_part() throws Exception {
+        var store = UploadParser.newContentStore(Files.createTempDirectory("store"), 16);
+        var body = body("Content-MD5: 1B2M2Y8AsgTpgAmY7PhCfg==\r\n", "content".getBytes(StandardCharsets.US_ASCII));
+        assertThrows(DigestMismatchException.class, () -> decode(UploadParser.newParser(), index -> store.newOutput(), body));
+        assertEquals(0, countFiles(store.getRoot()));
+    }
+
+    @Test
+    void output_is_used_once() throws Exception {
+        ContentStore store = UploadParser.newContentStore(Files.createTempDirectory("store"), 16);
+        var output = store.newOutput();
+        var content = "content".getBytes(StandardCharsets.US_ASCII);
+        assertThrows(IllegalStateException.class, () -> decode(UploadParser.newParser(), index -> output, body("", content, content)));
+    }
+}
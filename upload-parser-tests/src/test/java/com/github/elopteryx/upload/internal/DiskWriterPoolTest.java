@@ -0,0 +1,120 @@
+package com.github.elopteryx.upload.internal;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import com.github.elopteryx.upload.DiskWriterPool;
+import com.github.elopteryx.upload.PartOutput;
+import com.github.elopteryx.upload.UploadParser;
+import com.github.elopteryx.upload.errors.PartSizeException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+class DiskWriterPoolTest {
+
+    private static final String BOUNDARY = "----WriteBehindBoundary7MA4YWxkTrZu0gW";
+
+    private static byte[] body(byte[] content) {
+        var body = new ByteArrayOutputStream();
+        body.writeBytes(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"file.bin\"\r\n"
+                + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        body.writeBytes(content);
+        body.writeBytes(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        return body.toByteArray();
+    }
+
+    private static void decode(DiskWriterPool pool, Path output, byte[] body, List<Long> sizes) throws IOException {
+        var decoder = UploadParser.newParser()
+                .writeBehind(pool)
+                .onPartBegin((context, buffer) -> PartOutput.from(output))
+                .onPartEnd(context -> sizes.add(Files.size(output)))
+                .newDecoder(BOUNDARY, StandardCharsets.UTF_8);
+        for (var offset = 0; offset < body.length; offset += 8192) {
+            decoder.feed(ByteBuffer.wrap(body, offset, Math.min(8192, body.length - offset)));
+        }
+        decoder.finish();
+    }
+
+    @Test
+    void large_part_is_written_in_order() throws IOException {
+        var content = new byte[5 * DiskWriterPoolImpl.BUFFER_SIZE + 123];
+        new Random(42).nextBytes(content);
+        var output = Files.createTempDirectory("writers").resolve("file.bin");
+        var sizes = new ArrayList<Long>();
+        try (var pool = UploadParser.newDiskWriterPool(2, 1)) {
+            decode(pool, output, body(content), sizes);
+        }
+        assertEquals(List.of((long) content.length), sizes);
+        assertArrayEquals(content, Files.readAllBytes(output));
+    }
+
+    @Test
+    void existing_file_is_appended() throws IOException {
+        var output = Files.createTempDirectory("writers").resolve("file.txt");
+        Files.writeString(output, "existing ");
+        var sizes = new ArrayList<Long>();
+        try (var pool = UploadParser.newDiskWriterPool(1, 4)) {
+            decode(pool, output, body("content".getBytes(StandardCharsets.US_ASCII)), sizes);
+        }
+        assertEquals("existing content", Files.readString(output));
+    }
+
+    @Test
+    void closed_pool_is_rejected() throws IOException {
+        var output = Files.createTempDirectory("writers").resolve("file.txt");
+        var pool = UploadParser.newDiskWriterPool(1, 1);
+        pool.close();
+        assertThrows(IOException.class, () -> decode(pool, output, body(new byte[1]), new ArrayList<>()));
+    }
+
+    @Test
+    void invalid_pool_parameters() {
+        assertThrows(IllegalArgumentException.class, () -> UploadParser.newDiskWriterPool(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> UploadParser.newDiskWriterPool(1, 0));
+    }
+
+    @Test
+    void failed_submit_is_undone() throws IOException {
+        var buffers = new BufferPoolImpl(1, 4);
+        var pool = new DiskWriterPoolImpl(1, 1, buffers);
+        var channel = pool.open(Files.createTempDirectory("writers").resolve("file.bin"));
+        pool.close();
+        assertThrows(IOException.class, () -> channel.write(ByteBuffer.allocate(DiskWriterPoolImpl.BUFFER_SIZE)));
+        assertTimeoutPreemptively(Duration.ofSeconds(5), channel::close);
+        buffers.acquireDirect(DiskWriterPoolImpl.BUFFER_SIZE);
+        assertEquals(1, buffers.getHits());
+    }
+
+    @Test
+    void failed_part_is_abandoned() throws IOException {
+        var output = Files.createTempDirectory("writers").resolve("file.bin");
+        var buffers = new BufferPoolImpl(1, 4);
+        var body = body(new byte[100]);
+        try (var pool = UploadParser.newDiskWriterPool(1, 1, buffers)) {
+            var decoder = UploadParser.newParser()
+                    .writeBehind(pool)
+                    .maxPartSize(50)
+                    .onPartBegin((context, buffer) -> PartOutput.from(output))
+                    .newDecoder(BOUNDARY, StandardCharsets.UTF_8);
+            // The first chunk ends after 40 bytes of the content
+            var split = body.length - ("\r\n--" + BOUNDARY + "--\r\n").length() - 60;
+            decoder.feed(ByteBuffer.wrap(body, 0, split));
+            assertThrows(PartSizeException.class, () -> decoder.feed(ByteBuffer.wrap(body, split, body.length - split)));
+        }
+        buffers.acquireDirect(DiskWriterPoolImpl.BUFFER_SIZE);
+        assertEquals(1, buffers.getHits());
+    }
+}
@@ -1,13 +1,16 @@
 package com.github.elopteryx.upload.internal;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.Test;
 
 import java.util.Iterator;
+import java.util.List;
 
 class HeadersTest {
 
@@ -60,6 +63,27 @@ class HeadersTest {
         assertFalse(headerValues.hasNext());
     }
 
+    @Test
+    void values_are_decoded_on_demand() {
+        var bytes = "form-data; name=\"árvíztűrő\"".getBytes(UTF_8);
+        var headers = new Headers(UTF_8);
+        headers.addHeader("content-disposition", bytes, 0, bytes.length);
+        headers.addHeader("x-empty", bytes, 0, 0);
+        assertEquals("form-data; name=\"árvíztűrő\"", headers.getHeader(Headers.CONTENT_DISPOSITION));
+        assertSame(headers.getHeader(Headers.CONTENT_DISPOSITION), headers.getHeader("CONTENT-DISPOSITION"));
+        assertEquals("", headers.getHeader("X-Empty"));
+        assertEquals(List.of(), headers.getHeaders("missing"));
+    }
+
+    @Test
+    void known_header_names_are_constants() {
+        var bytes = "CONTENT-Type".getBytes(UTF_8);
+        assertSame(Headers.headerName(bytes, 0, bytes.length, UTF_8), Headers.headerName(bytes, 0, bytes.length, UTF_8));
+        assertEquals("content-type", Headers.headerName(bytes, 0, bytes.length, UTF_8));
+        bytes = "X-Custom".getBytes(UTF_8);
+        assertEquals("x-custom", Headers.headerName(bytes, 0, bytes.length, UTF_8));
+    }
+
     @Test
     void charset_parsing() {
         assertNull(Headers.extractQuotedValueFromHeader("text/html; other-data=\"charset=UTF-8\"", "charset"));
@@ -0,0 +1,128 @@
+package com.github.elopteryx.upload.internal;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.github.elopteryx.upload.errors.MultipartException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+class InflatingDecoderTest {
+
+    private static final byte[] CONTENT = content();
+
+    private static byte[] content() {
+        var random = new Random(3);
+        var content = new byte[100_000];
+        for (var i = 0; i < content.length; i++) {
+            content[i] = (byte) ('a' + random.nextInt(4));
+        }
+        return content;
+    }
+
+    static byte[] gzip(byte[] content) throws IOException {
+        var output = new ByteArrayOutputStream();
+        try (var stream = new GZIPOutputStream(output)) {
+            stream.write(content);
+        }
+        return output.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] content, boolean nowrap) throws IOException {
+        var output = new ByteArrayOutputStream();
+        try (var stream = new DeflaterOutputStream(output, new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap))) {
+            stream.write(content);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Feeds the compressed bytes in chunks of the given size into a small output buffer.
+     */
+    private static byte[] decode(String coding, byte[] compressed, int chunk) throws IOException {
+        var decoder = InflatingDecoder.forCoding(coding);
+        var result = new ByteArrayOutputStream();
+        var output = ByteBuffer.allocate(1000);
+        for (var pos = 0; pos < compressed.length; pos += chunk) {
+            var input = ByteBuffer.wrap(compressed, pos, Math.min(chunk, compressed.length - pos));
+            do {
+                output.clear();
+                decoder.inflate(input, output);
+                result.write(output.array(), 0, output.position());
+            } while (input.hasRemaining() || !decoder.needsInput());
+        }
+        decoder.finish();
+        return result.toByteArray();
+    }
+
+    @Test
+    void gzip_in_chunks() throws IOException {
+        var compressed = gzip(CONTENT);
+        for (var chunk : new int[] {1, 7, 4096, compressed.length}) {
+            assertArrayEquals(CONTENT, decode("gzip", compressed, chunk));
+        }
+    }
+
+    @Test
+    void gzip_optional_header_fields() throws IOException {
+        var compressed = gzip(CONTENT);
+        var output = new ByteArrayOutputStream();
+        output.write(compressed, 0, 3);
+        // FEXTRA, FNAME, FCOMMENT and FHCRC
+        output.write(compressed[3] | 4 | 8 | 16 | 2);
+        output.write(compressed, 4, 6);
+        output.write(new byte[] {3, 0, 'a', 'b', 'c'});
+        output.writeBytes("file.txt\0".getBytes(StandardCharsets.US_ASCII));
+        output.writeBytes("comment\0".getBytes(StandardCharsets.US_ASCII));
+        output.write(new byte[] {0x12, 0x34});
+        output.write(compressed, 10, compressed.length - 10);
+        assertArrayEquals(CONTENT, decode("x-gzip", output.toByteArray(), 3));
+    }
+
+    @Test
+    void gzip_members_are_concatenated() throws IOException {
+        var first = gzip(CONTENT);
+        var second = gzip("tail".getBytes(StandardCharsets.US_ASCII));
+        var both = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, both, first.length, second.length);
+        var expected = Arrays.copyOf(CONTENT, CONTENT.length + 4);
+        System.arraycopy("tail".getBytes(StandardCharsets.US_ASCII), 0, expected, CONTENT.length, 4);
+        assertArrayEquals(expected, decode("gzip", both, 999));
+    }
+
+    @Test
+    void zlib_and_raw_deflate() throws IOException {
+        assertArrayEquals(CONTENT, decode("deflate", deflate(CONTENT, false), 5));
+        assertArrayEquals(CONTENT, decode("Deflate", deflate(CONTENT, true), 5));
+    }
+
+    @Test
+    void corrupted_checksum() throws IOException {
+        var compressed = gzip(CONTENT);
+        compressed[compressed.length - 6]++;
+        assertThrows(MultipartException.class, () -> decode("gzip", compressed, 100));
+    }
+
+    @Test
+    void truncated_stream() throws IOException {
+        var compressed = gzip(CONTENT);
+        assertThrows(MultipartException.class, () -> decode("gzip", Arrays.copyOf(compressed, compressed.length - 4), 100));
+    }
+
+    @Test
+    void identity_and_unsupported_codings() throws IOException {
+        assertNull(InflatingDecoder.forCoding(null));
+        assertNull(InflatingDecoder.forCoding("identity"));
+        assertThrows(MultipartException.class, () -> InflatingDecoder.forCoding("br"));
+    }
+}
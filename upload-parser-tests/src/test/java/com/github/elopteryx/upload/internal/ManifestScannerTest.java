@@ -0,0 +1,113 @@
+package com.github.elopteryx.upload.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import com.github.elopteryx.upload.PartStream;
+import com.github.elopteryx.upload.UploadParser;
+import com.github.elopteryx.upload.errors.MultipartException;
+import com.github.elopteryx.upload.errors.RequestSizeException;
+import com.github.elopteryx.upload.util.MockServletInputStream;
+import com.github.elopteryx.upload.util.Servlets;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+class ManifestScannerTest {
+
+    private static final String CONTENT = "x".repeat(10_000) + "\r\n--" + "y".repeat(100);
+
+    private static final String BODY = "preamble\r\n"
+            + "--x\r\n"
+            + "Content-Disposition: form-data; name=\"file\"; filename=\"file.bin\"\r\n"
+            + "Content-Type: application/octet-stream\r\n"
+            + "\r\n"
+            + CONTENT + "\r\n"
+            + "--x\r\n"
+            + "Content-Disposition: form-data; name=\"encoded\"\r\n"
+            + "Content-Transfer-Encoding: base64\r\n"
+            + "\r\n"
+            + "dmFsdWU=\r\n"
+            + "--x\r\n"
+            + "Content-Disposition: form-data; name=\"files\"\r\n"
+            + "Content-Type: multipart/mixed; boundary=y\r\n"
+            + "\r\n"
+            + "--y\r\n"
+            + "Content-Disposition: file; filename=\"a.txt\"\r\n"
+            + "\r\n"
+            + "nested\r\n"
+            + "--y--\r\n"
+            + "--x\r\n"
+            + "Content-Disposition: form-data; name=\"empty\"\r\n"
+            + "\r\n"
+            + "\r\n"
+            + "--x--\r\n";
+
+    private static UploadParser parser() {
+        return UploadParser.newParser()
+                .maxBytesUsed(64)
+                .onPartBegin((context, buffer) -> {
+                    throw new IllegalStateException("The callbacks must not be called!");
+                });
+    }
+
+    private static void assertManifest(List<PartStream> parts) {
+        assertEquals(4, parts.size());
+
+        var file = parts.get(0);
+        assertEquals("file", file.getName());
+        assertEquals("file.bin", file.getSubmittedFileName());
+        assertEquals("application/octet-stream", file.getContentType());
+        assertEquals(CONTENT.length(), file.getKnownSize());
+        assertTrue(file.isFinished());
+
+        assertEquals("encoded", parts.get(1).getName());
+        assertEquals(8, parts.get(1).getKnownSize());
+
+        var nested = parts.get(2);
+        assertEquals("files", nested.getName());
+        assertEquals("a.txt", nested.getSubmittedFileName());
+        assertEquals(6, nested.getKnownSize());
+        assertEquals("files", nested.getParent().getName());
+
+        assertEquals("empty", parts.get(3).getName());
+        assertNull(parts.get(3).getSubmittedFileName());
+        assertEquals(0, parts.get(3).getKnownSize());
+    }
+
+    @Test
+    void scan_request() throws Exception {
+        var request = Servlets.newRequest();
+        when(request.getHeader(Headers.CONTENT_TYPE)).thenReturn("multipart/form-data; boundary=x");
+        when(request.getInputStream()).thenReturn(new MockServletInputStream(BODY.getBytes(StandardCharsets.US_ASCII)));
+        assertManifest(parser().scan(request));
+    }
+
+    @Test
+    void scan_saved_body() throws IOException {
+        var file = Files.createTempFile("body", ".bin");
+        Files.writeString(file, BODY, StandardCharsets.US_ASCII);
+        try (var stream = Files.newInputStream(file)) {
+            assertManifest(parser().scan(stream, "x", StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void truncated_body() {
+        var body = new ByteArrayInputStream(BODY.substring(0, 500).getBytes(StandardCharsets.US_ASCII));
+        assertThrows(MultipartException.class, () -> parser().scan(body, "x", StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void request_size_limit() {
+        var body = new ByteArrayInputStream(BODY.getBytes(StandardCharsets.US_ASCII));
+        assertThrows(RequestSizeException.class, () -> parser().maxRequestSize(1000).scan(body, "x", StandardCharsets.UTF_8));
+    }
+}
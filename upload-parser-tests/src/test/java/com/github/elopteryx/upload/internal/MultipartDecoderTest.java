@@ -0,0 +1,268 @@
+package com.github.elopteryx.upload.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.elopteryx.upload.MultipartDecoder;
+import com.github.elopteryx.upload.PartOutput;
+import com.github.elopteryx.upload.UploadParser;
+import com.github.elopteryx.upload.errors.HeaderSizeException;
+import com.github.elopteryx.upload.errors.MultipartException;
+import com.github.elopteryx.upload.errors.PartCountException;
+import com.github.elopteryx.upload.errors.PartSizeException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class MultipartDecoderTest {
+
+    private static final String BODY = "--x\r\n"
+            + "Content-Disposition: form-data; name=\"file\"; filename=\"file.txt\"\r\n"
+            + "Content-Type: text/plain\r\n"
+            + "\r\n"
+            + "file content\r\n"
+            + "--x\r\n"
+            + "Content-Disposition: form-data; name=\"field\"\r\n"
+            + "\r\n"
+            + "value\r\n"
+            + "--x--\r\n";
+
+    private final Map<String, ByteArrayOutputStream> outputs = new HashMap<>();
+
+    private MultipartDecoder newDecoder(UploadParser parser) throws IOException {
+        return parser
+                .onPartBegin((context, buffer) -> {
+                    var output = new ByteArrayOutputStream();
+                    outputs.put(context.getCurrentPart().getName(), output);
+                    return PartOutput.from(output);
+                })
+                .newDecoder("x", StandardCharsets.UTF_8);
+    }
+
+    private void assertParts() {
+        assertEquals("file content", outputs.get("file").toString(StandardCharsets.UTF_8));
+        assertEquals("value", outputs.get("field").toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void decode_heap_buffer() throws IOException {
+        var decoder = newDecoder(UploadParser.newParser());
+        var buffer = ByteBuffer.wrap(BODY.getBytes(StandardCharsets.US_ASCII));
+        decoder.feed(buffer);
+        assertFalse(buffer.hasRemaining());
+        assertTrue(decoder.isComplete());
+        var context = decoder.finish();
+        assertNull(context.getRequest());
+        assertEquals(2, context.getPartStreams().size());
+        assertParts();
+    }
+
+    @Test
+    void decode_direct_buffer_byte_by_byte() throws IOException {
+        var decoder = newDecoder(UploadParser.newParser());
+        var bytes = BODY.getBytes(StandardCharsets.US_ASCII);
+        var buffer = ByteBuffer.allocateDirect(1);
+        for (var b : bytes) {
+            buffer.clear();
+            buffer.put(b).flip();
+            decoder.feed(buffer);
+        }
+        decoder.finish();
+        assertParts();
+    }
+
+    @Test
+    void finish_before_the_closing_boundary() throws IOException {
+        var decoder = newDecoder(UploadParser.newParser());
+        decoder.feed(ByteBuffer.wrap(BODY.substring(0, 60).getBytes(StandardCharsets.US_ASCII)));
+        assertFalse(decoder.isComplete());
+        assertThrows(MultipartException.class, decoder::finish);
+    }
+
+    @Test
+    void part_size_limit_is_applied() throws IOException {
+        var decoder = newDecoder(UploadParser.newParser().maxPartSize(4));
+        assertThrows(PartSizeException.class, () -> decoder.feed(ByteBuffer.wrap(BODY.getBytes(StandardCharsets.US_ASCII))));
+    }
+
+    @Test
+    void discarded_part_is_skipped() throws IOException {
+        var large = new StringBuilder();
+        for (var i = 0; i < 10_000; i++) {
+            large.append("QUJDREVGR0g=\r\n".substring(0, 10));
+        }
+        var body = "--x\r\n"
+                + "Content-Disposition: form-data; name=\"unwanted\"; filename=\"file.exe\"\r\n"
+                + "Content-Transfer-Encoding: base64\r\n"
+                + "\r\n"
+                + large + "\r\n"
+                + BODY;
+        var ends = new HashMap<String, Long>();
+        var dataCalls = new HashMap<String, Integer>();
+        var decoder = UploadParser.newParser()
+                .maxBytesUsed(256)
+                .maxPartSize(1024)
+                .onPartBegin((context, buffer) -> {
+                    var part = context.getCurrentPart();
+                    if (part.getSubmittedFileName() != null && part.getSubmittedFileName().endsWith(".exe")) {
+                        return PartOutput.discard();
+                    }
+                    var output = new ByteArrayOutputStream();
+                    outputs.put(part.getName(), output);
+                    return PartOutput.from(output);
+                })
+                .onPartData((context, buffer) -> dataCalls.merge(context.getCurrentPart().getName(), 1, Integer::sum))
+                .onPartEnd(context -> ends.put(context.getCurrentPart().getName(), context.getCurrentPart().getKnownSize()))
+                .newDecoder("x", StandardCharsets.UTF_8);
+        var bytes = body.getBytes(StandardCharsets.US_ASCII);
+        for (var offset = 0; offset < bytes.length; offset += 100) {
+            decoder.feed(ByteBuffer.wrap(bytes, offset, Math.min(100, bytes.length - offset)));
+        }
+        var context = decoder.finish();
+        assertParts();
+        assertEquals(3, context.getPartStreams().size());
+        assertEquals(3, ends.size());
+        assertTrue(ends.get("unwanted") < 1024);
+        assertNull(dataCalls.get("unwanted"));
+        assertNull(outputs.get("unwanted"));
+    }
+
+    @Test
+    void discarded_nested_part_is_skipped() throws IOException {
+        var body = "--x\r\n"
+                + "Content-Disposition: form-data; name=\"files\"\r\n"
+                + "Content-Type: multipart/mixed; boundary=y\r\n"
+                + "\r\n"
+                + "--y\r\n"
+                + "Content-Disposition: file; filename=\"a.exe\"\r\n"
+                + "\r\n"
+                + "x".repeat(5000) + "\r\n"
+                + "--y\r\n"
+                + "Content-Disposition: file; filename=\"b.txt\"\r\n"
+                + "\r\n"
+                + "kept\r\n"
+                + "--y--\r\n"
+                + BODY;
+        var names = new ArrayList<String>();
+        var decoder = UploadParser.newParser()
+                .maxBytesUsed(128)
+                .onPartBegin((context, buffer) -> {
+                    var part = context.getCurrentPart();
+                    names.add(part.getSubmittedFileName() == null ? part.getName() : part.getSubmittedFileName());
+                    if ("a.exe".equals(part.getSubmittedFileName())) {
+                        return PartOutput.discard();
+                    }
+                    var output = new ByteArrayOutputStream();
+                    outputs.put(part.getSubmittedFileName() == null ? part.getName() : part.getSubmittedFileName(), output);
+                    return PartOutput.from(output);
+                })
+                .newDecoder("x", StandardCharsets.UTF_8);
+        decoder.feed(ByteBuffer.wrap(body.getBytes(StandardCharsets.US_ASCII)));
+        decoder.finish();
+        assertEquals(List.of("a.exe", "b.txt", "file.txt", "field"), names);
+        assertEquals("kept", outputs.get("b.txt").toString(StandardCharsets.UTF_8));
+        assertEquals("file content", outputs.get("file.txt").toString(StandardCharsets.UTF_8));
+        assertEquals("value", outputs.get("field").toString(StandardCharsets.UTF_8));
+    }
+
+    private void decodeBody(UploadParser parser) throws IOException {
+        var decoder = newDecoder(parser);
+        var bytes = BODY.getBytes(StandardCharsets.US_ASCII);
+        for (var b : bytes) {
+            decoder.feed(ByteBuffer.wrap(new byte[] {b}));
+        }
+        decoder.finish();
+    }
+
+    @Test
+    void header_limits_are_applied() throws IOException {
+        // The longest line is the Content-Disposition of the file part, 64 bytes
+        decodeBody(UploadParser.newParser().maxHeaderLineLength(64).maxHeadersPerPart(2).maxHeaderSize(142));
+        assertParts();
+
+        var line = assertThrows(HeaderSizeException.class, () -> decodeBody(UploadParser.newParser().maxHeaderLineLength(63)));
+        assertEquals(64, line.getActualSize());
+        var count = assertThrows(HeaderSizeException.class, () -> decodeBody(UploadParser.newParser().maxHeadersPerPart(1)));
+        assertEquals(2, count.getActualSize());
+        var size = assertThrows(HeaderSizeException.class, () -> decodeBody(UploadParser.newParser().maxHeaderSize(141)));
+        assertEquals(142, size.getActualSize());
+    }
+
+    @Test
+    void part_count_limit_is_applied() throws IOException {
+        decodeBody(UploadParser.newParser().maxPartCount(2));
+        var exception = assertThrows(PartCountException.class, () -> decodeBody(UploadParser.newParser().maxPartCount(1)));
+        assertEquals(2, exception.getActualSize());
+        assertEquals(1, exception.getPermittedSize());
+    }
+
+    @Test
+    void nested_parts_are_counted() throws IOException {
+        var body = "--x\r\n"
+                + "Content-Disposition: form-data; name=\"files\"\r\n"
+                + "Content-Type: multipart/mixed; boundary=y\r\n"
+                + "\r\n"
+                + "--y\r\n"
+                + "\r\n"
+                + "a\r\n"
+                + "--y\r\n"
+                + "\r\n"
+                + "b\r\n"
+                + "--y--\r\n"
+                + "--x--\r\n";
+        var decoder = newDecoder(UploadParser.newParser().maxPartCount(2));
+        assertThrows(PartCountException.class, () -> decoder.feed(ByteBuffer.wrap(body.getBytes(StandardCharsets.US_ASCII))));
+    }
+
+    @Test
+    void nesting_depth_limit_is_applied() throws IOException {
+        var body = "--x\r\n"
+                + "Content-Disposition: form-data; name=\"files\"\r\n"
+                + "Content-Type: multipart/mixed; boundary=y\r\n"
+                + "\r\n"
+                + "--y\r\n"
+                + "\r\n"
+                + "a\r\n"
+                + "--y--\r\n"
+                + "--x--\r\n";
+        newDecoder(UploadParser.newParser().maxNestingDepth(1)).feed(ByteBuffer.wrap(body.getBytes(StandardCharsets.US_ASCII)));
+        var decoder = newDecoder(UploadParser.newParser().maxNestingDepth(0));
+        assertThrows(MultipartException.class, () -> decoder.feed(ByteBuffer.wrap(body.getBytes(StandardCharsets.US_ASCII))));
+    }
+
+    @Test
+    void deeply_nested_body_is_rejected() throws IOException {
+        var body = new StringBuilder("--x\r\n");
+        for (var i = 0; i < 2000; i++) {
+            body.append("Content-Type: multipart/mixed; boundary=b").append(i).append("z\r\n\r\n--b").append(i).append("z\r\n");
+        }
+        var bytes = body.toString().getBytes(StandardCharsets.US_ASCII);
+        var decoder = newDecoder(UploadParser.newParser());
+        assertThrows(MultipartException.class, () -> {
+            for (var i = 0; i < bytes.length; i += 8192) {
+                decoder.feed(ByteBuffer.wrap(bytes, i, Math.min(8192, bytes.length - i)));
+            }
+        });
+    }
+
+    @Test
+    void part_size_limits_by_field_and_content_type() throws IOException {
+        decodeBody(UploadParser.newParser().maxPartSize(5).maxPartSizeOfContentType("TEXT/*", 12));
+        assertParts();
+
+        assertThrows(PartSizeException.class, () -> decodeBody(UploadParser.newParser().maxPartSize(5)
+                .maxPartSizeOfContentType("text/plain", 12).maxPartSizeOfField("file", 11)));
+        assertThrows(PartSizeException.class, () -> decodeBody(UploadParser.newParser()
+                .maxPartSizeOfContentType("text/*", 12).maxPartSizeOfField("field", 4)));
+    }
+}
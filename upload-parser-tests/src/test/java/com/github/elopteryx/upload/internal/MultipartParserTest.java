@@ -7,6 +7,7 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.github.elopteryx.upload.errors.MultipartException;
 import io.undertow.util.FileUtils;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -147,22 +148,181 @@ class MultipartParserTest {
         parser.parse(buf);
         assertTrue(parser.isComplete());
         assertEquals(1, handler.parts.size());
-        assertEquals("time\nmoney.", handler.parts.get(0).data.toString());
+        // The line break after the trailing equals sign is a soft line break
+        assertEquals("timemoney.", handler.parts.get(0).data.toString());
 
         assertEquals("text/plain", handler.parts.get(0).map.getHeader(Headers.CONTENT_TYPE));
     }
 
+    @ParameterizedTest
+    @MethodSource("bufferSizeProvider")
+    void boundary_split_between_buffers(int chunkSize) throws IOException {
+        var data = "--unique-boundary-1\r\n"
+                + "Content-Type: text/plain\r\n"
+                + "\r\n"
+                + "Almost a boundary: \r\n--unique-boundary-\r\n--unique-boundary-2\r\n-\r\n"
+                + "\r\n--unique-boundary-1\r\n"
+                + "\r\n"
+                + "Second part\r"
+                + "\r\n--unique-boundary-1--\r\n";
+        var handler = new TestPartHandler();
+        var parser = MultipartParser.beginParse(handler, "unique-boundary-1".getBytes(), 1024, ISO_8859_1);
+
+        parseInChunks(parser, data.getBytes(ISO_8859_1), chunkSize);
+        assertTrue(parser.isComplete());
+        assertEquals(2, handler.parts.size());
+        assertEquals("Almost a boundary: \r\n--unique-boundary-\r\n--unique-boundary-2\r\n-\r\n", handler.parts.get(0).data.toString());
+        assertEquals("Second part\r", handler.parts.get(1).data.toString());
+    }
+
+    @ParameterizedTest
+    @MethodSource("bufferSizeProvider")
+    void partial_match_restarts_inside_the_boundary(int chunkSize) throws IOException {
+        // The boundary token is "\r\n--x\r\n--xy", the body ends with its first few bytes
+        var data = "--x\r\n--xy\r\n"
+                + "\r\n"
+                + "\r\n--x"
+                + "\r\n--x\r\n--xy--\r\n";
+        var handler = new TestPartHandler();
+        var parser = MultipartParser.beginParse(handler, "x\r\n--xy".getBytes(), 1024, ISO_8859_1);
+
+        parseInChunks(parser, data.getBytes(ISO_8859_1), chunkSize);
+        assertTrue(parser.isComplete());
+        assertEquals(1, handler.parts.size());
+        assertEquals("\r\n--x", handler.parts.get(0).data.toString());
+    }
+
+    @ParameterizedTest
+    @MethodSource("bufferSizeProvider")
+    void headers_survive_the_following_parts(int chunkSize) throws IOException {
+        var longValue = "x".repeat(10000);
+        var data = "--unique-boundary-1\r\n"
+                + "  content-TYPE :  text/plain \r\n"
+                + "X-Custom: " + longValue + "\r\n"
+                + "\r\n"
+                + "first\r\n--unique-boundary-1\r\n"
+                + "Content-Type: application/json\r\n"
+                + "\r\n"
+                + "second\r\n--unique-boundary-1--\r\n";
+        var handler = new TestPartHandler();
+        var parser = MultipartParser.beginParse(handler, "unique-boundary-1".getBytes(), 1024, ISO_8859_1);
+
+        parseInChunks(parser, data.getBytes(ISO_8859_1), chunkSize);
+        assertTrue(parser.isComplete());
+        assertEquals(2, handler.parts.size());
+        assertEquals("text/plain", handler.parts.get(0).map.getHeader(Headers.CONTENT_TYPE));
+        assertEquals(longValue, handler.parts.get(0).map.getHeader("x-custom"));
+        assertEquals(List.of("content-type", "x-custom"), new ArrayList<>(handler.parts.get(0).map.getHeaderNames()));
+        assertEquals("application/json", handler.parts.get(1).map.getHeader(Headers.CONTENT_TYPE));
+    }
+
+    @ParameterizedTest
+    @MethodSource("bufferSizeProvider")
+    void nested_multipart_is_parsed_in_the_same_pass(int chunkSize) throws IOException {
+        var data = "--outer\r\n"
+                + "Content-Disposition: form-data; name=\"field\"\r\n"
+                + "\r\n"
+                + "value\r\n"
+                + "--outer\r\n"
+                + "Content-Disposition: form-data; name=\"files\"\r\n"
+                + "Content-Type: multipart/mixed; boundary=\"inner\"\r\n"
+                + "\r\n"
+                + "--inner\r\n"
+                + "Content-Disposition: file; filename=\"a.txt\"\r\n"
+                + "\r\n"
+                + "first file\r\n"
+                + "--inner\r\n"
+                + "Content-Disposition: file; filename=\"b.txt\"\r\n"
+                + "\r\n"
+                + "second file\r\n"
+                + "--inner--\r\n"
+                + "--outer--\r\n";
+        var handler = new TestPartHandler();
+        var parser = MultipartParser.beginParse(handler, "outer".getBytes(), 1024, ISO_8859_1);
+
+        parseInChunks(parser, data.getBytes(ISO_8859_1), chunkSize);
+        assertTrue(parser.isComplete());
+        assertEquals(3, handler.parts.size());
+        assertEquals("value", handler.parts.get(0).data.toString());
+        assertEquals("first file", handler.parts.get(1).data.toString());
+        assertEquals("second file", handler.parts.get(2).data.toString());
+        assertEquals(0, handler.parts.get(0).depth);
+        assertEquals(1, handler.parts.get(1).depth);
+        assertEquals(1, handler.parts.get(2).depth);
+        assertEquals(0, handler.depth);
+    }
+
+    @Test
+    void incomplete_nested_multipart_is_rejected() {
+        var data = "--outer\r\n"
+                + "Content-Type: multipart/mixed; boundary=inner\r\n"
+                + "\r\n"
+                + "--inner\r\n"
+                + "\r\n"
+                + "no closing boundary\r\n"
+                + "--outer--\r\n";
+        var handler = new TestPartHandler();
+        var parser = MultipartParser.beginParse(handler, "outer".getBytes(), 1024, ISO_8859_1);
+
+        assertThrows(MultipartException.class, () -> parser.parse(ByteBuffer.wrap(data.getBytes(ISO_8859_1))));
+    }
+
+    private static void parseInChunks(MultipartParser.ParseState parser, byte[] data, int chunkSize) throws IOException {
+        for (var i = 0; i < data.length; i += chunkSize) {
+            var buf = ByteBuffer.wrap(data, i, Math.min(chunkSize, data.length - i)).slice();
+            parser.parse(buf);
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("bufferSizeProvider")
+    void skipped_part_is_not_delivered(int bufferSize) throws IOException {
+        var data = "--x\r\n"
+                + "Content-Transfer-Encoding: quoted-printable\r\n"
+                + "\r\n"
+                + "ab" + "=3D".repeat(1000) + "\r\n"
+                + "--x\r\n"
+                + "\r\n"
+                + "kept\r\n"
+                + "--x--\r\n";
+        var handler = new TestPartHandler();
+        var parser = MultipartParser.beginParse(handler, "x".getBytes(), bufferSize, ISO_8859_1);
+        var bytes = data.getBytes(ISO_8859_1);
+        for (var i = 0; i < bytes.length; i += 16) {
+            parser.parse(ByteBuffer.wrap(bytes, i, Math.min(16, bytes.length - i)));
+            if (handler.parts.size() == 1 && handler.parts.get(0).data.length() > 0) {
+                parser.skipPart();
+            }
+        }
+        assertTrue(parser.isComplete());
+        assertEquals(2, handler.parts.size());
+        assertTrue(handler.parts.get(0).data.length() < 16);
+        assertEquals("kept", handler.parts.get(1).data.toString());
+    }
+
     private static class TestPartHandler implements MultipartParser.PartHandler {
 
         private final List<Part> parts = new ArrayList<>();
         private Part current;
+        private int depth;
 
         @Override
         public void beginPart(final Headers headers) {
             current = new Part(headers);
+            current.depth = depth;
             parts.add(current);
         }
 
+        @Override
+        public void beginMultipart(final Headers headers) {
+            depth++;
+        }
+
+        @Override
+        public void endMultipart() {
+            depth--;
+        }
+
         @Override
         public void data(final ByteBuffer buffer) {
             while (buffer.hasRemaining()) {
@@ -179,6 +339,7 @@ class MultipartParserTest {
     private static class Part {
         private final Headers map;
         private final StringBuilder data = new StringBuilder();
+        private int depth;
 
         private Part(final Headers map) {
             this.map = map;
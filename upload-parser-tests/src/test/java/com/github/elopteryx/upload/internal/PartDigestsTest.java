@@ -0,0 +1,114 @@
+package com.github.elopteryx.upload.internal;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.github.elopteryx.upload.PartOutput;
+import com.github.elopteryx.upload.UploadParser;
+import com.github.elopteryx.upload.errors.DigestMismatchException;
+import com.github.elopteryx.upload.errors.MultipartException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+class PartDigestsTest {
+
+    private static final String CONTENT = "file content which is long enough to be split between the buffers";
+
+    private final Map<String, byte[]> sha256 = new HashMap<>();
+
+    private final Map<String, byte[]> crc32c = new HashMap<>();
+
+    private static String body(String headers) {
+        return "--x\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"file.txt\"\r\n"
+                + headers
+                + "\r\n"
+                + CONTENT + "\r\n"
+                + "--x\r\n"
+                + "Content-Disposition: form-data; name=\"field\"\r\n"
+                + "\r\n"
+                + "value\r\n"
+                + "--x--\r\n";
+    }
+
+    private void parse(UploadParser parser, String body) throws IOException {
+        var decoder = parser
+                .maxBytesUsed(64)
+                .onPartBegin((context, buffer) -> PartOutput.from(new ByteArrayOutputStream()))
+                .onPartEnd(context -> {
+                    var part = context.getCurrentPart();
+                    sha256.put(part.getName(), part.getDigest("SHA-256"));
+                    crc32c.put(part.getName(), part.getDigest("crc32c"));
+                })
+                .newDecoder("x", StandardCharsets.UTF_8);
+        decoder.feed(ByteBuffer.wrap(body.getBytes(StandardCharsets.US_ASCII)));
+        decoder.finish();
+    }
+
+    private static byte[] digest(String algorithm, String content) throws Exception {
+        return MessageDigest.getInstance(algorithm).digest(content.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static byte[] crc32c(String content) {
+        var checksum = new CRC32C();
+        checksum.update(content.getBytes(StandardCharsets.US_ASCII));
+        return ByteBuffer.allocate(4).putInt((int) checksum.getValue()).array();
+    }
+
+    @Test
+    void configured_digests_are_computed() throws Exception {
+        parse(UploadParser.newParser().digests("SHA-256", "CRC32C"), body(""));
+        assertArrayEquals(digest("SHA-256", CONTENT), sha256.get("file"));
+        assertArrayEquals(digest("SHA-256", "value"), sha256.get("field"));
+        assertArrayEquals(crc32c(CONTENT), crc32c.get("file"));
+        assertArrayEquals(crc32c("value"), crc32c.get("field"));
+    }
+
+    @Test
+    void no_digests_by_default() throws Exception {
+        parse(UploadParser.newParser(), body(""));
+        assertEquals(2, sha256.size());
+        assertNull(sha256.get("file"));
+        assertNull(crc32c.get("field"));
+    }
+
+    @Test
+    void digest_headers_are_checked() throws Exception {
+        var md5 = Base64.getEncoder().encodeToString(digest("MD5", CONTENT));
+        var sha = Base64.getEncoder().encodeToString(digest("SHA-256", CONTENT));
+        parse(UploadParser.newParser(), body("Content-MD5: " + md5 + "\r\nDigest: unixsum=30637, SHA-256=" + sha + "\r\n"));
+        assertArrayEquals(digest("SHA-256", CONTENT), sha256.get("file"));
+        assertNull(sha256.get("field"));
+    }
+
+    @Test
+    void digest_mismatch() throws Exception {
+        var md5 = Base64.getEncoder().encodeToString(digest("MD5", "other content"));
+        var exception = assertThrows(DigestMismatchException.class, () -> parse(UploadParser.newParser(), body("Content-MD5: " + md5 + "\r\n")));
+        assertEquals("MD5", exception.getAlgorithm());
+        var crc = Base64.getEncoder().encodeToString(crc32c("other content"));
+        assertThrows(DigestMismatchException.class, () -> parse(UploadParser.newParser().digests("CRC32C"), body("Digest: crc32c=" + crc + "\r\n")));
+    }
+
+    @Test
+    void malformed_digest_header() {
+        assertThrows(MultipartException.class, () -> parse(UploadParser.newParser(), body("Content-MD5: not base64!\r\n")));
+        assertThrows(MultipartException.class, () -> parse(UploadParser.newParser(), body("Digest: sha-256\r\n")));
+    }
+
+    @Test
+    void unsupported_algorithm() {
+        assertThrows(IllegalArgumentException.class, () -> UploadParser.newParser().digests("SHA-999"));
+    }
+}
@@ -0,0 +1,40 @@
+package com.github.elopteryx.upload.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+class PartLimitsTest {
+
+    private static PartStreamImpl part(String name, String contentType) {
+        var headers = new Headers();
+        if (contentType != null) {
+            headers.addHeader(Headers.CONTENT_TYPE, contentType);
+        }
+        return new PartStreamImpl(null, name, headers);
+    }
+
+    private final PartLimits limits = new PartLimits(
+            Map.of("video", 5_000_000_000L),
+            Map.of("Image/PNG", 200L, "image/*", 100L));
+
+    @Test
+    void field_name_takes_precedence() {
+        assertEquals(5_000_000_000L, limits.resolve(part("video", "image/png"), 10));
+    }
+
+    @Test
+    void content_type_is_matched_without_parameters() {
+        assertEquals(200L, limits.resolve(part("logo", "image/png; name=\"logo.png\""), 10));
+        assertEquals(100L, limits.resolve(part("logo", "IMAGE/jpeg"), 10));
+    }
+
+    @Test
+    void default_limit_is_used_otherwise() {
+        assertEquals(10L, limits.resolve(part("text", "text/plain"), 10));
+        assertEquals(10L, limits.resolve(part("text", null), 10));
+        assertEquals(PartLimits.UNLIMITED, limits.resolve(part(null, "application/json"), -1));
+    }
+}
@@ -1,10 +1,13 @@
 package com.github.elopteryx.upload.internal;
 
 import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
@@ -35,8 +38,72 @@ class QuotedPrintableEncodingTest {
         checkEncoding("=\r\n", "=3d=0d=0a");
     }
 
+    @Test
+    void soft_line_breaks_are_removed() throws IOException {
+        assertEquals("A longer line split in two.", decode(7, "A longer =\nline split =\rin two.="));
+        assertEquals("ab", decode(4, "a=\r\nb"));
+        assertEquals("a\nb", decode(4, "a=\r\n\nb"));
+    }
+
+    @Test
+    void soft_line_breaks_split_between_buffers() throws IOException {
+        var encoded = "A longer =\r\nline split =\r\nin three.";
+        for (var chunk = 1; chunk < encoded.length(); chunk++) {
+            assertEquals("A longer line split in three.", decode(chunk, encoded));
+        }
+    }
+
+    @Test
+    void escapes_split_between_buffers() throws IOException {
+        var encoded = "caf=C3=A9 au lait =\n=3D=3d";
+        var expected = "caf\u00e9 au lait ==";
+        for (var chunk = 1; chunk < encoded.length(); chunk++) {
+            assertEquals(expected, decode(chunk, encoded));
+        }
+    }
+
+    @Test
+    void invalid_escapes_are_passed_through() throws IOException {
+        assertEquals("100=% =G1 =4x", decode(3, "100=% =G1 =4x"));
+    }
+
+    @Test
+    void output_larger_than_the_buffer() throws IOException {
+        var text = "0123456789=".repeat(500);
+        assertEquals(text, decode(1000, text.replace("=", "=3D")));
+    }
+
+    /**
+     * Decodes the given text, passing it to the encoding in chunks.
+     */
+    private static String decode(int chunk, String encoded) throws IOException {
+        var encoding = new MultipartParser.QuotedPrintableEncoding(ByteBuffer.allocate(16));
+        var output = new ByteArrayOutputStream();
+        var handler = new MultipartParser.PartHandler() {
+
+            @Override
+            public void beginPart(Headers headers) {}
+
+            @Override
+            public void data(ByteBuffer buffer) {
+                output.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                buffer.position(buffer.limit());
+            }
+
+            @Override
+            public void endPart() {}
+        };
+        var bytes = encoded.getBytes(US_ASCII);
+        for (var pos = 0; pos < bytes.length; pos += chunk) {
+            var buffer = ByteBuffer.wrap(bytes, pos, Math.min(chunk, bytes.length - pos));
+            encoding.handle(handler, buffer);
+            assertFalse(buffer.hasRemaining());
+        }
+        return output.toString(UTF_8);
+    }
+
     private static void checkEncoding(final String original, String encoded) throws IOException {
-        var encoding = new MultipartParser.QuotedPrintableEncoding(1024);
+        var encoding = new MultipartParser.QuotedPrintableEncoding(ByteBuffer.allocate(1024));
         encoding.handle(new MultipartParser.PartHandler() {
 
             @Override
@@ -1,5 +1,6 @@
 package com.github.elopteryx.upload.rs.internal;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.when;
 
@@ -8,6 +9,11 @@ import com.github.elopteryx.upload.internal.Headers;
 import com.github.elopteryx.upload.util.Servlets;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
 class RestUploadParserTest {
 
 
@@ -21,7 +27,7 @@ class RestUploadParserTest {
         var parser = new RestUploadParser();
         long requestSize = 1024;
         var mimeType = "multipart/form-data; boundary=----1234";
-        var encodingHeader = "UTF-8";
+        var encodingHeader = "identity";
         assertThrows(MultipartException.class, () -> {
             parser.doBlockingParse(requestSize, mimeType, encodingHeader, request.getInputStream());
         });
@@ -35,9 +41,37 @@ class RestUploadParserTest {
 
         long requestSize = 1024;
         var mimeType = "multipart/form-data; boundary;";
-        var encodingHeader = "UTF-8";
+        var encodingHeader = "identity";
         assertThrows(IllegalArgumentException.class, () -> {
             parser.doBlockingParse(requestSize, mimeType, encodingHeader, request.getInputStream());
         });
     }
+
+    @Test
+    void compressed_request_is_decompressed() throws Exception {
+        var data = "--x\r\n"
+                + "Content-Disposition: form-data; name=\"field\"\r\n"
+                + "\r\n"
+                + "value\r\n"
+                + "--x--\r\n";
+        var output = new ByteArrayOutputStream();
+        try (var stream = new GZIPOutputStream(output)) {
+            stream.write(data.getBytes(StandardCharsets.US_ASCII));
+        }
+        var parser = new RestUploadParser();
+        parser.setMaxRequestSize(output.size());
+
+        var multiPart = parser.doBlockingParse(output.size(), "multipart/form-data; boundary=x; charset=UTF-8", "gzip",
+                new ByteArrayInputStream(output.toByteArray()));
+        assertEquals(data.length(), multiPart.getSize());
+        assertEquals("field", multiPart.getParts().get(0).getName());
+    }
+
+    @Test
+    void unsupported_coding_is_rejected() {
+        var parser = new RestUploadParser();
+        assertThrows(MultipartException.class, () -> {
+            parser.doBlockingParse(0, "multipart/form-data; boundary=x", "br", new ByteArrayInputStream(new byte[0]));
+        });
+    }
 }
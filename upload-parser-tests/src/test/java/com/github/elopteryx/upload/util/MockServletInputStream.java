@@ -35,7 +35,15 @@ public class MockServletInputStream extends ServletInputStream {
     private ReadListener readListener;
 
     MockServletInputStream() {
-        this.sourceStream = new ByteArrayInputStream(requestData.getBytes(StandardCharsets.US_ASCII));
+        this(requestData);
+    }
+
+    public MockServletInputStream(String data) {
+        this(data.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    public MockServletInputStream(byte[] data) {
+        this.sourceStream = new ByteArrayInputStream(data);
     }
 
     public void onDataAvailable() throws IOException {